@@ -28,6 +28,7 @@ CREATE TABLE `cliente` (
   `id` int NOT NULL AUTO_INCREMENT,
   `nome` varchar(100) NOT NULL,
   `idade` int NOT NULL,
+  `versao` int NOT NULL DEFAULT '1',
   PRIMARY KEY (`id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=10 DEFAULT CHARSET=utf8mb3;
 /*!40101 SET character_set_client = @saved_cs_client */;
@@ -38,7 +39,7 @@ CREATE TABLE `cliente` (
 
 LOCK TABLES `cliente` WRITE;
 /*!40000 ALTER TABLE `cliente` DISABLE KEYS */;
-INSERT INTO `cliente` VALUES (1,'Carlos Alberto',25),(2,'Marina Souza',17),(3,'João Pedro',32),(4,'Fernanda Lima',21);
+INSERT INTO `cliente` VALUES (1,'Carlos Alberto',25,1),(2,'Marina Souza',17,1),(3,'João Pedro',32,1),(4,'Fernanda Lima',21,1);
 /*!40000 ALTER TABLE `cliente` ENABLE KEYS */;
 UNLOCK TABLES;
 
@@ -52,6 +53,7 @@ DROP TABLE IF EXISTS `genero`;
 CREATE TABLE `genero` (
   `id` int NOT NULL AUTO_INCREMENT,
   `nome` varchar(100) NOT NULL,
+  `versao` int NOT NULL DEFAULT '1',
   PRIMARY KEY (`id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=9 DEFAULT CHARSET=utf8mb3;
 /*!40101 SET character_set_client = @saved_cs_client */;
@@ -62,7 +64,7 @@ CREATE TABLE `genero` (
 
 LOCK TABLES `genero` WRITE;
 /*!40000 ALTER TABLE `genero` DISABLE KEYS */;
-INSERT INTO `genero` VALUES (1,'Ação'),(2,'Aventura'),(3,'Estratégia'),(4,'ac12'),(5,'RPG'),(8,'Fantasia');
+INSERT INTO `genero` VALUES (1,'Ação',1),(2,'Aventura',1),(3,'Estratégia',1),(4,'ac12',1),(5,'RPG',1),(8,'Fantasia',1);
 /*!40000 ALTER TABLE `genero` ENABLE KEYS */;
 UNLOCK TABLES;
 
@@ -79,6 +81,7 @@ CREATE TABLE `jogo` (
   `preco` double NOT NULL,
   `idademinima` int NOT NULL,
   `genero_id` int NOT NULL,
+  `versao` int NOT NULL DEFAULT '1',
   PRIMARY KEY (`id`),
   KEY `fk_jogo_genero_idx` (`genero_id`),
   CONSTRAINT `fk_jogo_genero` FOREIGN KEY (`genero_id`) REFERENCES `genero` (`id`)
@@ -91,7 +94,7 @@ CREATE TABLE `jogo` (
 
 LOCK TABLES `jogo` WRITE;
 /*!40000 ALTER TABLE `jogo` DISABLE KEYS */;
-INSERT INTO `jogo` VALUES (1,'Battle Strike',59.9,16,1),(2,'Mystic Quest',79.9,12,5),(3,'Soccer Pro 2024',99.9,10,4),(4,'Kingdom Explorer',69.9,10,2),(5,'Galactic Tactics',89.9,14,3);
+INSERT INTO `jogo` VALUES (1,'Battle Strike',59.9,16,1,1),(2,'Mystic Quest',79.9,12,5,1),(3,'Soccer Pro 2024',99.9,10,4,1),(4,'Kingdom Explorer',69.9,10,2,1),(5,'Galactic Tactics',89.9,14,3,1);
 /*!40000 ALTER TABLE `jogo` ENABLE KEYS */;
 UNLOCK TABLES;
 
@@ -108,9 +111,12 @@ CREATE TABLE `locacao` (
   `data_devolucao` date DEFAULT NULL,
   `jogo_id` int NOT NULL,
   `cliente_id` int NOT NULL,
+  `versao` int NOT NULL DEFAULT '1',
   PRIMARY KEY (`id`),
-  KEY `fk_locacao_jogo1_idx` (`jogo_id`),
-  KEY `fk_locacao_cliente1_idx` (`cliente_id`),
+  KEY `idx_locacao_cliente_data` (`cliente_id`,`data_locacao`),
+  KEY `idx_locacao_jogo_data` (`jogo_id`,`data_locacao`),
+  KEY `idx_locacao_data` (`data_locacao`),
+  KEY `idx_locacao_devolucao` (`data_devolucao`),
   CONSTRAINT `fk_locacao_cliente1` FOREIGN KEY (`cliente_id`) REFERENCES `cliente` (`id`),
   CONSTRAINT `fk_locacao_jogo1` FOREIGN KEY (`jogo_id`) REFERENCES `jogo` (`id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=24 DEFAULT CHARSET=utf8mb3;
@@ -122,10 +128,44 @@ CREATE TABLE `locacao` (
 
 LOCK TABLES `locacao` WRITE;
 /*!40000 ALTER TABLE `locacao` DISABLE KEYS */;
-INSERT INTO `locacao` VALUES (1,'2024-12-01','2024-12-15',1,1),(2,'2025-01-12','2025-01-15',3,4),(3,'2025-01-14','2025-01-20',2,2),(23,'2025-12-01','2026-01-20',1,1);
+INSERT INTO `locacao` VALUES (1,'2024-12-01','2024-12-15',1,1,1),(2,'2025-01-12','2025-01-15',3,4,1),(3,'2025-01-14','2025-01-20',2,2,1),(23,'2025-12-01','2026-01-20',1,1,1);
 /*!40000 ALTER TABLE `locacao` ENABLE KEYS */;
 UNLOCK TABLES;
 
+--
+-- Table structure for table `locacao_diario`
+--
+
+DROP TABLE IF EXISTS `locacao_diario`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `locacao_diario` (
+  `chave` char(36) NOT NULL,
+  `locacao_id` int NOT NULL,
+  `aplicada_em` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`chave`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb3;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
+--
+-- Table structure for table `requisicao_idempotente`
+--
+
+DROP TABLE IF EXISTS `requisicao_idempotente`;
+/*!40101 SET @saved_cs_client     = @@character_set_client */;
+/*!50503 SET character_set_client = utf8mb4 */;
+CREATE TABLE `requisicao_idempotente` (
+  `chave` char(64) NOT NULL,
+  `impressao` char(64) NOT NULL,
+  `status` smallint NOT NULL,
+  `tipo` varchar(100) DEFAULT NULL,
+  `corpo` mediumtext NOT NULL,
+  `criada_em` timestamp(3) NOT NULL,
+  PRIMARY KEY (`chave`),
+  KEY `idx_requisicao_idempotente_criada` (`criada_em`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+/*!40101 SET character_set_client = @saved_cs_client */;
+
 --
 -- Dumping events for database 'gamestop'
 --
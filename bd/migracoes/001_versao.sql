@@ -0,0 +1,8 @@
+-- Coluna de versão para atualizações otimistas (If-Match).
+-- Necessária em bancos criados antes desta alteração; o CreateScritpt.sql já a inclui.
+USE `gamestop`;
+
+ALTER TABLE `genero`  ADD COLUMN `versao` int NOT NULL DEFAULT '1';
+ALTER TABLE `jogo`    ADD COLUMN `versao` int NOT NULL DEFAULT '1';
+ALTER TABLE `cliente` ADD COLUMN `versao` int NOT NULL DEFAULT '1';
+ALTER TABLE `locacao` ADD COLUMN `versao` int NOT NULL DEFAULT '1';
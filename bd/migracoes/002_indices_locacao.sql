@@ -0,0 +1,14 @@
+-- Índices para os filtros de GET /locacoes (clienteId, jogoId, de, ate, status).
+-- Os compostos começam pela coluna da FK, então também servem às chaves
+-- estrangeiras e substituem os índices de uma coluna só.
+USE `gamestop`;
+
+ALTER TABLE `locacao`
+  ADD KEY `idx_locacao_cliente_data` (`cliente_id`, `data_locacao`),
+  ADD KEY `idx_locacao_jogo_data` (`jogo_id`, `data_locacao`),
+  ADD KEY `idx_locacao_data` (`data_locacao`),
+  ADD KEY `idx_locacao_devolucao` (`data_devolucao`);
+
+ALTER TABLE `locacao`
+  DROP KEY `fk_locacao_cliente1_idx`,
+  DROP KEY `fk_locacao_jogo1_idx`;
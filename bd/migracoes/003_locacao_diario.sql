@@ -0,0 +1,11 @@
+-- Chaves dos registros do diário local de locações (DiarioLocacoes) já
+-- gravados no banco. A reaplicação grava a chave na mesma transação da
+-- locação, então reaplicar um registro de novo não duplica a locação.
+USE `gamestop`;
+
+CREATE TABLE `locacao_diario` (
+  `chave` char(36) NOT NULL,
+  `locacao_id` int NOT NULL,
+  `aplicada_em` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`chave`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb3;
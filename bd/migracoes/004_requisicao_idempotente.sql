@@ -0,0 +1,15 @@
+-- Respostas dos POST com Idempotency-Key, para uma repetição da mesma
+-- requisição (timeout no terminal, por exemplo) receber a resposta original
+-- sem gravar de novo, mesmo depois de reiniciar a API.
+USE `gamestop`;
+
+CREATE TABLE `requisicao_idempotente` (
+  `chave` char(64) NOT NULL,
+  `impressao` char(64) NOT NULL,
+  `status` smallint NOT NULL,
+  `tipo` varchar(100) DEFAULT NULL,
+  `corpo` mediumtext NOT NULL,
+  `criada_em` timestamp(3) NOT NULL,
+  PRIMARY KEY (`chave`),
+  KEY `idx_requisicao_idempotente_criada` (`criada_em`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,68 @@
+import java.util.Arrays;
+import java.util.function.LongFunction;
+
+import dao.ClienteDAO;
+import dao.GeneroDAO;
+import dao.JogoDAO;
+import dao.LocacaoDAO;
+import util.ConnectionFactory;
+import util.PoolConexoes;
+
+/**
+ * Mede a latência por chamada de buscarPorId em cada DAO.
+ *
+ * Rode duas vezes contra o mesmo banco para comparar antes/depois do cache de
+ * statements (ver bench/README.md):
+ *   -Dlocadora.pool.cacheStatements=0   sem cache (prepare a cada chamada)
+ *   -Dlocadora.pool.cacheStatements=64  com cache (padrão)
+ */
+public class BenchBuscarPorId {
+
+    private static final int AQUECIMENTO = Integer.getInteger("bench.aquecimento", 2_000);
+    private static final int ITERACOES = Integer.getInteger("bench.iteracoes", 20_000);
+
+    public static void main(String[] args) {
+        long id = args.length > 0 ? Long.parseLong(args[0]) : 1L;
+
+        JogoDAO jogoDAO = new JogoDAO();
+        ClienteDAO clienteDAO = new ClienteDAO();
+        GeneroDAO generoDAO = new GeneroDAO();
+        LocacaoDAO locacaoDAO = new LocacaoDAO();
+
+        System.out.println("cacheStatements=" + Integer.getInteger("locadora.pool.cacheStatements", 64)
+                + " iteracoes=" + ITERACOES);
+        medir("JogoDAO.buscarPorId", i -> jogoDAO.buscarPorId(id));
+        medir("ClienteDAO.buscarPorId", i -> clienteDAO.buscarPorId(id));
+        medir("GeneroDAO.buscarPorId", i -> generoDAO.buscarPorId(id));
+        medir("LocacaoDAO.buscarPorId", i -> locacaoDAO.buscarPorId(id));
+
+        PoolConexoes pool = ConnectionFactory.getPool();
+        System.out.println("cache de statements: acertos=" + pool.getAcertosCacheStatements()
+                + " falhas=" + pool.getFalhasCacheStatements()
+                + " remocoes=" + pool.getRemocoesCacheStatements());
+        System.exit(0);
+    }
+
+    private static void medir(String nome, LongFunction<Object> chamada) {
+        for (int i = 0; i < AQUECIMENTO; i++) {
+            chamada.apply(i);
+        }
+
+        long[] amostras = new long[ITERACOES];
+        for (int i = 0; i < ITERACOES; i++) {
+            long inicio = System.nanoTime();
+            chamada.apply(i);
+            amostras[i] = System.nanoTime() - inicio;
+        }
+        Arrays.sort(amostras);
+
+        long soma = 0;
+        for (long amostra : amostras) {
+            soma += amostra;
+        }
+        System.out.printf("%-24s media=%8.1f us  p50=%8.1f us  p99=%8.1f us%n", nome,
+                soma / (double) ITERACOES / 1_000,
+                amostras[ITERACOES / 2] / 1_000.0,
+                amostras[(int) (ITERACOES * 0.99)] / 1_000.0);
+    }
+}
@@ -0,0 +1,150 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Teste de carga em malha fechada contra a API em execução: cada cliente
+ * simulado envia uma requisição, espera a resposta e envia a próxima.
+ *
+ * Os clientes são divididos igualmente entre as URLs, que rodam ao mesmo
+ * tempo. Assim uma rota que bloqueia no banco (/locacoes) e outra servida da
+ * memória (/jogos) disputam as mesmas threads do servidor, como em produção.
+ * Rode uma vez com a API em cada modo de execução (ver bench/README.md).
+ *
+ * Argumentos: URLs (padrão: /locacoes?limit=100 e /jogos em localhost:4567).
+ */
+public class BenchCarga {
+
+    private static final int CLIENTES = Integer.getInteger("bench.clientes", 200);
+    private static final int DURACAO_SEG = Integer.getInteger("bench.duracaoSeg", 20);
+    private static final int AQUECIMENTO_SEG = Integer.getInteger("bench.aquecimentoSeg", 5);
+
+    public static void main(String[] args) throws Exception {
+        String[] urls = args.length > 0 ? args : new String[] {
+                "http://localhost:4567/locacoes?limit=100",
+                "http://localhost:4567/jogos" };
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        System.out.println("clientes=" + CLIENTES + " duracao=" + DURACAO_SEG + "s aquecimento="
+                + AQUECIMENTO_SEG + "s");
+
+        long inicioMedicao = System.nanoTime() + AQUECIMENTO_SEG * 1_000_000_000L;
+        long fim = inicioMedicao + DURACAO_SEG * 1_000_000_000L;
+
+        List<Cliente> clientes = new ArrayList<>();
+        CountDownLatch terminados = new CountDownLatch(CLIENTES);
+        for (int i = 0; i < CLIENTES; i++) {
+            Cliente cliente = new Cliente(http, URI.create(urls[i % urls.length]), inicioMedicao, fim, terminados);
+            clientes.add(cliente);
+            Thread thread = new Thread(cliente, "bench-cliente-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        terminados.await();
+
+        for (String url : urls) {
+            relatorio(url, clientes);
+        }
+        System.exit(0);
+    }
+
+    private static void relatorio(String url, List<Cliente> clientes) {
+        int total = 0;
+        long erros = 0;
+        for (Cliente cliente : clientes) {
+            if (cliente.uri.toString().equals(url)) {
+                total += cliente.quantidade;
+                erros += cliente.erros;
+            }
+        }
+
+        long[] amostras = new long[total];
+        int posicao = 0;
+        for (Cliente cliente : clientes) {
+            if (cliente.uri.toString().equals(url)) {
+                System.arraycopy(cliente.amostras, 0, amostras, posicao, cliente.quantidade);
+                posicao += cliente.quantidade;
+            }
+        }
+        Arrays.sort(amostras);
+
+        if (total == 0) {
+            System.out.printf("%-45s nenhuma resposta (erros=%d)%n", url, erros);
+            return;
+        }
+        System.out.printf("%-45s %8.1f req/s  p50=%7.1f ms  p99=%7.1f ms  max=%7.1f ms  erros=%d%n", url,
+                total / (double) DURACAO_SEG,
+                amostras[total / 2] / 1e6,
+                amostras[Math.min(total - 1, (int) (total * 0.99))] / 1e6,
+                amostras[total - 1] / 1e6,
+                erros);
+    }
+
+    // ------------------------------------
+    // CLIENTE SIMULADO
+    // ------------------------------------
+    private static final class Cliente implements Runnable {
+        final HttpClient http;
+        final URI uri;
+        final long inicioMedicao;
+        final long fim;
+        final CountDownLatch terminados;
+
+        long[] amostras = new long[1024];
+        int quantidade;
+        long erros;
+
+        Cliente(HttpClient http, URI uri, long inicioMedicao, long fim, CountDownLatch terminados) {
+            this.http = http;
+            this.uri = uri;
+            this.inicioMedicao = inicioMedicao;
+            this.fim = fim;
+            this.terminados = terminados;
+        }
+
+        @Override
+        public void run() {
+            HttpRequest requisicao = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(30)).GET().build();
+            try {
+                long agora;
+                while ((agora = System.nanoTime()) < fim) {
+                    boolean ok;
+                    try {
+                        HttpResponse<byte[]> resposta = http.send(requisicao, HttpResponse.BodyHandlers.ofByteArray());
+                        ok = resposta.statusCode() < 400;
+                    } catch (java.io.IOException e) {
+                        ok = false;
+                    }
+                    long duracao = System.nanoTime() - agora;
+
+                    // só conta o que começou depois do aquecimento
+                    if (agora < inicioMedicao) {
+                        continue;
+                    }
+                    if (!ok) {
+                        erros++;
+                        continue;
+                    }
+                    if (quantidade == amostras.length) {
+                        amostras = Arrays.copyOf(amostras, quantidade * 2);
+                    }
+                    amostras[quantidade++] = duracao;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                terminados.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+#!/bin/sh
+# Baixa o JMH e o H2 do Maven Central (só na primeira vez), compila src/ junto
+# com os benchmarks e roda o JMH com o profiler de GC (alocação por operação).
+# Argumentos extras vão para o JMH, ex.: ./bench/jmh/executar.sh BenchJson -p tamanho=1000
+set -e
+cd "$(dirname "$0")/../.."
+
+LIB=bench/jmh/lib
+BIN=bench/jmh/bin
+MAVEN=https://repo1.maven.org/maven2
+
+baixar() {
+    if [ ! -f "$LIB/$2" ]; then
+        echo "Baixando $2"
+        curl -fsSL -o "$LIB/$2" "$MAVEN/$1/$2"
+    fi
+}
+
+mkdir -p "$LIB"
+baixar org/openjdk/jmh/jmh-core/1.37 jmh-core-1.37.jar
+baixar org/openjdk/jmh/jmh-generator-annprocess/1.37 jmh-generator-annprocess-1.37.jar
+baixar net/sf/jopt-simple/jopt-simple/5.0.4 jopt-simple-5.0.4.jar
+baixar org/apache/commons/commons-math3/3.6.1 commons-math3-3.6.1.jar
+baixar com/h2database/h2/2.2.224 h2-2.2.224.jar
+
+rm -rf "$BIN" && mkdir -p "$BIN"
+javac -encoding UTF-8 -nowarn -cp "lib/*:$LIB/*" \
+    -processor org.openjdk.jmh.generators.BenchmarkProcessor \
+    -d "$BIN" $(find src bench/jmh/src -name '*.java')
+
+java -cp "$BIN:lib/*:$LIB/*" org.openjdk.jmh.Main -prof gc "$@"
@@ -0,0 +1,105 @@
+package api;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bench.BancoEmbutido;
+import dao.JogoDAO;
+import dao.LocacaoDAO;
+import model.Jogo;
+import model.Locacao;
+
+/**
+ * Serialização das respostas com o Gson da ApiLocadora (adaptadores de
+ * AdaptadoresJson). Fica no pacote api para usar o mesmo Gson das rotas. Os
+ * objetos vêm dos DAOs, lidos uma vez do H2 em memória.
+ *
+ * Os *Cbor serializam as mesmas listas em CBOR (Accept: application/cbor);
+ * o tamanho de cada formato é impresso no setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchJson {
+
+    @Param({ "10", "1000" })
+    int tamanho;
+
+    private List<Jogo> jogos;
+    private List<Locacao> locacoes;
+    private String locacaoJson;
+
+    @Setup
+    public void preparar() {
+        BancoEmbutido.iniciar(1_000);
+        locacoes = new LocacaoDAO().buscarPagina(null, tamanho);
+
+        // repete os jogos do script até o tamanho pedido
+        List<Jogo> doBanco = new JogoDAO().buscarTodos();
+        jogos = new ArrayList<>(tamanho);
+        for (int i = 0; i < tamanho; i++) {
+            jogos.add(doBanco.get(i % doBanco.size()));
+        }
+
+        locacaoJson = "{\"dataLocacao\": \"2025-12-01\", \"dataVencimento\": \"2026-01-20\", "
+                + "\"jogo\": {\"id\": 1}, \"cliente\": {\"id\": 1}}";
+
+        imprimirTamanhos("jogos", ApiLocadora.gson.toJson(jogos), serializarJogosCbor());
+        imprimirTamanhos("locacoes", ApiLocadora.gson.toJson(locacoes), serializarLocacoesCbor());
+    }
+
+    private void imprimirTamanhos(String lista, String json, byte[] cbor) {
+        int bytesJson = json.getBytes(StandardCharsets.UTF_8).length;
+        System.out.printf("%n%s (%d): JSON %d bytes, CBOR %d bytes (%.0f%%)%n", lista, tamanho, bytesJson,
+                cbor.length, 100.0 * cbor.length / bytesJson);
+    }
+
+    @Benchmark
+    public String serializarJogos() {
+        return ApiLocadora.gson.toJson(jogos);
+    }
+
+    // GET /locacoes?limit=: diasRestantes calculado pelo adaptador de Locacao
+    @Benchmark
+    public String serializarLocacoes() {
+        return ApiLocadora.gson.toJson(locacoes);
+    }
+
+    @Benchmark
+    public byte[] serializarJogosCbor() {
+        return (byte[]) Formato.CBOR.serializar(AdaptadoresJson.JOGO, jogos);
+    }
+
+    @Benchmark
+    public byte[] serializarLocacoesCbor() {
+        return (byte[]) Formato.CBOR.serializar(AdaptadoresJson.LOCACAO, locacoes);
+    }
+
+    @Benchmark
+    public Date desserializarData() {
+        return ApiLocadora.gson.fromJson("\"2025-12-01\"", Date.class);
+    }
+
+    @Benchmark
+    public Locacao desserializarLocacao() {
+        return ApiLocadora.gson.fromJson(locacaoJson, Locacao.class);
+    }
+}
@@ -0,0 +1,112 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Banco H2 em memória, no modo de compatibilidade com MySQL, criado a partir
+ * de bd/CreateScritpt.sql. Os benchmarks rodam sem MySQL.
+ *
+ * O dump do MySQL é filtrado antes de ir para o H2: os comentários
+ * condicionais (os que começam com /*!), SET, USE, CREATE DATABASE e
+ * LOCK TABLES são descartados; CREATE TABLE e INSERT passam como estão.
+ */
+public final class BancoEmbutido {
+
+    private static final String URL = "jdbc:h2:mem:gamestop;MODE=MySQL;DATABASE_TO_LOWER=TRUE;"
+            + "CASE_INSENSITIVE_IDENTIFIERS=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String SCRIPT = System.getProperty("bench.script", "bd/CreateScritpt.sql");
+
+    private static boolean iniciado;
+
+    private BancoEmbutido() {
+    }
+
+    /**
+     * Cria o esquema, carrega os dados do script e acrescenta locações até o
+     * total pedido. Deve ser chamado antes do primeiro uso de um DAO, porque
+     * o ConnectionFactory lê a URL uma única vez.
+     */
+    public static synchronized void iniciar(int totalLocacoes) {
+        if (iniciado) {
+            return;
+        }
+        System.setProperty("locadora.db.url", URL);
+        System.setProperty("locadora.db.usuario", "sa");
+        System.setProperty("locadora.db.senha", "");
+
+        try (Connection conn = DriverManager.getConnection(URL, "sa", "")) {
+            try (Statement stmt = conn.createStatement()) {
+                for (String comando : comandosDoScript()) {
+                    stmt.execute(comando);
+                }
+            }
+            completarLocacoes(conn, totalLocacoes);
+        } catch (IOException | SQLException e) {
+            throw new IllegalStateException("Falha ao montar o banco H2 a partir de " + SCRIPT, e);
+        }
+        iniciado = true;
+    }
+
+    private static String[] comandosDoScript() throws IOException {
+        String script = new String(Files.readAllBytes(Paths.get(SCRIPT)), StandardCharsets.UTF_8)
+                .replaceAll("(?s)/\\*!.*?\\*/", "")
+                .replaceAll("(?m)^--.*$", "");
+
+        return Arrays.stream(script.split(";\\s*(\\r?\\n|$)"))
+                .map(String::trim)
+                .filter(c -> !c.isEmpty())
+                .filter(c -> {
+                    String inicio = c.toUpperCase();
+                    return !inicio.startsWith("CREATE DATABASE") && !inicio.startsWith("USE ")
+                            && !inicio.startsWith("SET ") && !inicio.startsWith("LOCK TABLES")
+                            && !inicio.startsWith("UNLOCK TABLES");
+                })
+                .toArray(String[]::new);
+    }
+
+    // repete jogos e clientes do script até chegar ao total de locações
+    private static void completarLocacoes(Connection conn, int total) throws SQLException {
+        int existentes;
+        int jogos;
+        int clientes;
+        try (Statement stmt = conn.createStatement()) {
+            existentes = contar(stmt, "locacao");
+            jogos = contar(stmt, "jogo");
+            clientes = contar(stmt, "cliente");
+        }
+
+        String sql = "INSERT INTO locacao (data_locacao, data_devolucao, jogo_id, cliente_id) "
+                + "SELECT ?, ?, (SELECT id FROM jogo ORDER BY id LIMIT 1 OFFSET ?), "
+                + "(SELECT id FROM cliente ORDER BY id LIMIT 1 OFFSET ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            LocalDate base = LocalDate.now().minusDays(30);
+            for (int i = existentes; i < total; i++) {
+                stmt.setDate(1, Date.valueOf(base.plusDays(i % 30)));
+                stmt.setDate(2, Date.valueOf(base.plusDays(i % 30 + 7)));
+                stmt.setInt(3, i % jogos);
+                stmt.setInt(4, i % clientes);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private static int contar(Statement stmt, String tabela) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + tabela)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
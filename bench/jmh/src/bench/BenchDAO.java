@@ -0,0 +1,68 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dao.JogoDAO;
+import dao.LocacaoDAO;
+import model.Jogo;
+import model.Locacao;
+
+/**
+ * Consulta + mapeamento das linhas em objetos nos DAOs, contra o H2 em
+ * memória (o tempo de rede do MySQL fica de fora, sobra o custo do código).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BenchDAO {
+
+    @Param({ "10", "1000" })
+    int tamanho;
+
+    private JogoDAO jogoDAO;
+    private LocacaoDAO locacaoDAO;
+
+    @Setup
+    public void preparar() {
+        BancoEmbutido.iniciar(1_000);
+        jogoDAO = new JogoDAO();
+        locacaoDAO = new LocacaoDAO();
+    }
+
+    @Benchmark
+    public List<Locacao> locacaoBuscarPagina() {
+        return locacaoDAO.buscarPagina(null, tamanho);
+    }
+
+    @Benchmark
+    public Locacao locacaoBuscarPorId() {
+        return locacaoDAO.buscarPorId(1L);
+    }
+
+    // o script tem poucos jogos: a página mede o mapeamento de todos eles
+    @Benchmark
+    public List<Jogo> jogoBuscarPagina() {
+        return jogoDAO.buscarPagina(null, tamanho);
+    }
+
+    @Benchmark
+    public Jogo jogoBuscarPorId() {
+        return jogoDAO.buscarPorId(1L);
+    }
+}
@@ -0,0 +1,523 @@
+package api;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import dao.DisponibilidadeDAO;
+import dao.Projecao;
+
+import model.Cliente;
+import model.Genero;
+import model.Jogo;
+import model.Locacao;
+import model.ReceitaMensal;
+
+/**
+ * Adaptadores Gson escritos à mão para as classes de model.
+ *
+ * Leem e escrevem direto no JsonReader/JsonWriter, sem reflexão e sem objetos
+ * intermediários. O de Locacao calcula diasRestantes enquanto escreve, então
+ * as rotas serializam a própria Locacao em vez de montar um mapa por linha;
+ * o de Jogo, do mesmo jeito, acrescenta locacoesAbertas (DisponibilidadeDAO).
+ * Os de Jogo e Locacao também têm versões para uma Projecao (?fields= e
+ * ?expand=), que escrevem só os campos pedidos.
+ * Campos nulos são omitidos e campos desconhecidos na entrada são ignorados,
+ * como nos adaptadores por reflexão que estes substituem.
+ */
+class AdaptadoresJson {
+
+    // nullSafe(): aceita null na raiz (um "null" no corpo vira null e vice-versa)
+    static final TypeAdapter<Date> DATA = new AdaptadorData().nullSafe();
+    static final TypeAdapter<Genero> GENERO = new AdaptadorGenero().nullSafe();
+    static final TypeAdapter<Cliente> CLIENTE = new AdaptadorCliente().nullSafe();
+    static final TypeAdapter<Jogo> JOGO = new AdaptadorJogo(true, null).nullSafe();
+    // jogo dentro de uma locação: sem locacoesAbertas
+    static final TypeAdapter<Jogo> JOGO_EM_LOCACAO = new AdaptadorJogo(false, null).nullSafe();
+    static final TypeAdapter<Locacao> LOCACAO = new AdaptadorLocacao(null).nullSafe();
+    static final TypeAdapter<ReceitaMensal> RECEITA_MENSAL = new AdaptadorReceitaMensal().nullSafe();
+
+    private AdaptadoresJson() {
+    }
+
+    static Gson criarGson() {
+        return new GsonBuilder()
+                .registerTypeAdapter(Date.class, DATA)
+                .registerTypeAdapter(Genero.class, GENERO)
+                .registerTypeAdapter(Cliente.class, CLIENTE)
+                .registerTypeAdapter(Jogo.class, JOGO)
+                .registerTypeAdapter(Locacao.class, LOCACAO)
+                .registerTypeAdapter(ReceitaMensal.class, RECEITA_MENSAL)
+                .create();
+    }
+
+    // ------------------------------------
+    // PROJEÇÕES (?fields= / ?expand=)
+    // ------------------------------------
+    // projecao null: o adaptador completo, o mesmo registrado no Gson
+    static TypeAdapter<Jogo> jogo(Projecao projecao) {
+        return projecao == null ? JOGO : new AdaptadorJogo(true, projecao).nullSafe();
+    }
+
+    static TypeAdapter<Locacao> locacao(Projecao projecao) {
+        return projecao == null ? LOCACAO : new AdaptadorLocacao(projecao).nullSafe();
+    }
+
+    // Lista como array JSON, como gson.toJson(lista), com o adaptador informado
+    static <T> String paraJson(TypeAdapter<T> adaptador, List<T> itens) {
+        StringWriter saida = new StringWriter();
+        try {
+            JsonWriter out = new JsonWriter(saida);
+            out.setSerializeNulls(false);
+            out.beginArray();
+            for (T item : itens) {
+                adaptador.write(out, item);
+            }
+            out.endArray();
+        } catch (IOException e) {
+            // StringWriter não lança IOException
+            throw new IllegalStateException(e);
+        }
+        return saida.toString();
+    }
+
+    private static boolean inclui(Projecao projecao, String campo) {
+        return projecao == null || projecao.inclui(campo);
+    }
+
+    // ------------------------------------
+    // DIAS RESTANTES
+    // ------------------------------------
+    // Data de hoje (em dias desde 1970) e o instante em que ela vira; evita um
+    // LocalDate.now() por locação serializada
+    private static final class Hoje {
+        final long dia;
+        final long validoAteMillis;
+
+        Hoje(long dia, long validoAteMillis) {
+            this.dia = dia;
+            this.validoAteMillis = validoAteMillis;
+        }
+    }
+
+    private static volatile Hoje hoje = new Hoje(0, 0);
+
+    private static long diaDeHoje() {
+        Hoje atual = hoje;
+        if (System.currentTimeMillis() >= atual.validoAteMillis) {
+            ZoneId zona = ZoneId.systemDefault();
+            LocalDate data = LocalDate.now(zona);
+            atual = new Hoje(data.toEpochDay(), data.plusDays(1).atStartOfDay(zona).toInstant().toEpochMilli());
+            hoje = atual;
+        }
+        return atual.dia;
+    }
+
+    // Dias até o vencimento; zero se já venceu
+    static Long calcularDiasRestantes(Date dataVencimento) {
+        if (dataVencimento == null) {
+            return null;
+        }
+        long dias = dataVencimento.toLocalDate().toEpochDay() - diaDeHoje();
+        return dias < 0 ? 0L : dias;
+    }
+
+    // ------------------------------------
+    // ESCRITA DE VALORES
+    // ------------------------------------
+    // Campos nulos não são escritos. Os números vão pelas sobrecargas
+    // primitivas do JsonWriter, que alocam menos que value(Number)
+    private static void escrever(JsonWriter out, String nome, Long valor) throws IOException {
+        if (valor != null) {
+            out.name(nome).value(valor.longValue());
+        }
+    }
+
+    private static void escrever(JsonWriter out, String nome, Integer valor) throws IOException {
+        if (valor != null) {
+            out.name(nome).value(valor.longValue());
+        }
+    }
+
+    private static void escrever(JsonWriter out, String nome, Double valor) throws IOException {
+        if (valor != null) {
+            out.name(nome).value(valor.doubleValue());
+        }
+    }
+
+    private static void escrever(JsonWriter out, String nome, String valor) throws IOException {
+        if (valor != null) {
+            out.name(nome).value(valor);
+        }
+    }
+
+    private static <T> void escrever(JsonWriter out, String nome, TypeAdapter<T> adaptador, T valor)
+            throws IOException {
+        if (valor != null) {
+            out.name(nome);
+            adaptador.write(out, valor);
+        }
+    }
+
+    // relação não expandida: só {"id": ...}
+    private static void escreverReferencia(JsonWriter out, String nome, Long id) throws IOException {
+        if (id != null) {
+            out.name(nome).beginObject().name("id").value(id.longValue()).endObject();
+        }
+    }
+
+    // ------------------------------------
+    // LEITURA DE VALORES
+    // ------------------------------------
+    // O JsonReader lança NumberFormatException para números inválidos; as rotas
+    // tratam essa exceção como ID inválido na URL, então vira erro de JSON aqui
+    private static Long lerLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static Integer lerInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return in.nextInt();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static Double lerDouble(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return in.nextDouble();
+        } catch (NumberFormatException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    private static String lerString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    // ------------------------------------
+    // java.sql.Date (yyyy-MM-dd)
+    // ------------------------------------
+    private static final class AdaptadorData extends TypeAdapter<Date> {
+        @Override
+        public void write(JsonWriter out, Date data) throws IOException {
+            if (out instanceof EscritorCbor) {
+                // em CBOR a data vai como número de dias, sem passar por texto
+                ((EscritorCbor) out).data(data);
+                return;
+            }
+            // Date.toString() já é yyyy-MM-dd, o mesmo formato aceito na entrada
+            out.value(data.toString());
+        }
+
+        @Override
+        public Date read(JsonReader in) throws IOException {
+            return Date.valueOf(in.nextString());
+        }
+    }
+
+    // ------------------------------------
+    // GÊNERO
+    // ------------------------------------
+    private static final class AdaptadorGenero extends TypeAdapter<Genero> {
+        @Override
+        public void write(JsonWriter out, Genero genero) throws IOException {
+            out.beginObject();
+            escrever(out, "id", genero.getId());
+            escrever(out, "nome", genero.getNome());
+            escrever(out, "versao", genero.getVersao());
+            out.endObject();
+        }
+
+        @Override
+        public Genero read(JsonReader in) throws IOException {
+            Genero genero = new Genero();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        genero.setId(lerLong(in));
+                        break;
+                    case "nome":
+                        genero.setNome(lerString(in));
+                        break;
+                    case "versao":
+                        genero.setVersao(lerInteger(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return genero;
+        }
+    }
+
+    // ------------------------------------
+    // CLIENTE
+    // ------------------------------------
+    private static final class AdaptadorCliente extends TypeAdapter<Cliente> {
+        @Override
+        public void write(JsonWriter out, Cliente cliente) throws IOException {
+            out.beginObject();
+            escrever(out, "id", cliente.getId());
+            escrever(out, "nome", cliente.getNome());
+            escrever(out, "idade", cliente.getIdade());
+            escrever(out, "versao", cliente.getVersao());
+            out.endObject();
+        }
+
+        @Override
+        public Cliente read(JsonReader in) throws IOException {
+            Cliente cliente = new Cliente();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        cliente.setId(lerLong(in));
+                        break;
+                    case "nome":
+                        cliente.setNome(lerString(in));
+                        break;
+                    case "idade":
+                        cliente.setIdade(lerInteger(in));
+                        break;
+                    case "versao":
+                        cliente.setVersao(lerInteger(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return cliente;
+        }
+    }
+
+    // ------------------------------------
+    // JOGO
+    // ------------------------------------
+    private static final class AdaptadorJogo extends TypeAdapter<Jogo> {
+        private final boolean comDisponibilidade;
+        // null: todos os campos, com o gênero expandido
+        private final Projecao projecao;
+
+        AdaptadorJogo(boolean comDisponibilidade, Projecao projecao) {
+            this.comDisponibilidade = comDisponibilidade;
+            this.projecao = projecao;
+        }
+
+        @Override
+        public void write(JsonWriter out, Jogo jogo) throws IOException {
+            out.beginObject();
+            escrever(out, "id", jogo.getId());
+            if (projecao == null) {
+                escrever(out, "nome", jogo.getNome());
+                escrever(out, "preco", jogo.getPreco());
+                escrever(out, "idadeMinima", jogo.getIdadeMinima());
+                escrever(out, "genero", GENERO, jogo.getGenero());
+                escrever(out, "versao", jogo.getVersao());
+            } else {
+                escreverProjetado(out, jogo);
+            }
+            if (comDisponibilidade && jogo.getId() != null && inclui(projecao, "locacoesAbertas")) {
+                // null (omitido) enquanto os contadores não foram carregados
+                escrever(out, "locacoesAbertas", DisponibilidadeDAO.locacoesAbertas(jogo.getId()));
+            }
+            out.endObject();
+        }
+
+        private void escreverProjetado(JsonWriter out, Jogo jogo) throws IOException {
+            if (projecao.inclui("nome")) {
+                escrever(out, "nome", jogo.getNome());
+            }
+            if (projecao.inclui("preco")) {
+                escrever(out, "preco", jogo.getPreco());
+            }
+            if (projecao.inclui("idadeMinima")) {
+                escrever(out, "idadeMinima", jogo.getIdadeMinima());
+            }
+            if (projecao.expande("genero")) {
+                escrever(out, "genero", GENERO, jogo.getGenero());
+            } else if (projecao.inclui("genero") && jogo.getGenero() != null) {
+                escreverReferencia(out, "genero", jogo.getGenero().getId());
+            }
+            if (projecao.inclui("versao")) {
+                escrever(out, "versao", jogo.getVersao());
+            }
+        }
+
+        @Override
+        public Jogo read(JsonReader in) throws IOException {
+            Jogo jogo = new Jogo();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        jogo.setId(lerLong(in));
+                        break;
+                    case "nome":
+                        jogo.setNome(lerString(in));
+                        break;
+                    case "preco":
+                        jogo.setPreco(lerDouble(in));
+                        break;
+                    case "idadeMinima":
+                        jogo.setIdadeMinima(lerInteger(in));
+                        break;
+                    case "genero":
+                        jogo.setGenero(GENERO.read(in));
+                        break;
+                    case "versao":
+                        jogo.setVersao(lerInteger(in));
+                        break;
+                    default:
+                        // locacoesAbertas é só de saída
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return jogo;
+        }
+    }
+
+    // ------------------------------------
+    // LOCAÇÃO
+    // ------------------------------------
+    private static final class AdaptadorLocacao extends TypeAdapter<Locacao> {
+        // null: todos os campos. Com projeção o LocacaoDAO já deixou nulos os
+        // campos não pedidos; aqui só falta a data que veio para o cálculo de
+        // diasRestantes (ou o contrário)
+        private final Projecao projecao;
+
+        AdaptadorLocacao(Projecao projecao) {
+            this.projecao = projecao;
+        }
+
+        @Override
+        public void write(JsonWriter out, Locacao locacao) throws IOException {
+            out.beginObject();
+            escrever(out, "id", locacao.getId());
+            escrever(out, "dataLocacao", DATA, locacao.getDataLocacao());
+            if (inclui(projecao, "dataVencimento")) {
+                escrever(out, "dataVencimento", DATA, locacao.getDataVencimento());
+            }
+            if (inclui(projecao, "diasRestantes")) {
+                escrever(out, "diasRestantes", calcularDiasRestantes(locacao.getDataVencimento()));
+            }
+            escrever(out, "jogo", JOGO_EM_LOCACAO, locacao.getJogo());
+            escrever(out, "cliente", CLIENTE, locacao.getCliente());
+            escrever(out, "versao", locacao.getVersao());
+            out.endObject();
+        }
+
+        @Override
+        public Locacao read(JsonReader in) throws IOException {
+            Locacao locacao = new Locacao();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":
+                        locacao.setId(lerLong(in));
+                        break;
+                    case "dataLocacao":
+                        locacao.setDataLocacao(DATA.read(in));
+                        break;
+                    case "dataVencimento":
+                        locacao.setDataVencimento(DATA.read(in));
+                        break;
+                    case "jogo":
+                        locacao.setJogo(JOGO_EM_LOCACAO.read(in));
+                        break;
+                    case "cliente":
+                        locacao.setCliente(CLIENTE.read(in));
+                        break;
+                    case "versao":
+                        locacao.setVersao(lerInteger(in));
+                        break;
+                    default:
+                        // diasRestantes é só de saída
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return locacao;
+        }
+    }
+
+    // ------------------------------------
+    // RECEITA MENSAL (relatório)
+    // ------------------------------------
+    private static final class AdaptadorReceitaMensal extends TypeAdapter<ReceitaMensal> {
+        @Override
+        public void write(JsonWriter out, ReceitaMensal receita) throws IOException {
+            out.beginObject();
+            escrever(out, "mes", receita.getMes());
+            escrever(out, "generoId", receita.getGeneroId());
+            escrever(out, "genero", receita.getGenero());
+            escrever(out, "locacoes", receita.getLocacoes());
+            escrever(out, "receita", receita.getReceita());
+            out.endObject();
+        }
+
+        @Override
+        public ReceitaMensal read(JsonReader in) throws IOException {
+            ReceitaMensal receita = new ReceitaMensal();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "mes":
+                        receita.setMes(lerString(in));
+                        break;
+                    case "generoId":
+                        receita.setGeneroId(lerLong(in));
+                        break;
+                    case "genero":
+                        receita.setGenero(lerString(in));
+                        break;
+                    case "locacoes":
+                        receita.setLocacoes(lerLong(in));
+                        break;
+                    case "receita":
+                        receita.setReceita(lerDouble(in));
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return receita;
+        }
+    }
+}
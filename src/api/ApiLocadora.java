@@ -4,26 +4,38 @@ import static spark.Spark.after;
 import static spark.Spark.before;
 import static spark.Spark.delete;
 import static spark.Spark.get;
+import static spark.Spark.halt;
 import static spark.Spark.port;
 import static spark.Spark.post;
 import static spark.Spark.put;
 
-import java.sql.Date;
+import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
+import com.google.gson.TypeAdapter;
 
 import dao.ClienteDAO;
+import dao.ConfirmacaoEmGrupo;
+import dao.DiarioLocacoes;
+import dao.DisponibilidadeDAO;
+import dao.FiltroLocacao;
 import dao.GeneroDAO;
 import dao.JogoDAO;
 import dao.LocacaoDAO;
+import dao.Projecao;
+import dao.ReceitaDAO;
+import dao.ResultadoLocacao;
 import model.Cliente;
 import model.Genero;
 import model.Jogo;
@@ -32,6 +44,11 @@ import spark.Filter;
 import spark.Request;
 import spark.Response;
 import spark.Route;
+import util.BancoIndisponivelException;
+import util.ChamadaUnica;
+import util.ConnectionFactory;
+import util.Metricas;
+import util.PoolConexoes;
 
 public class ApiLocadora {
 
@@ -39,57 +56,418 @@ public class ApiLocadora {
     private static final JogoDAO jogoDAO = new JogoDAO();
     private static final ClienteDAO clienteDAO = new ClienteDAO();
     private static final GeneroDAO generoDAO = new GeneroDAO();
+    private static final ReceitaDAO receitaDAO = new ReceitaDAO();
 
-    // Gson com adaptador para java.sql.Date
-    private static final Gson gson = new GsonBuilder()
-            .registerTypeAdapter(java.sql.Date.class, (JsonDeserializer<Date>) (json, typeOfT, context) -> {
-                return java.sql.Date.valueOf(json.getAsString());
-            })
-            .create();
+    // Gson com os adaptadores de model escritos à mão (visível no pacote para os benchmarks)
+    static final Gson gson = AdaptadoresJson.criarGson();
 
     private static final String APPLICATION_JSON = "application/json";
 
-    // Calcula os dias restantes para devolução
-    private static Long calcularDiasRestantes(Date dataVencimento) {
-        if (dataVencimento == null) {
+    // paginação por cursor (?after=&limit=)
+    private static final int LIMITE_PADRAO = 100;
+    private static final int LIMITE_MAXIMO = 1000;
+    private static final String HEADER_PROXIMO_CURSOR = "X-Proximo-Cursor";
+
+    // busca por nome (?q=&limit=)
+    private static final int LIMITE_BUSCA_PADRAO = 10;
+    private static final int LIMITE_BUSCA_MAXIMO = 50;
+
+    // JSON do catálogo de jogos já serializado, reaproveitado enquanto a versão
+    // do catálogo e a dos contadores de disponibilidade não mudam
+    private static volatile CatalogoJson catalogoJson;
+
+    private static final class CatalogoJson {
+        final long versao;
+        final long versaoDisponibilidade;
+        final String json;
+
+        CatalogoJson(long versao, long versaoDisponibilidade, String json) {
+            this.versao = versao;
+            this.versaoDisponibilidade = versaoDisponibilidade;
+            this.json = json;
+        }
+    }
+
+    // ?fields= e ?expand= aceitos em cada listagem; sem ?expand= valem as expansões padrão
+    private static final Set<String> CAMPOS_LOCACAO = new HashSet<>(Arrays.asList(
+            "id", "dataLocacao", "dataVencimento", "diasRestantes", "jogo", "cliente", "versao"));
+    private static final Set<String> RELACOES_LOCACAO = new HashSet<>(Arrays.asList("jogo", "cliente", "genero"));
+    private static final Set<String> EXPANSAO_PADRAO_LOCACAO = new HashSet<>(Arrays.asList("jogo", "cliente"));
+    private static final Set<String> CAMPOS_JOGO = new HashSet<>(Arrays.asList(
+            "id", "nome", "preco", "idadeMinima", "genero", "versao", "locacoesAbertas"));
+    private static final Set<String> RELACOES_JOGO = new HashSet<>(Arrays.asList("genero"));
+
+    // GET /export/:entidade.ndjson
+    private static final String EXTENSAO_EXPORTACAO = ".ndjson";
+    private static final Set<String> ENTIDADES_EXPORTACAO = new HashSet<>(Arrays.asList("locacoes", "jogos", "clientes"));
+
+    // máximo de locações aceitas em um POST /locacoes/batch
+    private static final int LIMITE_LOTE = 500;
+
+    // resposta 412 quando o If-Match não corresponde mais à versão gravada
+    private static final String MENSAGEM_VERSAO_DIVERGENTE =
+            "{\"mensagem\": \"O registro foi alterado por outra requisição. Busque a versão atual e tente novamente.\"}";
+
+    // Verifica se a requisição pediu paginação por cursor
+    private static boolean paginado(Request request) {
+        return request.queryParams("after") != null || request.queryParams("limit") != null;
+    }
+
+    // Lê o cursor (último ID já recebido); ausente = desde o início
+    private static Long lerCursor(Request request) {
+        String after = request.queryParams("after");
+        if (after == null || after.isEmpty()) {
             return null;
         }
-        LocalDate hoje = LocalDate.now();
-        LocalDate vencimento = dataVencimento.toLocalDate();
-        Long dias = ChronoUnit.DAYS.between(hoje, vencimento);
-        if (dias < 0 ){
-            return (long) 0;
+        return Long.parseLong(after);
+    }
+
+    // Lê o tamanho da página, limitado a LIMITE_MAXIMO
+    private static int lerLimite(Request request) {
+        return lerLimite(request, LIMITE_PADRAO, LIMITE_MAXIMO);
+    }
+
+    private static int lerLimite(Request request, int padrao, int maximo) {
+        String limit = request.queryParams("limit");
+        if (limit == null || limit.isEmpty()) {
+            return padrao;
         }
-        return dias;
+        int limite = Integer.parseInt(limit);
+        if (limite < 1) {
+            throw new NumberFormatException("limit deve ser positivo");
+        }
+        return Math.min(limite, maximo);
     }
 
-    // Adiciona campo de dias restantes ao JSON da locação
-    private static Map<String, Object> locacaoComDiasRestantes(Locacao locacao) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", locacao.getId());
-        map.put("dataLocacao", locacao.getDataLocacao());
-        map.put("dataVencimento", locacao.getDataVencimento());
-        map.put("jogo", locacao.getJogo());
-        map.put("cliente", locacao.getCliente());
-        map.put("diasRestantes", calcularDiasRestantes(locacao.getDataVencimento()));
-        return map;
+    // Lê os filtros de GET /locacoes; IllegalArgumentException com o parâmetro inválido
+    private static FiltroLocacao lerFiltroLocacao(Request request) {
+        FiltroLocacao filtro = new FiltroLocacao();
+        filtro.setClienteId(lerIdFiltro(request, "clienteId"));
+        filtro.setJogoId(lerIdFiltro(request, "jogoId"));
+        filtro.setDe(lerDataFiltro(request, "de"));
+        filtro.setAte(lerDataFiltro(request, "ate"));
+
+        String status = request.queryParams("status");
+        if (status != null && !status.isEmpty()) {
+            if ("aberta".equals(status)) {
+                filtro.setStatus(FiltroLocacao.Status.ABERTA);
+            } else if ("vencida".equals(status)) {
+                filtro.setStatus(FiltroLocacao.Status.VENCIDA);
+            } else {
+                throw new IllegalArgumentException("status deve ser aberta ou vencida.");
+            }
+        }
+        return filtro;
+    }
+
+    private static Long lerIdFiltro(Request request, String nome) {
+        String valor = request.queryParams(nome);
+        if (valor == null || valor.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.parseLong(valor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(nome + " deve ser um número.");
+        }
+    }
+
+    private static java.sql.Date lerDataFiltro(Request request, String nome) {
+        String valor = request.queryParams(nome);
+        if (valor == null || valor.isEmpty()) {
+            return null;
+        }
+        try {
+            return java.sql.Date.valueOf(valor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(nome + " deve estar no formato yyyy-MM-dd.");
+        }
+    }
+
+    // Lê ?fields= e ?expand=; null se nenhum dos dois veio (resposta completa).
+    // IllegalArgumentException com o nome desconhecido
+    private static Projecao lerProjecao(Request request, Set<String> campos, Set<String> relacoes,
+            Set<String> expansaoPadrao) {
+        String fields = request.queryParams("fields");
+        String expand = request.queryParams("expand");
+        if (fields == null && expand == null) {
+            return null;
+        }
+        Set<String> selecionados = fields != null ? lerNomes(fields, campos, "fields") : null;
+        Set<String> expandidas = expand != null ? lerNomes(expand, relacoes, "expand") : expansaoPadrao;
+        return new Projecao(selecionados, expandidas);
+    }
+
+    private static Set<String> lerNomes(String lista, Set<String> validos, String parametro) {
+        Set<String> nomes = new HashSet<>();
+        for (String nome : lista.split(",")) {
+            String limpo = nome.trim();
+            if (limpo.isEmpty()) {
+                continue;
+            }
+            if (!validos.contains(limpo)) {
+                throw new IllegalArgumentException(parametro + " não aceita '" + limpo + "'.");
+            }
+            nomes.add(limpo);
+        }
+        return nomes;
+    }
+
+    // Mês de um filtro de relatório: yyyy-MM, ou yyyy-MM-dd (vale o mês da data)
+    private static YearMonth lerMesFiltro(Request request, String nome) {
+        String valor = request.queryParams(nome);
+        if (valor == null || valor.isEmpty()) {
+            return null;
+        }
+        try {
+            return valor.length() > 7 ? YearMonth.from(LocalDate.parse(valor)) : YearMonth.parse(valor);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(nome + " deve estar no formato yyyy-MM ou yyyy-MM-dd.");
+        }
+    }
+
+    // Página cheia: informa o cursor da próxima página no header
+    private static void definirProximoCursor(Response response, int tamanhoPagina, int limite, Long ultimoId) {
+        if (tamanhoPagina == limite && ultimoId != null) {
+            response.header(HEADER_PROXIMO_CURSOR, String.valueOf(ultimoId));
+        }
+    }
+
+    // ETag do catálogo de jogos (a mesma para a lista e para cada jogo); inclui a
+    // versão da disponibilidade porque os jogos trazem locacoesAbertas
+    private static String etagCatalogo(long versao, long versaoDisponibilidade) {
+        return etagCatalogo(versao, versaoDisponibilidade, Formato.JSON);
+    }
+
+    // cada formato é uma representação diferente, com ETag própria
+    private static String etagCatalogo(long versao, long versaoDisponibilidade, Formato formato) {
+        String sufixo = formato == Formato.JSON ? "" : "-" + formato.name().toLowerCase(Locale.ROOT);
+        return "\"jogos-" + versao + "-" + versaoDisponibilidade + sufixo + "\"";
+    }
+
+    // Verifica se alguma ETag do If-None-Match corresponde à atual
+    private static boolean etagCorresponde(Request request, String etag) {
+        String ifNoneMatch = request.headers("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidata : ifNoneMatch.split(",")) {
+            String valor = candidata.trim();
+            if (valor.startsWith("W/")) {
+                valor = valor.substring(2);
+            }
+            if (valor.equals("*") || valor.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Versão esperada pelo If-Match ("3", W/"3" ou 3); null sem header ou com "*".
+    // Lança NumberFormatException se o valor não for uma versão.
+    private static Integer lerIfMatch(Request request) {
+        String ifMatch = request.headers("If-Match");
+        if (ifMatch == null) {
+            return null;
+        }
+        String valor = ifMatch.trim();
+        if (valor.equals("*")) {
+            return null;
+        }
+        if (valor.startsWith("W/")) {
+            valor = valor.substring(2);
+        }
+        if (valor.length() >= 2 && valor.startsWith("\"") && valor.endsWith("\"")) {
+            valor = valor.substring(1, valor.length() - 1);
+        }
+        return Integer.parseInt(valor);
+    }
+
+    // Verifica se a locação recebida informa o ID do jogo e do cliente
+    private static boolean possuiJogoECliente(Locacao locacao) {
+        return locacao != null
+                && locacao.getJogo() != null && locacao.getJogo().getId() != null
+                && locacao.getCliente() != null && locacao.getCliente().getId() != null;
+    }
+
+    // Converte uma gravação de locação recusada pelo banco na resposta HTTP
+    private static String respostaFalhaLocacao(ResultadoLocacao resultado, Locacao locacao, Response response) {
+        switch (resultado.getStatus()) {
+            case LOCACAO_NAO_ENCONTRADA:
+                response.status(404);
+                return "{\"mensagem\": \"Locação não encontrada para atualização.\"}";
+            case VERSAO_DIVERGENTE:
+                response.status(412);
+                return MENSAGEM_VERSAO_DIVERGENTE;
+            case JOGO_NAO_ENCONTRADO:
+                response.status(400);
+                return "{\"mensagem\": \"Jogo com ID " + locacao.getJogo().getId() + " não encontrado.\"}";
+            case CLIENTE_NAO_ENCONTRADO:
+                response.status(400);
+                return "{\"mensagem\": \"Cliente com ID " + locacao.getCliente().getId() + " não encontrado.\"}";
+            case IDADE_INSUFICIENTE:
+                response.status(400);
+                return "{\"mensagem\": \"O cliente não possui idade suficiente para locar este jogo. Idade mínima: "
+                        + resultado.getIdadeMinima() + " anos.\"}";
+            case FILA_CHEIA:
+                response.status(503);
+                response.header("Retry-After", "1");
+                return "{\"mensagem\": \"Muitas locações aguardando gravação. Tente novamente em instantes.\"}";
+            default:
+                response.status(409);
+                return "{\"mensagem\": \"Jogo ou cliente alterado durante a operação. Tente novamente.\"}";
+        }
+    }
+
+    // Com o banco fora do ar, confere a locação com o que está em memória
+    // (catálogo de jogos e índice de clientes, os dois já carregados).
+    // Devolve a mensagem de erro ou null se, pelo que se sabe sem o banco,
+    // ela pode ser aceita.
+    private static String validarSemBanco(Locacao locacao, JogoDAO.Catalogo catalogo) {
+        if (locacao.getDataLocacao() == null) {
+            return "dataLocacao é obrigatória.";
+        }
+        Jogo jogo = catalogo.buscar(locacao.getJogo().getId());
+        if (jogo == null) {
+            return "Jogo com ID " + locacao.getJogo().getId() + " não encontrado.";
+        }
+        Cliente cliente = ClienteDAO.buscarEmCache(locacao.getCliente().getId());
+        if (cliente == null) {
+            return "Cliente com ID " + locacao.getCliente().getId() + " não encontrado.";
+        }
+        if (jogo.getIdadeMinima() != null && cliente.getIdade() != null
+                && cliente.getIdade() < jogo.getIdadeMinima()) {
+            return "O cliente não possui idade suficiente para locar este jogo. Idade mínima: "
+                    + jogo.getIdadeMinima() + " anos.";
+        }
+        return null;
+    }
+
+    // POST /locacoes com o banco fora do ar: grava no diário local e responde
+    // 202 com a chave do registro; sem diário, ou sem o catálogo e o índice de
+    // clientes em memória para conferir a locação, 503
+    private static String aceitarNoDiario(Locacao locacao, Response response) {
+        JogoDAO.Catalogo catalogo = JogoDAO.catalogoEmCache();
+        if (!DiarioLocacoes.isAtivo() || catalogo == null || !ClienteDAO.isIndiceCarregado()) {
+            // aceitar sem conferir seria prometer uma locação que a reaplicação pode recusar
+            response.status(503);
+            response.header("Retry-After", "5");
+            return "{\"mensagem\": \"Banco de dados indisponível. Tente novamente em instantes.\"}";
+        }
+        String erro = validarSemBanco(locacao, catalogo);
+        if (erro != null) {
+            response.status(400);
+            return "{\"mensagem\": \"" + erro + "\"}";
+        }
+
+        DiarioLocacoes.Registro registro = DiarioLocacoes.registrar(locacao);
+        Map<String, Object> corpo = new LinkedHashMap<>();
+        corpo.put("mensagem", "Banco de dados indisponível: locação aceita e será gravada quando o banco voltar.");
+        corpo.put("chave", registro.getChave());
+        corpo.put("locacao", locacao);
+        response.status(202);
+        return gson.toJson(corpo);
+    }
+
+    // Carga de um cache na inicialização; com o banco fora do ar a API sobe
+    // mesmo assim (o diário aceita locações) e o cache é montado depois
+    private static void carregarNaInicializacao(String nome, Runnable carga) {
+        try {
+            carga.run();
+        } catch (BancoIndisponivelException e) {
+            System.err.println("Banco indisponível na inicialização: carga de " + nome + " adiada.");
+        } catch (RuntimeException e) {
+            System.err.println("Erro na inicialização: carga de " + nome + " adiada. Detalhes: " + e.getMessage());
+        }
+    }
+
+    // Valida um item do lote; devolve a mensagem de erro ou null se estiver ok
+    private static String validarItemLote(Locacao locacao, Map<Long, Jogo> jogos, Map<Long, Cliente> clientes) {
+        if (locacao == null) {
+            return "Locação vazia.";
+        }
+        if (locacao.getDataLocacao() == null) {
+            return "dataLocacao é obrigatória.";
+        }
+        if (locacao.getJogo() == null || locacao.getJogo().getId() == null
+                || locacao.getCliente() == null || locacao.getCliente().getId() == null) {
+            return "jogo.id e cliente.id são obrigatórios.";
+        }
+        Jogo jogo = jogos.get(locacao.getJogo().getId());
+        if (jogo == null) {
+            return "Jogo com ID " + locacao.getJogo().getId() + " não encontrado.";
+        }
+        Cliente cliente = clientes.get(locacao.getCliente().getId());
+        if (cliente == null) {
+            return "Cliente com ID " + locacao.getCliente().getId() + " não encontrado.";
+        }
+        if (jogo.getIdadeMinima() != null && cliente.getIdade() != null
+                && cliente.getIdade() < jogo.getIdadeMinima()) {
+            return "O cliente não possui idade suficiente para locar este jogo. Idade mínima: "
+                    + jogo.getIdadeMinima() + " anos.";
+        }
+        return null;
     }
 
     public static void main(String[] args) {
+        // threads de plataforma ou virtual threads (-Dlocadora.execucao=virtual)
+        ModoExecucao.configurar();
         port(4567);
 
+        // Latência por rota (primeiro filtro, para incluir a espera na admissão)
+        MetricasRotas.instalar();
+
         // Filtro CORS
         before((request, response) -> {
             response.header("Access-Control-Allow-Origin", "*");
             response.header("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-            response.header("Access-Control-Allow-Headers", "Content-Type, Authorization");
+            response.header("Access-Control-Allow-Headers", "Content-Type, Authorization, If-None-Match, If-Match, "
+                    + Idempotencia.HEADER_CHAVE);
+            response.header("Access-Control-Expose-Headers", "ETag, Retry-After, " + HEADER_PROXIMO_CURSOR + ", "
+                    + Idempotencia.HEADER_REPETIDA);
         });
 
-        // Filtro para JSON
+        // Filtro If-Match: PUT e DELETE só chegam às rotas com uma versão válida
+        before((request, response) -> {
+            String metodo = request.requestMethod();
+            if (!"PUT".equals(metodo) && !"DELETE".equals(metodo)) {
+                return;
+            }
+            try {
+                lerIfMatch(request);
+            } catch (NumberFormatException e) {
+                response.type(APPLICATION_JSON);
+                halt(400, "{\"mensagem\": \"If-Match inválido. Use a versão do registro, ex.: \\\"3\\\".\"}");
+            }
+        });
+
+        // gravação em grupo de POST /locacoes (opcional): um commit para várias
+        // locações; antes das rotas, para a primeira requisição já usar a fila
+        if (Boolean.getBoolean("locadora.escrita.grupo")) {
+            ConfirmacaoEmGrupo.iniciar(Integer.getInteger("locadora.escrita.grupo.maxLinhas", 100),
+                    Long.getLong("locadora.escrita.grupo.maxEsperaMs", 2L),
+                    Integer.getInteger("locadora.escrita.grupo.fila", 1000));
+        }
+
+        // diário local (opcional): com o banco fora do ar, POST /locacoes grava a
+        // locação em arquivo e responde 202; a reaplicação começa quando o banco volta
+        String arquivoDiario = System.getProperty("locadora.diario.arquivo");
+        if (arquivoDiario != null && !arquivoDiario.isEmpty()) {
+            DiarioLocacoes.iniciar(Paths.get(arquivoDiario));
+        }
+
+        // Idempotency-Key nos POST: repetições recebem a resposta guardada sem
+        // executar a rota; antes da admissão, para não ocupar vaga
+        Idempotencia.instalar();
+
+        // Controle de admissão: limita leituras e escritas simultâneas no banco
+        ControleAdmissao.instalar();
+
+        // Filtro para JSON: só quando a rota não definiu o tipo (/metrics, CBOR negociado)
         after(new Filter() {
             @Override
             public void handle(Request request, Response response) {
-                if (!request.pathInfo().equals("/")) {
+                if (!request.pathInfo().equals("/") && response.raw().getContentType() == null) {
                     response.type(APPLICATION_JSON);
                 }
             }
@@ -100,17 +478,22 @@ public class ApiLocadora {
             res.type("text/html");
             return "<h1>API de Locadora de Jogos</h1>" +
                     "<h2>Endpoints disponíveis:</h2>" +
+                    "<ul>" +
+                    "<li>GET /status - Estado do pool de conexões e dos caches</li>" +
+                    "<li>GET /metrics - Métricas no formato do Prometheus</li>" +
+                    "</ul>" +
                     "<h3>Locações</h3>" +
                     "<ul>" +
-                    "<li>GET /locacoes - Listar todas as locações</li>" +
+                    "<li>GET /locacoes - Listar todas as locações (aceita ?after=&limit=)</li>" +
                     "<li>GET /locacoes/:id - Buscar locação por ID</li>" +
                     "<li>POST /locacoes - Criar nova locação</li>" +
+                    "<li>POST /locacoes/batch - Criar várias locações (array) em uma transação</li>" +
                     "<li>PUT /locacoes/:id - Atualizar locação</li>" +
                     "<li>DELETE /locacoes/:id - Deletar locação</li>" +
                     "</ul>" +
                     "<h3>Jogos</h3>" +
                     "<ul>" +
-                    "<li>GET /jogos - Listar todos os jogos</li>" +
+                    "<li>GET /jogos - Listar todos os jogos (aceita ?after=&limit=)</li>" +
                     "<li>GET /jogos/:id - Buscar jogo por ID</li>" +
                     "<li>POST /jogos - Criar novo jogo</li>" +
                     "<li>PUT /jogos/:id - Atualizar jogo</li>" +
@@ -118,7 +501,7 @@ public class ApiLocadora {
                     "</ul>" +
                     "<h3>Clientes</h3>" +
                     "<ul>" +
-                    "<li>GET /clientes - Listar todos os clientes</li>" +
+                    "<li>GET /clientes - Listar todos os clientes (aceita ?after=&limit=)</li>" +
                     "<li>GET /clientes/:id - Buscar cliente por ID</li>" +
                     "<li>POST /clientes - Criar novo cliente</li>" +
                     "<li>PUT /clientes/:id - Atualizar cliente</li>" +
@@ -134,20 +517,100 @@ public class ApiLocadora {
                     "</ul>";
         });
 
+        // GET /status - Estado do pool de conexões e dos caches
+        get("/status", (request, response) -> {
+            PoolConexoes pool = ConnectionFactory.getPool();
+
+            Map<String, Object> poolConexoes = new LinkedHashMap<>();
+            poolConexoes.put("total", pool.getTotal());
+            poolConexoes.put("ativas", pool.getAtivas());
+            poolConexoes.put("ociosas", pool.getOciosas());
+            poolConexoes.put("aguardando", pool.getAguardando());
+            poolConexoes.put("maximo", pool.getTamanhoMaximo());
+
+            Map<String, Object> cacheStatements = new LinkedHashMap<>();
+            cacheStatements.put("acertos", pool.getAcertosCacheStatements());
+            cacheStatements.put("falhas", pool.getFalhasCacheStatements());
+            cacheStatements.put("remocoes", pool.getRemocoesCacheStatements());
+
+            Map<String, Object> cacheGeneros = new LinkedHashMap<>();
+            cacheGeneros.put("acertos", GeneroDAO.getAcertosCache());
+            cacheGeneros.put("falhas", GeneroDAO.getFalhasCache());
+            cacheGeneros.put("invalidacoes", GeneroDAO.getInvalidacoesCache());
+
+            Map<String, Object> execucao = new LinkedHashMap<>();
+            execucao.put("modo", ModoExecucao.getModo());
+            execucao.put("threads", ModoExecucao.getThreads());
+            execucao.put("threadsOciosas", ModoExecucao.getThreadsOciosas());
+            execucao.put("threadsMaximo", ModoExecucao.getThreadsMaximo());
+
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("execucao", execucao);
+            status.put("admissao", ControleAdmissao.estatisticas());
+            status.put("poolConexoes", poolConexoes);
+            status.put("cacheStatements", cacheStatements);
+            status.put("cacheGeneros", cacheGeneros);
+            status.put("coalescencia", ChamadaUnica.estatisticas());
+            if (DiarioLocacoes.isAtivo()) {
+                status.put("diario", DiarioLocacoes.estatisticas());
+            }
+            return gson.toJson(status);
+        });
+
+        // GET /metrics - Latências e contadores no formato texto do Prometheus
+        Metricas.medidor("locadora_cache_generos_acertos_total", "Leituras de gêneros atendidas pelo snapshot",
+                Metricas.TIPO_CONTADOR, GeneroDAO::getAcertosCache);
+        Metricas.medidor("locadora_cache_generos_falhas_total", "Leituras de gêneros que recarregaram o snapshot",
+                Metricas.TIPO_CONTADOR, GeneroDAO::getFalhasCache);
+        Metricas.medidor("locadora_catalogo_jogos_versao", "Versão atual do catálogo de jogos",
+                Metricas.TIPO_MEDIDOR, JogoDAO::getVersaoCatalogo);
+        get("/metrics", (request, response) -> {
+            response.type("text/plain; version=0.0.4; charset=utf-8");
+            return Metricas.exportar();
+        });
+
         // ========================================
         // ROTAS DE LOCAÇÕES
         // ========================================
 
-        // GET /locacoes - Buscar todas
+        // GET /locacoes - Buscar todas (filtros opcionais: clienteId, jogoId, de, ate, status)
         get("/locacoes", new Route() {
             @Override
             public Object handle(Request request, Response response) {
-                List<Locacao> locacoes = locacaoDAO.buscarTodos();
-                List<Map<String, Object>> locacoesComDias = new ArrayList<>();
-                for (Locacao locacao : locacoes) {
-                    locacoesComDias.add(locacaoComDiasRestantes(locacao));
+                FiltroLocacao filtro;
+                Projecao projecao;
+                try {
+                    filtro = lerFiltroLocacao(request);
+                    projecao = lerProjecao(request, CAMPOS_LOCACAO, RELACOES_LOCACAO, EXPANSAO_PADRAO_LOCACAO);
+                    if (projecao != null && projecao.pediuExpansao("genero") && !projecao.expande("jogo")) {
+                        throw new IllegalArgumentException("expand=genero exige o jogo expandido.");
+                    }
+                } catch (IllegalArgumentException e) {
+                    response.status(400);
+                    return "{\"mensagem\": \"Filtros inválidos: " + e.getMessage() + "\"}";
+                }
+                // a projeção também reduz o SELECT: só as colunas e JOINs pedidos
+                TypeAdapter<Locacao> adaptador = AdaptadoresJson.locacao(projecao);
+                Formato formato = Formato.negociar(request);
+                response.header("Vary", "Accept");
+                if (!paginado(request)) {
+                    // sem paginação: escreve cada linha direto na resposta, sem montar a lista
+                    return JsonStreaming.transmitirArray(request, response, formato, adaptador,
+                            consumidor -> locacaoDAO.percorrer(filtro, projecao, null, consumidor));
+                }
+                List<Locacao> locacoes;
+                try {
+                    int limite = lerLimite(request);
+                    locacoes = locacaoDAO.buscarPagina(filtro, projecao, lerCursor(request), limite);
+                    Long ultimoId = locacoes.isEmpty() ? null : locacoes.get(locacoes.size() - 1).getId();
+                    definirProximoCursor(response, locacoes.size(), limite, ultimoId);
+                } catch (NumberFormatException e) {
+                    response.status(400);
+                    return "{\"mensagem\": \"Parâmetros de paginação inválidos.\"}";
                 }
-                return gson.toJson(locacoesComDias);
+                // diasRestantes é calculado pelo adaptador de Locacao
+                response.type(formato.tipo);
+                return formato.serializar(adaptador, locacoes);
             }
         });
 
@@ -160,7 +623,7 @@ public class ApiLocadora {
                     Locacao locacao = locacaoDAO.buscarPorId(id);
 
                     if (locacao != null) {
-                        return gson.toJson(locacaoComDiasRestantes(locacao));
+                        return gson.toJson(locacao);
                     } else {
                         response.status(404);
                         return "{\"mensagem\": \"Locação com ID " + id + " não encontrada\"}";
@@ -176,29 +639,29 @@ public class ApiLocadora {
         post("/locacoes", new Route() {
             @Override
             public Object handle(Request request, Response response) {
+                Locacao novaLocacao = null;
                 try {
-                    Locacao novaLocacao = gson.fromJson(request.body(), Locacao.class);
-
-                    // Valida idade mínima
-                    if (novaLocacao.getJogo() != null && novaLocacao.getJogo().getId() != null &&
-                            novaLocacao.getCliente() != null && novaLocacao.getCliente().getId() != null) {
+                    novaLocacao = gson.fromJson(request.body(), Locacao.class);
 
-                        Jogo jogo = jogoDAO.buscarPorId(novaLocacao.getJogo().getId());
-                        Cliente cliente = clienteDAO.buscarPorId(novaLocacao.getCliente().getId());
-
-                        if (jogo != null && cliente != null &&
-                                jogo.getIdadeMinima() != null && cliente.getIdade() != null &&
-                                cliente.getIdade() < jogo.getIdadeMinima()) {
-                            response.status(400);
-                            return "{\"mensagem\": \"O cliente não possui idade suficiente para locar este jogo. Idade mínima: "
-                                    + jogo.getIdadeMinima() + " anos.\"}";
-                        }
+                    if (!possuiJogoECliente(novaLocacao)) {
+                        response.status(400);
+                        return "{\"mensagem\": \"jogo.id e cliente.id são obrigatórios.\"}";
                     }
 
-                    LocacaoDAO.inserir(novaLocacao);
+                    // idade mínima conferida no próprio INSERT (uma ida ao banco); com a
+                    // gravação em grupo ativa, o INSERT entra no commit do próximo grupo
+                    ResultadoLocacao resultado = ConfirmacaoEmGrupo.isAtivo()
+                            ? ConfirmacaoEmGrupo.inserir(novaLocacao)
+                            : locacaoDAO.inserirValidado(novaLocacao);
+                    if (!resultado.isOk()) {
+                        return respostaFalhaLocacao(resultado, novaLocacao, response);
+                    }
 
                     response.status(201);
                     return gson.toJson(novaLocacao);
+                } catch (BancoIndisponivelException e) {
+                    // nada chegou ao banco: pode ir para o diário local sem risco de duplicar
+                    return aceitarNoDiario(novaLocacao, response);
                 } catch (Exception e) {
                     response.status(500);
                     System.err.println("Erro ao processar requisição POST: " + e.getMessage());
@@ -208,6 +671,86 @@ public class ApiLocadora {
             }
         });
 
+        // POST /locacoes/batch - Criar várias locações em uma transação
+        post("/locacoes/batch", new Route() {
+            @Override
+            public Object handle(Request request, Response response) {
+                Locacao[] recebidas;
+                try {
+                    recebidas = gson.fromJson(request.body(), Locacao[].class);
+                } catch (Exception e) {
+                    response.status(400);
+                    return "{\"mensagem\": \"Corpo inválido: esperado um array de locações.\"}";
+                }
+                if (recebidas == null || recebidas.length == 0) {
+                    response.status(400);
+                    return "{\"mensagem\": \"Nenhuma locação enviada.\"}";
+                }
+                if (recebidas.length > LIMITE_LOTE) {
+                    response.status(413);
+                    return "{\"mensagem\": \"Lote acima do limite de " + LIMITE_LOTE + " locações.\"}";
+                }
+
+                // busca todos os jogos e clientes do lote de uma vez
+                Set<Long> idsJogos = new HashSet<>();
+                Set<Long> idsClientes = new HashSet<>();
+                for (Locacao locacao : recebidas) {
+                    if (locacao != null && locacao.getJogo() != null && locacao.getJogo().getId() != null) {
+                        idsJogos.add(locacao.getJogo().getId());
+                    }
+                    if (locacao != null && locacao.getCliente() != null && locacao.getCliente().getId() != null) {
+                        idsClientes.add(locacao.getCliente().getId());
+                    }
+                }
+
+                try {
+                    Map<Long, Jogo> jogos = jogoDAO.buscarPorIds(idsJogos);
+                    Map<Long, Cliente> clientes = clienteDAO.buscarPorIds(idsClientes);
+
+                    // valida cada item; só os válidos vão para o INSERT em lote
+                    List<Map<String, Object>> resultados = new ArrayList<>();
+                    List<Locacao> validas = new ArrayList<>();
+                    List<Map<String, Object>> resultadosValidos = new ArrayList<>();
+                    for (int i = 0; i < recebidas.length; i++) {
+                        Locacao locacao = recebidas[i];
+                        Map<String, Object> resultado = new LinkedHashMap<>();
+                        resultado.put("indice", i);
+                        resultados.add(resultado);
+
+                        String erro = validarItemLote(locacao, jogos, clientes);
+                        if (erro != null) {
+                            resultado.put("status", 400);
+                            resultado.put("mensagem", erro);
+                        } else {
+                            validas.add(locacao);
+                            resultadosValidos.add(resultado);
+                        }
+                    }
+
+                    locacaoDAO.inserirLote(validas);
+
+                    for (int i = 0; i < validas.size(); i++) {
+                        resultadosValidos.get(i).put("status", 201);
+                        resultadosValidos.get(i).put("id", validas.get(i).getId());
+                    }
+
+                    Map<String, Object> corpo = new LinkedHashMap<>();
+                    corpo.put("criadas", validas.size());
+                    corpo.put("erros", recebidas.length - validas.size());
+                    corpo.put("resultados", resultados);
+
+                    // 201 se tudo foi criado, 207 se parte do lote falhou
+                    response.status(validas.size() == recebidas.length ? 201 : 207);
+                    return gson.toJson(corpo);
+                } catch (Exception e) {
+                    response.status(500);
+                    System.err.println("Erro ao processar requisição POST em lote: " + e.getMessage());
+                    e.printStackTrace();
+                    return "{\"mensagem\": \"Erro ao criar locações em lote. Nenhuma locação foi criada.\"}";
+                }
+            }
+        });
+
         // PUT /locacoes/:id - Atualizar locação existente
         put("/locacoes/:id", new Route() {
             @Override
@@ -215,32 +758,19 @@ public class ApiLocadora {
                 try {
                     Long id = Long.parseLong(request.params(":id"));
 
-                    if (locacaoDAO.buscarPorId(id) == null) {
-                        response.status(404);
-                        return "{\"mensagem\": \"Locação não encontrada para atualização.\"}";
-                    }
-
                     Locacao locacaoParaAtualizar = gson.fromJson(request.body(), Locacao.class);
                     locacaoParaAtualizar.setId(id);
 
-                    // Valida idade mínima
-                    if (locacaoParaAtualizar.getJogo() != null && locacaoParaAtualizar.getJogo().getId() != null &&
-                            locacaoParaAtualizar.getCliente() != null
-                            && locacaoParaAtualizar.getCliente().getId() != null) {
-
-                        Jogo jogo = jogoDAO.buscarPorId(locacaoParaAtualizar.getJogo().getId());
-                        Cliente cliente = clienteDAO.buscarPorId(locacaoParaAtualizar.getCliente().getId());
-
-                        if (jogo != null && cliente != null &&
-                                jogo.getIdadeMinima() != null && cliente.getIdade() != null &&
-                                cliente.getIdade() < jogo.getIdadeMinima()) {
-                            response.status(400);
-                            return "{\"mensagem\": \"O cliente não possui idade suficiente para locar este jogo. Idade mínima: "
-                                    + jogo.getIdadeMinima() + " anos.\"}";
-                        }
+                    if (!possuiJogoECliente(locacaoParaAtualizar)) {
+                        response.status(400);
+                        return "{\"mensagem\": \"jogo.id e cliente.id são obrigatórios.\"}";
                     }
 
-                    locacaoDAO.atualizar(locacaoParaAtualizar);
+                    // existência, versão e idade mínima conferidas no próprio UPDATE
+                    ResultadoLocacao resultado = locacaoDAO.atualizarValidado(locacaoParaAtualizar, lerIfMatch(request));
+                    if (!resultado.isOk()) {
+                        return respostaFalhaLocacao(resultado, locacaoParaAtualizar, response);
+                    }
 
                     response.status(200);
                     return gson.toJson(locacaoParaAtualizar);
@@ -263,20 +793,28 @@ public class ApiLocadora {
             public Object handle(Request request, Response response) {
                 try {
                     Long id = Long.parseLong(request.params(":id"));
+                    Integer versaoEsperada = lerIfMatch(request);
 
-                    if (locacaoDAO.buscarPorId(id) == null) {
+                    // um único DELETE; só quando nada foi apagado descobre o motivo
+                    if (locacaoDAO.deletar(id, versaoEsperada) == 0) {
+                        if (versaoEsperada != null && locacaoDAO.existe(id)) {
+                            response.status(412);
+                            return MENSAGEM_VERSAO_DIVERGENTE;
+                        }
                         response.status(404);
                         return "{\"mensagem\": \"Locação não encontrada para exclusão.\"}";
                     }
 
-                    locacaoDAO.deletar(id);
-
                     response.status(204);
                     return "";
 
                 } catch (NumberFormatException e) {
                     response.status(400);
                     return "{\"mensagem\": \"Formato de ID inválido.\"}";
+                } catch (Exception e) {
+                    response.status(500);
+                    e.printStackTrace();
+                    return "{\"mensagem\": \"Erro ao deletar locação.\"}";
                 }
             }
         });
@@ -286,15 +824,105 @@ public class ApiLocadora {
         // ========================================
 
         // GET /jogos - Buscar todos
-        get("/jogos", (request, response) -> gson.toJson(jogoDAO.buscarTodos()));
+        get("/jogos", (request, response) -> {
+            Projecao projecao;
+            try {
+                // o gênero vem do cache do GeneroDAO; a projeção só muda o JSON
+                projecao = lerProjecao(request, CAMPOS_JOGO, RELACOES_JOGO, RELACOES_JOGO);
+            } catch (IllegalArgumentException e) {
+                response.status(400);
+                return "{\"mensagem\": \"Parâmetros inválidos: " + e.getMessage() + "\"}";
+            }
+            Formato formato = Formato.negociar(request);
+            TypeAdapter<Jogo> adaptador = AdaptadoresJson.jogo(projecao);
+            response.header("Vary", "Accept");
+            try {
+                if (projecao != null && !paginado(request)) {
+                    // a ETag e o JSON em cache são da representação completa
+                    response.type(formato.tipo);
+                    return formato.serializar(adaptador, jogoDAO.buscarCatalogo().getJogos());
+                }
+                if (!paginado(request)) {
+                    // catálogo inalterado desde a última consulta do cliente: nem banco nem Gson
+                    // lida antes de serializar: uma mudança durante a serialização invalida o cache
+                    long versaoDisponibilidade = DisponibilidadeDAO.getVersao();
+                    if (etagCorresponde(request, etagCatalogo(JogoDAO.getVersaoCatalogo(), versaoDisponibilidade, formato))) {
+                        response.status(304);
+                        return "";
+                    }
+                    JogoDAO.Catalogo catalogo = jogoDAO.buscarCatalogo();
+                    if (formato != Formato.JSON) {
+                        // só o JSON fica em cache; os outros formatos são de clientes de sincronização
+                        response.header("ETag", etagCatalogo(catalogo.getVersao(), versaoDisponibilidade, formato));
+                        response.header("Cache-Control", "no-cache");
+                        response.type(formato.tipo);
+                        return formato.serializar(adaptador, catalogo.getJogos());
+                    }
+                    CatalogoJson cache = catalogoJson;
+                    if (cache == null || cache.versao != catalogo.getVersao()
+                            || cache.versaoDisponibilidade != versaoDisponibilidade) {
+                        cache = new CatalogoJson(catalogo.getVersao(), versaoDisponibilidade,
+                                gson.toJson(catalogo.getJogos()));
+                        catalogoJson = cache;
+                    }
+                    response.header("ETag", etagCatalogo(cache.versao, cache.versaoDisponibilidade));
+                    response.header("Cache-Control", "no-cache");
+                    return cache.json;
+                }
+                int limite = lerLimite(request);
+                List<Jogo> jogos = jogoDAO.buscarPagina(lerCursor(request), limite);
+                Long ultimoId = jogos.isEmpty() ? null : jogos.get(jogos.size() - 1).getId();
+                definirProximoCursor(response, jogos.size(), limite, ultimoId);
+                response.type(formato.tipo);
+                return formato.serializar(adaptador, jogos);
+            } catch (NumberFormatException e) {
+                response.status(400);
+                return "{\"mensagem\": \"Parâmetros de paginação inválidos.\"}";
+            } catch (RuntimeException e) {
+                // catálogo não carregado: nada vai para o cache nem recebe ETag
+                response.status(500);
+                response.type(APPLICATION_JSON);
+                e.printStackTrace();
+                return "{\"mensagem\": \"Erro ao buscar jogos.\"}";
+            }
+        });
+
+        // GET /jogos/busca?q= - Buscar por nome (declarada antes de /jogos/:id, que também casaria)
+        get("/jogos/busca", (request, response) -> {
+            String consulta = request.queryParams("q");
+            if (consulta == null || consulta.trim().isEmpty()) {
+                response.status(400);
+                return "{\"mensagem\": \"Informe o termo de busca em q.\"}";
+            }
+            try {
+                int limite = lerLimite(request, LIMITE_BUSCA_PADRAO, LIMITE_BUSCA_MAXIMO);
+                return gson.toJson(jogoDAO.buscarPorNome(consulta, limite));
+            } catch (NumberFormatException e) {
+                response.status(400);
+                return "{\"mensagem\": \"Parâmetro limit inválido.\"}";
+            } catch (RuntimeException e) {
+                response.status(500);
+                e.printStackTrace();
+                return "{\"mensagem\": \"Erro ao buscar jogos.\"}";
+            }
+        });
 
         // GET /jogos/:id - Buscar por ID
         get("/jogos/:id", (request, response) -> {
             try {
                 Long id = Long.parseLong(request.params(":id"));
-                Jogo jogo = jogoDAO.buscarPorId(id);
+                long versaoDisponibilidade = DisponibilidadeDAO.getVersao();
+                if (etagCorresponde(request, etagCatalogo(JogoDAO.getVersaoCatalogo(), versaoDisponibilidade))) {
+                    response.status(304);
+                    return "";
+                }
+
+                JogoDAO.Catalogo catalogo = jogoDAO.buscarCatalogo();
+                Jogo jogo = catalogo.buscar(id);
 
                 if (jogo != null) {
+                    response.header("ETag", etagCatalogo(catalogo.getVersao(), versaoDisponibilidade));
+                    response.header("Cache-Control", "no-cache");
                     return gson.toJson(jogo);
                 } else {
                     response.status(404);
@@ -303,6 +931,42 @@ public class ApiLocadora {
             } catch (NumberFormatException e) {
                 response.status(400);
                 return "{\"mensagem\": \"Formato de ID inválido.\"}";
+            } catch (RuntimeException e) {
+                response.status(500);
+                e.printStackTrace();
+                return "{\"mensagem\": \"Erro ao buscar jogo.\"}";
+            }
+        });
+
+        // GET /jogos/:id/disponibilidade - Locações abertas do jogo (contadores em memória)
+        get("/jogos/:id/disponibilidade", (request, response) -> {
+            try {
+                Long id = Long.parseLong(request.params(":id"));
+                if (jogoDAO.buscarCatalogo().buscar(id) == null) {
+                    response.status(404);
+                    return "{\"mensagem\": \"Jogo com ID " + id + " não encontrado\"}";
+                }
+                if (!DisponibilidadeDAO.isCarregado()) {
+                    DisponibilidadeDAO.carregar();
+                }
+                Long abertas = DisponibilidadeDAO.locacoesAbertas(id);
+                if (abertas == null) {
+                    response.status(503);
+                    return "{\"mensagem\": \"Disponibilidade ainda não carregada. Tente novamente em instantes.\"}";
+                }
+
+                Map<String, Object> disponibilidade = new LinkedHashMap<>();
+                disponibilidade.put("jogoId", id);
+                disponibilidade.put("locacoesAbertas", abertas);
+                disponibilidade.put("alugado", abertas > 0);
+                return gson.toJson(disponibilidade);
+            } catch (NumberFormatException e) {
+                response.status(400);
+                return "{\"mensagem\": \"Formato de ID inválido.\"}";
+            } catch (RuntimeException e) {
+                response.status(500);
+                e.printStackTrace();
+                return "{\"mensagem\": \"Erro ao buscar jogo.\"}";
             }
         });
 
@@ -325,16 +989,20 @@ public class ApiLocadora {
         put("/jogos/:id", (request, response) -> {
             try {
                 Long id = Long.parseLong(request.params(":id"));
-
-                if (jogoDAO.buscarPorId(id) == null) {
-                    response.status(404);
-                    return "{\"mensagem\": \"Jogo não encontrado para atualização.\"}";
-                }
+                Integer versaoEsperada = lerIfMatch(request);
 
                 Jogo jogoParaAtualizar = gson.fromJson(request.body(), Jogo.class);
                 jogoParaAtualizar.setId(id);
 
-                jogoDAO.atualizar(jogoParaAtualizar);
+                // um único UPDATE; só quando nada foi gravado descobre o motivo
+                if (jogoDAO.atualizar(jogoParaAtualizar, versaoEsperada) == 0) {
+                    if (versaoEsperada != null && jogoDAO.existe(id)) {
+                        response.status(412);
+                        return MENSAGEM_VERSAO_DIVERGENTE;
+                    }
+                    response.status(404);
+                    return "{\"mensagem\": \"Jogo não encontrado para atualização.\"}";
+                }
 
                 response.status(200);
                 return gson.toJson(jogoParaAtualizar);
@@ -343,6 +1011,10 @@ public class ApiLocadora {
                 response.status(400);
                 return "{\"mensagem\": \"Formato de ID inválido.\"}";
             } catch (Exception e) {
+                if (e.getCause() instanceof java.sql.SQLIntegrityConstraintViolationException) {
+                    response.status(400);
+                    return "{\"mensagem\": \"Gênero informado não encontrado.\"}";
+                }
                 response.status(500);
                 e.printStackTrace();
                 return "{\"mensagem\": \"Erro ao atualizar jogo.\"}";
@@ -353,14 +1025,17 @@ public class ApiLocadora {
         delete("/jogos/:id", (request, response) -> {
             try {
                 Long id = Long.parseLong(request.params(":id"));
+                Integer versaoEsperada = lerIfMatch(request);
 
-                if (jogoDAO.buscarPorId(id) == null) {
+                if (jogoDAO.deletar(id, versaoEsperada) == 0) {
+                    if (versaoEsperada != null && jogoDAO.existe(id)) {
+                        response.status(412);
+                        return MENSAGEM_VERSAO_DIVERGENTE;
+                    }
                     response.status(404);
                     return "{\"mensagem\": \"Jogo não encontrado para exclusão.\"}";
                 }
 
-                jogoDAO.deletar(id);
-
                 response.status(204);
                 return "";
 
@@ -383,7 +1058,41 @@ public class ApiLocadora {
         // ========================================
 
         // GET /clientes - Buscar todos
-        get("/clientes", (request, response) -> gson.toJson(clienteDAO.buscarTodos()));
+        get("/clientes", (request, response) -> {
+            Formato formato = Formato.negociar(request);
+            response.header("Vary", "Accept");
+            if (!paginado(request)) {
+                return JsonStreaming.transmitirArray(request, response, formato, AdaptadoresJson.CLIENTE,
+                        consumidor -> clienteDAO.percorrer(null, consumidor));
+            }
+            try {
+                int limite = lerLimite(request);
+                List<Cliente> clientes = clienteDAO.buscarPagina(lerCursor(request), limite);
+                Long ultimoId = clientes.isEmpty() ? null : clientes.get(clientes.size() - 1).getId();
+                definirProximoCursor(response, clientes.size(), limite, ultimoId);
+                response.type(formato.tipo);
+                return formato.serializar(AdaptadoresJson.CLIENTE, clientes);
+            } catch (NumberFormatException e) {
+                response.status(400);
+                return "{\"mensagem\": \"Parâmetros de paginação inválidos.\"}";
+            }
+        });
+
+        // GET /clientes/busca?q= - Buscar por nome (declarada antes de /clientes/:id)
+        get("/clientes/busca", (request, response) -> {
+            String consulta = request.queryParams("q");
+            if (consulta == null || consulta.trim().isEmpty()) {
+                response.status(400);
+                return "{\"mensagem\": \"Informe o termo de busca em q.\"}";
+            }
+            try {
+                int limite = lerLimite(request, LIMITE_BUSCA_PADRAO, LIMITE_BUSCA_MAXIMO);
+                return gson.toJson(clienteDAO.buscarPorNome(consulta, limite));
+            } catch (NumberFormatException e) {
+                response.status(400);
+                return "{\"mensagem\": \"Parâmetro limit inválido.\"}";
+            }
+        });
 
         // GET /clientes/:id - Buscar por ID
         get("/clientes/:id", (request, response) -> {
@@ -422,16 +1131,20 @@ public class ApiLocadora {
         put("/clientes/:id", (request, response) -> {
             try {
                 Long id = Long.parseLong(request.params(":id"));
-
-                if (clienteDAO.buscarPorId(id) == null) {
-                    response.status(404);
-                    return "{\"mensagem\": \"Cliente não encontrado para atualização.\"}";
-                }
+                Integer versaoEsperada = lerIfMatch(request);
 
                 Cliente clienteParaAtualizar = gson.fromJson(request.body(), Cliente.class);
                 clienteParaAtualizar.setId(id);
 
-                clienteDAO.atualizar(clienteParaAtualizar);
+                // um único UPDATE; só quando nada foi gravado descobre o motivo
+                if (clienteDAO.atualizar(clienteParaAtualizar, versaoEsperada) == 0) {
+                    if (versaoEsperada != null && clienteDAO.existe(id)) {
+                        response.status(412);
+                        return MENSAGEM_VERSAO_DIVERGENTE;
+                    }
+                    response.status(404);
+                    return "{\"mensagem\": \"Cliente não encontrado para atualização.\"}";
+                }
 
                 response.status(200);
                 return gson.toJson(clienteParaAtualizar);
@@ -450,14 +1163,17 @@ public class ApiLocadora {
         delete("/clientes/:id", (request, response) -> {
             try {
                 Long id = Long.parseLong(request.params(":id"));
+                Integer versaoEsperada = lerIfMatch(request);
 
-                if (clienteDAO.buscarPorId(id) == null) {
+                if (clienteDAO.deletar(id, versaoEsperada) == 0) {
+                    if (versaoEsperada != null && clienteDAO.existe(id)) {
+                        response.status(412);
+                        return MENSAGEM_VERSAO_DIVERGENTE;
+                    }
                     response.status(404);
                     return "{\"mensagem\": \"Cliente não encontrado para exclusão.\"}";
                 }
 
-                clienteDAO.deletar(id);
-
                 response.status(204);
                 return "";
 
@@ -519,16 +1235,20 @@ public class ApiLocadora {
         put("/generos/:id", (request, response) -> {
             try {
                 Long id = Long.parseLong(request.params(":id"));
-
-                if (generoDAO.buscarPorId(id) == null) {
-                    response.status(404);
-                    return "{\"mensagem\": \"Gênero não encontrado para atualização.\"}";
-                }
+                Integer versaoEsperada = lerIfMatch(request);
 
                 Genero generoParaAtualizar = gson.fromJson(request.body(), Genero.class);
                 generoParaAtualizar.setId(id);
 
-                generoDAO.atualizarGenero(generoParaAtualizar);
+                // um único UPDATE; só quando nada foi gravado descobre o motivo
+                if (generoDAO.atualizarGenero(generoParaAtualizar, versaoEsperada) == 0) {
+                    if (versaoEsperada != null && generoDAO.buscarPorId(id) != null) {
+                        response.status(412);
+                        return MENSAGEM_VERSAO_DIVERGENTE;
+                    }
+                    response.status(404);
+                    return "{\"mensagem\": \"Gênero não encontrado para atualização.\"}";
+                }
 
                 response.status(200);
                 return gson.toJson(generoParaAtualizar);
@@ -547,14 +1267,17 @@ public class ApiLocadora {
         delete("/generos/:id", (request, response) -> {
             try {
                 Long id = Long.parseLong(request.params(":id"));
+                Integer versaoEsperada = lerIfMatch(request);
 
-                if (generoDAO.buscarPorId(id) == null) {
+                if (generoDAO.deletar(id, versaoEsperada) == 0) {
+                    if (versaoEsperada != null && generoDAO.buscarPorId(id) != null) {
+                        response.status(412);
+                        return MENSAGEM_VERSAO_DIVERGENTE;
+                    }
                     response.status(404);
                     return "{\"mensagem\": \"Gênero não encontrado para exclusão.\"}";
                 }
 
-                generoDAO.deletar(id);
-
                 response.status(204);
                 return "";
 
@@ -572,6 +1295,103 @@ public class ApiLocadora {
             }
         });
 
+        // ========================================
+        // ROTAS DE RELATÓRIOS
+        // ========================================
+
+        // GET /relatorios/receita?de=&ate=&generoId= - Locações e receita por gênero e mês
+        get("/relatorios/receita", (request, response) -> {
+            try {
+                YearMonth de = lerMesFiltro(request, "de");
+                YearMonth ate = lerMesFiltro(request, "ate");
+                Long generoId = lerIdFiltro(request, "generoId");
+                if (de != null && ate != null && de.isAfter(ate)) {
+                    throw new IllegalArgumentException("de deve ser anterior ou igual a ate.");
+                }
+                return gson.toJson(receitaDAO.buscarReceita(de, ate, generoId));
+            } catch (IllegalArgumentException e) {
+                response.status(400);
+                return "{\"mensagem\": \"Filtros inválidos: " + e.getMessage() + "\"}";
+            } catch (RuntimeException e) {
+                response.status(503);
+                e.printStackTrace();
+                return "{\"mensagem\": \"Relatório de receita indisponível no momento. Tente novamente em instantes.\"}";
+            }
+        });
+
+        // ========================================
+        // ROTAS DE EXPORTAÇÃO
+        // ========================================
+
+        // GET /export/:entidade.ndjson?desde= - Um registro JSON por linha, em ordem de ID
+        get("/export/:arquivo", (request, response) -> {
+            String arquivo = request.params(":arquivo");
+            String entidade = arquivo.endsWith(EXTENSAO_EXPORTACAO)
+                    ? arquivo.substring(0, arquivo.length() - EXTENSAO_EXPORTACAO.length())
+                    : "";
+            if (!ENTIDADES_EXPORTACAO.contains(entidade)) {
+                response.status(404);
+                return "{\"mensagem\": \"Exportação não encontrada. Use locacoes.ndjson, jogos.ndjson ou clientes.ndjson.\"}";
+            }
+
+            // desde: último ID já importado; em locações também uma data (data_locacao a partir dela)
+            Long depoisDe = null;
+            java.sql.Date aPartirDe = null;
+            String desde = request.queryParams("desde");
+            if (desde != null && !desde.isEmpty()) {
+                try {
+                    depoisDe = Long.parseLong(desde);
+                } catch (NumberFormatException e) {
+                    try {
+                        if (!"locacoes".equals(entidade)) {
+                            throw new IllegalArgumentException();
+                        }
+                        aPartirDe = java.sql.Date.valueOf(desde);
+                    } catch (IllegalArgumentException e2) {
+                        response.status(400);
+                        return "locacoes".equals(entidade)
+                                ? "{\"mensagem\": \"desde deve ser um ID ou uma data no formato yyyy-MM-dd.\"}"
+                                : "{\"mensagem\": \"desde deve ser um ID.\"}";
+                    }
+                }
+            }
+
+            boolean gzip = JsonStreaming.aceitaGzip(request);
+            response.header("Vary", "Accept-Encoding");
+            Long ultimoId = depoisDe;
+            if ("locacoes".equals(entidade)) {
+                FiltroLocacao filtro = new FiltroLocacao();
+                filtro.setDe(aPartirDe);
+                return JsonStreaming.transmitirLinhas(request, response, AdaptadoresJson.LOCACAO, gzip,
+                        consumidor -> locacaoDAO.percorrer(filtro, null, ultimoId, consumidor));
+            }
+            if ("jogos".equals(entidade)) {
+                return JsonStreaming.transmitirLinhas(request, response, AdaptadoresJson.JOGO, gzip,
+                        consumidor -> jogoDAO.percorrer(ultimoId, consumidor));
+            }
+            return JsonStreaming.transmitirLinhas(request, response, AdaptadoresJson.CLIENTE, gzip,
+                    consumidor -> clienteDAO.percorrer(ultimoId, consumidor));
+        });
+
+        // depois da última rota: monta a tabela usada nas métricas por rota
+        MetricasRotas.registrarRotas();
+
+        // índices de busca por nome; se o banco falhar aqui, são montados na primeira busca
+        carregarNaInicializacao("índice de jogos", JogoDAO::carregarIndiceBusca);
+        carregarNaInicializacao("índice de clientes", ClienteDAO::carregarIndiceBusca);
+
+        // locações abertas por jogo; se o banco falhar aqui, carrega na primeira consulta
+        carregarNaInicializacao("disponibilidade de jogos", DisponibilidadeDAO::iniciar);
+
+        // com o diário local, o catálogo fica em memória desde já para validar
+        // locações (e responder GET /jogos) se o banco cair
+        if (DiarioLocacoes.isAtivo()) {
+            carregarNaInicializacao("catálogo de jogos", jogoDAO::buscarCatalogo);
+        }
+
+        // relatório de receita: mantido a cada escrita em locação e recalculado periodicamente
+        ReceitaDAO.iniciar(Long.getLong("locadora.relatorios.reconstrucaoMin", 60L));
+
         System.out.println("=========================================");
         System.out.println("API de Locadora iniciada na porta 4567");
         System.out.println("Acesse: http://localhost:4567");
@@ -0,0 +1,188 @@
+package api;
+
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
+import static spark.Spark.halt;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import dao.ConfirmacaoEmGrupo;
+import spark.Request;
+import util.ConnectionFactory;
+import util.Metricas;
+
+/**
+ * Controle de admissão na frente das rotas que usam os DAOs.
+ *
+ * Leituras (GET) e escritas (POST, PUT, DELETE) têm cada uma um limite de
+ * requisições em execução e uma fila curta. Os dois limites somados não
+ * passam do tamanho do pool de conexões, então quem é admitido quase não
+ * espera conexão. Com a fila cheia a requisição é recusada na hora com 429;
+ * se esperar demais na fila, com 503. As duas respostas trazem Retry-After.
+ * Assim, quando o MySQL fica lento, as threads não se acumulam esperando
+ * getConnection() e a latência de quem é atendido continua previsível.
+ */
+class ControleAdmissao {
+
+    // rotas que não usam o banco nunca são barradas
+    private static final Set<String> CAMINHOS_LIVRES = new HashSet<>(Arrays.asList("/", "/status", "/metrics"));
+
+    private static final String ATRIBUTO_FILA = "admissao.fila";
+    private static final int RETRY_AFTER_SEG = Integer.getInteger("locadora.admissao.retryAfterSeg", 1);
+
+    // por padrão um terço das conexões fica reservado para as escritas
+    private static final int LIMITE_ESCRITAS = Integer.getInteger("locadora.admissao.escritas.max",
+            Math.max(1, ConnectionFactory.getTamanhoMaximoPool() / 3));
+    private static final int LIMITE_LEITURAS = Integer.getInteger("locadora.admissao.leituras.max",
+            Math.max(1, ConnectionFactory.getTamanhoMaximoPool() - LIMITE_ESCRITAS));
+
+    private static final Fila LEITURAS = new Fila(LIMITE_LEITURAS,
+            Integer.getInteger("locadora.admissao.leituras.fila", 2 * LIMITE_LEITURAS),
+            Long.getLong("locadora.admissao.leituras.esperaMs", 1_000L));
+    private static final Fila ESCRITAS = new Fila(LIMITE_ESCRITAS,
+            Integer.getInteger("locadora.admissao.escritas.fila", 2 * LIMITE_ESCRITAS),
+            Long.getLong("locadora.admissao.escritas.esperaMs", 2_000L));
+
+    private ControleAdmissao() {
+    }
+
+    /**
+     * Registra os filtros. Deve vir depois dos filtros que só validam a
+     * requisição, para uma requisição inválida não ocupar vaga.
+     */
+    static void instalar() {
+        LEITURAS.registrarMetricas("leitura");
+        ESCRITAS.registrarMetricas("escrita");
+
+        before((request, response) -> {
+            if (livre(request)) {
+                return;
+            }
+            Fila fila = "GET".equals(request.requestMethod()) ? LEITURAS : ESCRITAS;
+
+            int status = fila.admitir();
+            if (status != 0) {
+                response.type("application/json");
+                response.header("Retry-After", String.valueOf(RETRY_AFTER_SEG));
+                halt(status, status == 429
+                        ? "{\"mensagem\": \"Muitas requisições aguardando o banco de dados. Tente novamente em instantes.\"}"
+                        : "{\"mensagem\": \"Banco de dados sobrecarregado. Tente novamente em instantes.\"}");
+            }
+            request.attribute(ATRIBUTO_FILA, fila);
+        });
+
+        // afterAfter roda mesmo quando a rota lança exceção ou chama halt
+        afterAfter((request, response) -> {
+            Fila fila = request.attribute(ATRIBUTO_FILA);
+            if (fila != null) {
+                request.raw().removeAttribute(ATRIBUTO_FILA);
+                fila.liberar();
+            }
+        });
+    }
+
+    // POST /locacoes com gravação em grupo não ocupa conexão enquanto espera: a
+    // fila limitada do ConfirmacaoEmGrupo faz o papel da admissão
+    private static boolean livre(Request request) {
+        return "OPTIONS".equals(request.requestMethod()) || CAMINHOS_LIVRES.contains(request.pathInfo())
+                || ("POST".equals(request.requestMethod()) && "/locacoes".equals(request.pathInfo())
+                        && ConfirmacaoEmGrupo.isAtivo());
+    }
+
+    // ------------------------------------
+    // ESTATÍSTICAS
+    // ------------------------------------
+    static Map<String, Object> estatisticas() {
+        Map<String, Object> admissao = new LinkedHashMap<>();
+        admissao.put("leituras", LEITURAS.estatisticas());
+        admissao.put("escritas", ESCRITAS.estatisticas());
+        return admissao;
+    }
+
+    // ------------------------------------
+    // FILA DE UMA CLASSE DE ROTAS
+    // ------------------------------------
+    private static final class Fila {
+        final int limite;
+        final int capacidadeFila;
+        final long esperaMaximaMs;
+
+        // justo: quem chegou primeiro na fila entra primeiro
+        final Semaphore vagas;
+        final AtomicInteger aguardando = new AtomicInteger();
+
+        final LongAdder admitidas = new LongAdder();
+        final LongAdder rejeitadasFilaCheia = new LongAdder();
+        final LongAdder rejeitadasTempoEsgotado = new LongAdder();
+
+        Fila(int limite, int capacidadeFila, long esperaMaximaMs) {
+            this.limite = limite;
+            this.capacidadeFila = capacidadeFila;
+            this.esperaMaximaMs = esperaMaximaMs;
+            this.vagas = new Semaphore(limite, true);
+        }
+
+        // 0 se admitida; senão o status HTTP da recusa
+        int admitir() {
+            try {
+                // tryAcquire sem tempo furaria a fila mesmo em um semáforo justo
+                if (vagas.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                    admitidas.increment();
+                    return 0;
+                }
+                if (aguardando.incrementAndGet() > capacidadeFila) {
+                    aguardando.decrementAndGet();
+                    rejeitadasFilaCheia.increment();
+                    return 429;
+                }
+                try {
+                    if (vagas.tryAcquire(esperaMaximaMs, TimeUnit.MILLISECONDS)) {
+                        admitidas.increment();
+                        return 0;
+                    }
+                } finally {
+                    aguardando.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            rejeitadasTempoEsgotado.increment();
+            return 503;
+        }
+
+        void liberar() {
+            vagas.release();
+        }
+
+        void registrarMetricas(String classe) {
+            Metricas.medidor("locadora_admissao_em_execucao", "Requisições admitidas em execução",
+                    Metricas.TIPO_MEDIDOR, () -> limite - vagas.availablePermits(), "classe", classe);
+            Metricas.medidor("locadora_admissao_fila", "Requisições aguardando vaga",
+                    Metricas.TIPO_MEDIDOR, aguardando::get, "classe", classe);
+            Metricas.medidor("locadora_admissao_rejeitadas_total", "Requisições recusadas pelo controle de admissão",
+                    Metricas.TIPO_CONTADOR, rejeitadasFilaCheia::sum, "classe", classe, "motivo", "fila_cheia");
+            Metricas.medidor("locadora_admissao_rejeitadas_total", "Requisições recusadas pelo controle de admissão",
+                    Metricas.TIPO_CONTADOR, rejeitadasTempoEsgotado::sum, "classe", classe, "motivo", "tempo_esgotado");
+        }
+
+        Map<String, Object> estatisticas() {
+            Map<String, Object> mapa = new LinkedHashMap<>();
+            mapa.put("emExecucao", limite - vagas.availablePermits());
+            mapa.put("limite", limite);
+            mapa.put("naFila", aguardando.get());
+            mapa.put("capacidadeFila", capacidadeFila);
+            mapa.put("admitidas", admitidas.sum());
+            mapa.put("rejeitadasFilaCheia", rejeitadasFilaCheia.sum());
+            mapa.put("rejeitadasTempoEsgotado", rejeitadasTempoEsgotado.sum());
+            return mapa;
+        }
+    }
+}
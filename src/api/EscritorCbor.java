@@ -0,0 +1,327 @@
+package api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * JsonWriter que escreve CBOR (RFC 8949) em vez de texto, para servir as
+ * mesmas classes de model em formato binário com os adaptadores de
+ * AdaptadoresJson, sem uma segunda serialização por classe.
+ *
+ * Objetos e arrays usam tamanho indefinido (0xbf/0x9f ... 0xff), então nada
+ * precisa ser contado antes de escrever e o streaming continua funcionando.
+ * Números inteiros usam o menor cabeçalho possível; double vira float32
+ * quando a conversão não perde nada, senão float64. Datas (data()) são a tag
+ * 100 da RFC 8943: dias desde 1970-01-01. Os bytes passam por um buffer
+ * próprio e o texto é codificado em UTF-8 direto nele; flush() esvazia.
+ */
+class EscritorCbor extends JsonWriter {
+
+    private static final int INTEIRO = 0;
+    private static final int NEGATIVO = 1;
+    private static final int TEXTO = 3;
+    private static final int TAG = 6;
+
+    private static final int INICIO_ARRAY = 0x9f;
+    private static final int INICIO_MAPA = 0xbf;
+    private static final int FIM = 0xff;
+    private static final int FALSO = 0xf4;
+    private static final int VERDADEIRO = 0xf5;
+    private static final int NULO = 0xf6;
+    private static final int FLOAT32 = 0xfa;
+    private static final int FLOAT64 = 0xfb;
+
+    private static final int TAG_DIAS_DESDE_1970 = 100;
+    private static final int TAMANHO_BUFFER = 8 * 1024;
+
+    // o JsonWriter exige um Writer; nada é escrito nele
+    private static final Writer SEM_TEXTO = new Writer() {
+        @Override
+        public void write(char[] buffer, int inicio, int tamanho) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final OutputStream saida;
+    private final byte[] buffer = new byte[TAMANHO_BUFFER];
+    private int posicao;
+    // nome do campo guardado até o valor chegar (um valor nulo pode descartá-lo)
+    private String nomePendente;
+
+    EscritorCbor(OutputStream saida) {
+        super(SEM_TEXTO);
+        this.saida = saida;
+    }
+
+    // ------------------------------------
+    // ESTRUTURA
+    // ------------------------------------
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        escreverNomePendente();
+        escreverByte(INICIO_ARRAY);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        escreverByte(FIM);
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        escreverNomePendente();
+        escreverByte(INICIO_MAPA);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        escreverByte(FIM);
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String nome) throws IOException {
+        if (nome == null) {
+            throw new NullPointerException("nome == null");
+        }
+        if (nomePendente != null) {
+            throw new IllegalStateException("Campo " + nomePendente + " sem valor.");
+        }
+        nomePendente = nome;
+        return this;
+    }
+
+    // ------------------------------------
+    // VALORES
+    // ------------------------------------
+    @Override
+    public JsonWriter value(String valor) throws IOException {
+        if (valor == null) {
+            return nullValue();
+        }
+        escreverNomePendente();
+        escreverTexto(valor);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean valor) throws IOException {
+        escreverNomePendente();
+        escreverByte(valor ? VERDADEIRO : FALSO);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean valor) throws IOException {
+        return valor == null ? nullValue() : value(valor.booleanValue());
+    }
+
+    @Override
+    public JsonWriter value(float valor) throws IOException {
+        return value((double) valor);
+    }
+
+    @Override
+    public JsonWriter value(double valor) throws IOException {
+        escreverNomePendente();
+        float curto = (float) valor;
+        if (curto == valor || Double.isNaN(valor)) {
+            escreverByte(FLOAT32);
+            escreverBytes(Float.floatToIntBits(curto), 4);
+        } else {
+            escreverByte(FLOAT64);
+            escreverBytes(Double.doubleToLongBits(valor), 8);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long valor) throws IOException {
+        escreverNomePendente();
+        if (valor >= 0) {
+            cabecalho(INTEIRO, valor);
+        } else {
+            // -1 - valor nunca estoura, nem para Long.MIN_VALUE
+            cabecalho(NEGATIVO, -1 - valor);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number valor) throws IOException {
+        if (valor == null) {
+            return nullValue();
+        }
+        if (valor instanceof Long || valor instanceof Integer || valor instanceof Short || valor instanceof Byte) {
+            return value(valor.longValue());
+        }
+        return value(valor.doubleValue());
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (nomePendente != null && !getSerializeNulls()) {
+            // como no JsonWriter: sem serializeNulls o campo nulo some
+            nomePendente = null;
+            return this;
+        }
+        escreverNomePendente();
+        escreverByte(NULO);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String valor) {
+        throw new UnsupportedOperationException("JSON bruto não pode ser escrito em CBOR.");
+    }
+
+    // Data como tag 100 (dias desde 1970-01-01), sem passar por texto
+    void data(Date data) throws IOException {
+        escreverNomePendente();
+        cabecalho(TAG, TAG_DIAS_DESDE_1970);
+        long dias = data.toLocalDate().toEpochDay();
+        if (dias >= 0) {
+            cabecalho(INTEIRO, dias);
+        } else {
+            cabecalho(NEGATIVO, -1 - dias);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        esvaziar();
+        saida.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        saida.close();
+    }
+
+    // ------------------------------------
+    // CODIFICAÇÃO
+    // ------------------------------------
+    private void escreverNomePendente() throws IOException {
+        if (nomePendente != null) {
+            escreverTexto(nomePendente);
+            nomePendente = null;
+        }
+    }
+
+    // tamanho em UTF-8 no cabeçalho e os caracteres codificados direto no buffer
+    private void escreverTexto(String texto) throws IOException {
+        int tamanho = tamanhoUtf8(texto);
+        cabecalho(TEXTO, tamanho);
+        if (tamanho > buffer.length) {
+            esvaziar();
+            saida.write(texto.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        if (tamanho > buffer.length - posicao) {
+            esvaziar();
+        }
+        int n = texto.length();
+        for (int i = 0; i < n; i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                buffer[posicao++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[posicao++] = (byte) (0xc0 | (c >> 6));
+                buffer[posicao++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int ponto = Character.toCodePoint(c, texto.charAt(++i));
+                buffer[posicao++] = (byte) (0xf0 | (ponto >> 18));
+                buffer[posicao++] = (byte) (0x80 | ((ponto >> 12) & 0x3f));
+                buffer[posicao++] = (byte) (0x80 | ((ponto >> 6) & 0x3f));
+                buffer[posicao++] = (byte) (0x80 | (ponto & 0x3f));
+            } else {
+                // surrogate sem par vira '?', como em String.getBytes
+                if (Character.isSurrogate(c)) {
+                    c = '?';
+                    buffer[posicao++] = (byte) c;
+                    continue;
+                }
+                buffer[posicao++] = (byte) (0xe0 | (c >> 12));
+                buffer[posicao++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[posicao++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static int tamanhoUtf8(String texto) {
+        int n = texto.length();
+        int tamanho = n;
+        for (int i = 0; i < n; i++) {
+            char c = texto.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                    tamanho += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    tamanho += 2;
+                }
+            } else if (c >= 0x80) {
+                tamanho++;
+            }
+        }
+        return tamanho;
+    }
+
+    private void escreverByte(int valor) throws IOException {
+        if (posicao == buffer.length) {
+            esvaziar();
+        }
+        buffer[posicao++] = (byte) valor;
+    }
+
+    private void esvaziar() throws IOException {
+        if (posicao > 0) {
+            saida.write(buffer, 0, posicao);
+            posicao = 0;
+        }
+    }
+
+    // tipo maior nos 3 bits altos; o argumento no próprio byte (< 24) ou em 1, 2, 4 ou 8 bytes
+    private void cabecalho(int tipoMaior, long argumento) throws IOException {
+        int tipo = tipoMaior << 5;
+        if (argumento < 24) {
+            escreverByte(tipo | (int) argumento);
+        } else if (argumento < 0x100) {
+            escreverByte(tipo | 24);
+            escreverByte((int) argumento);
+        } else if (argumento < 0x10000) {
+            escreverByte(tipo | 25);
+            escreverBytes(argumento, 2);
+        } else if (argumento < 0x100000000L) {
+            escreverByte(tipo | 26);
+            escreverBytes(argumento, 4);
+        } else {
+            escreverByte(tipo | 27);
+            escreverBytes(argumento, 8);
+        }
+    }
+
+    // big-endian, como a RFC pede
+    private void escreverBytes(long valor, int quantidade) throws IOException {
+        for (int deslocamento = (quantidade - 1) * 8; deslocamento >= 0; deslocamento -= 8) {
+            escreverByte((int) (valor >>> deslocamento));
+        }
+    }
+}
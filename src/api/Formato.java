@@ -0,0 +1,109 @@
+package api;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import spark.Request;
+
+/**
+ * Formatos de resposta das listagens, escolhidos pelo header Accept. JSON é
+ * o padrão; CBOR só quando o cliente o pede explicitamente, com q maior ou
+ * igual ao de JSON (um Accept só com curingas recebe JSON).
+ */
+enum Formato {
+
+    JSON("application/json"),
+    CBOR("application/cbor");
+
+    private static final int TAMANHO_BUFFER = 8 * 1024;
+
+    final String tipo;
+
+    Formato(String tipo) {
+        this.tipo = tipo;
+    }
+
+    static Formato negociar(Request request) {
+        return negociar(request.headers("Accept"));
+    }
+
+    static Formato negociar(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+        double qJson = -1;
+        double qCbor = -1;
+        double qCuringa = -1;
+        for (String faixa : accept.split(",")) {
+            String[] partes = faixa.split(";");
+            String tipo = partes[0].trim().toLowerCase(Locale.ROOT);
+            double q = qualidade(partes);
+            if (tipo.equals(CBOR.tipo)) {
+                qCbor = Math.max(qCbor, q);
+            } else if (tipo.equals(JSON.tipo)) {
+                qJson = Math.max(qJson, q);
+            } else if (tipo.equals("*/*") || tipo.equals("application/*")) {
+                qCuringa = Math.max(qCuringa, q);
+            }
+        }
+        if (qJson < 0) {
+            qJson = qCuringa;
+        }
+        return qCbor > 0 && qCbor >= qJson ? CBOR : JSON;
+    }
+
+    // parâmetro q da faixa; 1 se ausente, 0 se inválido
+    private static double qualidade(String[] partes) {
+        for (int i = 1; i < partes.length; i++) {
+            String parametro = partes[i].trim();
+            if (parametro.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parametro.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    // Escritor para a saída; quem chama faz o flush
+    JsonWriter criarEscritor(OutputStream saida) {
+        JsonWriter escritor = this == CBOR
+                ? new EscritorCbor(saida)
+                : new JsonWriter(new BufferedWriter(new OutputStreamWriter(saida, StandardCharsets.UTF_8), TAMANHO_BUFFER));
+        // como em gson.toJson: campos nulos são omitidos
+        escritor.setSerializeNulls(false);
+        return escritor;
+    }
+
+    // Corpo da resposta: String em JSON, byte[] em CBOR (o Spark envia os dois)
+    <T> Object serializar(TypeAdapter<T> adaptador, List<T> itens) {
+        if (this == JSON) {
+            return AdaptadoresJson.paraJson(adaptador, itens);
+        }
+        ByteArrayOutputStream saida = new ByteArrayOutputStream();
+        try {
+            JsonWriter escritor = criarEscritor(saida);
+            escritor.beginArray();
+            for (T item : itens) {
+                adaptador.write(escritor, item);
+            }
+            escritor.endArray();
+            escritor.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return saida.toByteArray();
+    }
+}
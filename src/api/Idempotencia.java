@@ -0,0 +1,320 @@
+package api;
+
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
+import static spark.Spark.halt;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import dao.IdempotenciaDAO;
+import model.RespostaIdempotente;
+import spark.Response;
+import util.Metricas;
+
+/**
+ * Idempotency-Key nos POST.
+ *
+ * O primeiro POST com uma chave executa a rota normalmente, e a resposta
+ * (status, tipo e corpo) fica guardada em memória e na tabela
+ * requisicao_idempotente. Uma repetição com a mesma chave no mesmo caminho
+ * recebe essa resposta sem passar pela rota nem pelo controle de admissão,
+ * com o header Idempotent-Replayed: true. Enquanto a primeira ainda está em
+ * execução, as repetições esperam por ela em vez de executar de novo. A mesma
+ * chave com outro corpo dá 422.
+ *
+ * Respostas 5xx e 429 não são guardadas: a próxima repetição executa a rota
+ * de novo. Em memória ficam as respostas das últimas 'validade' horas, até
+ * 'max' entradas (as mais antigas saem primeiro); a tabela atende as chaves
+ * que saíram da memória ou são de antes de reiniciar a API.
+ */
+class Idempotencia {
+
+    static final String HEADER_CHAVE = "Idempotency-Key";
+    static final String HEADER_REPETIDA = "Idempotent-Replayed";
+
+    private static final String ATRIBUTO_EXECUCAO = "idempotencia.execucao";
+    private static final int TAMANHO_MAXIMO_CHAVE = 255;
+
+    private static final long VALIDADE_MS = TimeUnit.HOURS.toMillis(
+            Long.getLong("locadora.idempotencia.validadeHoras", 24L));
+    private static final int CAPACIDADE = Integer.getInteger("locadora.idempotencia.max", 10_000);
+    // quanto uma repetição espera pela execução da primeira antes do 409
+    private static final long ESPERA_MS = Long.getLong("locadora.idempotencia.esperaMs", 30_000L);
+    private static final boolean USAR_BANCO = !"false".equals(System.getProperty("locadora.idempotencia.banco"));
+
+    // uma requisição com chave em execução; as repetições esperam 'resposta'
+    private static final class Execucao {
+        final String chave;
+        final String impressao;
+        // null se a resposta não foi guardada (5xx, 429)
+        final CompletableFuture<RespostaIdempotente> resposta = new CompletableFuture<>();
+
+        Execucao(String chave, String impressao) {
+            this.chave = chave;
+            this.impressao = impressao;
+        }
+    }
+
+    // ordem de inserção: as mais antigas (e vencidas) ficam no começo
+    private static final LinkedHashMap<String, RespostaIdempotente> respostas = new LinkedHashMap<>();
+    private static final ConcurrentHashMap<String, Execucao> emExecucao = new ConcurrentHashMap<>();
+
+    private static final LongAdder executadas = new LongAdder();
+    private static final LongAdder repetidas = new LongAdder();
+    private static final LongAdder aguardadas = new LongAdder();
+    private static final LongAdder divergentes = new LongAdder();
+    private static final LongAdder naoGuardadas = new LongAdder();
+    private static final LongAdder falhasBanco = new LongAdder();
+
+    private static final IdempotenciaDAO idempotenciaDAO = new IdempotenciaDAO();
+
+    private Idempotencia() {
+    }
+
+    /**
+     * Registra os filtros. Deve vir antes do controle de admissão, para uma
+     * repetição (ou uma espera pela primeira execução) não ocupar vaga.
+     */
+    static void instalar() {
+        registrarMetricas();
+
+        before((request, response) -> {
+            String chaveCliente = request.headers(HEADER_CHAVE);
+            if (chaveCliente == null || !"POST".equals(request.requestMethod())) {
+                return;
+            }
+            if (chaveCliente.isEmpty() || chaveCliente.length() > TAMANHO_MAXIMO_CHAVE) {
+                response.type("application/json");
+                halt(400, "{\"mensagem\": \"Idempotency-Key deve ter de 1 a " + TAMANHO_MAXIMO_CHAVE + " caracteres.\"}");
+            }
+            String chave = sha256(request.pathInfo() + "\n" + chaveCliente);
+            String impressao = sha256(request.body());
+            long limite = System.currentTimeMillis() + ESPERA_MS;
+
+            while (true) {
+                RespostaIdempotente guardada = buscar(chave);
+                if (guardada != null) {
+                    repetidas.increment();
+                    repetir(guardada, impressao, response);
+                }
+
+                Execucao nova = new Execucao(chave, impressao);
+                Execucao atual = emExecucao.putIfAbsent(chave, nova);
+                if (atual == null) {
+                    // a execução anterior pode ter terminado entre a busca e o putIfAbsent
+                    guardada = buscarEmMemoria(chave);
+                    if (guardada != null) {
+                        emExecucao.remove(chave, nova);
+                        nova.resposta.complete(guardada);
+                        repetidas.increment();
+                        repetir(guardada, impressao, response);
+                    }
+                    executadas.increment();
+                    request.attribute(ATRIBUTO_EXECUCAO, nova);
+                    return;
+                }
+
+                if (!atual.impressao.equals(impressao)) {
+                    divergente(response);
+                }
+                RespostaIdempotente resposta = esperar(atual, limite, response);
+                if (resposta != null) {
+                    aguardadas.increment();
+                    repetir(resposta, impressao, response);
+                }
+                // a primeira execução não guardou resposta: tenta executar esta
+            }
+        });
+
+        // afterAfter roda mesmo quando a rota lança exceção ou chama halt
+        afterAfter((request, response) -> {
+            Execucao execucao = request.attribute(ATRIBUTO_EXECUCAO);
+            if (execucao == null) {
+                return;
+            }
+            request.raw().removeAttribute(ATRIBUTO_EXECUCAO);
+
+            RespostaIdempotente resposta = null;
+            try {
+                int status = response.raw().getStatus();
+                String corpo = response.body();
+                if (corpo != null && status < 500 && status != 429) {
+                    resposta = new RespostaIdempotente(execucao.chave, execucao.impressao, status,
+                            response.raw().getContentType(), corpo, System.currentTimeMillis());
+                    guardar(resposta);
+                } else {
+                    naoGuardadas.increment();
+                }
+            } finally {
+                // guardada em memória antes de sair de emExecucao: quem chegar agora a encontra
+                emExecucao.remove(execucao.chave, execucao);
+                execucao.resposta.complete(resposta);
+            }
+        });
+
+        if (USAR_BANCO) {
+            ScheduledExecutorService limpeza = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+                Thread thread = new Thread(tarefa, "limpeza-idempotencia");
+                thread.setDaemon(true);
+                return thread;
+            });
+            limpeza.scheduleWithFixedDelay(() -> {
+                try {
+                    int removidas = idempotenciaDAO.removerVencidas(System.currentTimeMillis() - VALIDADE_MS);
+                    if (removidas > 0) {
+                        System.out.println("Idempotency-Key: " + removidas + " resposta(s) vencida(s) removida(s) do banco.");
+                    }
+                } catch (RuntimeException e) {
+                    // uma exceção aqui cancelaria as próximas execuções
+                    System.err.println("Erro na limpeza das respostas idempotentes: " + e.getMessage());
+                }
+            }, 1, 60, TimeUnit.MINUTES);
+        }
+    }
+
+    private static void registrarMetricas() {
+        String nome = "locadora_idempotencia_requisicoes_total";
+        String ajuda = "POST com Idempotency-Key por resultado";
+        Metricas.medidor(nome, ajuda, Metricas.TIPO_CONTADOR, executadas::sum, "resultado", "executada");
+        Metricas.medidor(nome, ajuda, Metricas.TIPO_CONTADOR, repetidas::sum, "resultado", "repetida");
+        Metricas.medidor(nome, ajuda, Metricas.TIPO_CONTADOR, aguardadas::sum, "resultado", "aguardou_primeira");
+        Metricas.medidor(nome, ajuda, Metricas.TIPO_CONTADOR, divergentes::sum, "resultado", "corpo_divergente");
+        Metricas.medidor("locadora_idempotencia_nao_guardadas_total",
+                "Execuções com Idempotency-Key cuja resposta não foi guardada (5xx, 429)",
+                Metricas.TIPO_CONTADOR, naoGuardadas::sum);
+        Metricas.medidor("locadora_idempotencia_falhas_banco_total",
+                "Falhas ao ler ou gravar respostas idempotentes na tabela",
+                Metricas.TIPO_CONTADOR, falhasBanco::sum);
+        Metricas.medidor("locadora_idempotencia_respostas", "Respostas idempotentes em memória",
+                Metricas.TIPO_MEDIDOR, () -> {
+                    synchronized (respostas) {
+                        return respostas.size();
+                    }
+                });
+    }
+
+    // ------------------------------------
+    // RESPOSTAS
+    // ------------------------------------
+    // Devolve a resposta guardada (halt); 422 se o corpo não é o da original
+    private static void repetir(RespostaIdempotente guardada, String impressao, Response response) {
+        if (!guardada.getImpressao().equals(impressao)) {
+            divergente(response);
+        }
+        response.header(HEADER_REPETIDA, "true");
+        if (guardada.getTipo() != null) {
+            response.type(guardada.getTipo());
+        }
+        halt(guardada.getStatus(), guardada.getCorpo());
+    }
+
+    private static void divergente(Response response) {
+        divergentes.increment();
+        response.type("application/json");
+        halt(422, "{\"mensagem\": \"Idempotency-Key já usada com outro corpo de requisição.\"}");
+    }
+
+    // Espera a primeira execução até 'limite' (ms); 409 se ela não terminar
+    private static RespostaIdempotente esperar(Execucao execucao, long limite, Response response) {
+        try {
+            long espera = Math.max(0, limite - System.currentTimeMillis());
+            return execucao.resposta.get(espera, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            response.type("application/json");
+            response.header("Retry-After", "1");
+            halt(409, "{\"mensagem\": \"Requisição com esta Idempotency-Key ainda em execução. Tente novamente em instantes.\"}");
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrompido aguardando a requisição com a mesma Idempotency-Key.", e);
+        }
+    }
+
+    private static RespostaIdempotente buscar(String chave) {
+        RespostaIdempotente guardada = buscarEmMemoria(chave);
+        if (guardada != null || !USAR_BANCO) {
+            return guardada;
+        }
+        try {
+            guardada = idempotenciaDAO.buscar(chave, System.currentTimeMillis() - VALIDADE_MS);
+        } catch (RuntimeException e) {
+            // sem a tabela a requisição segue; só a memória protege contra repetições
+            falhasBanco.increment();
+            return null;
+        }
+        if (guardada != null) {
+            lembrar(guardada);
+        }
+        return guardada;
+    }
+
+    private static RespostaIdempotente buscarEmMemoria(String chave) {
+        synchronized (respostas) {
+            descartarVencidas();
+            RespostaIdempotente guardada = respostas.get(chave);
+            return guardada != null && !vencida(guardada) ? guardada : null;
+        }
+    }
+
+    private static void guardar(RespostaIdempotente resposta) {
+        lembrar(resposta);
+        if (USAR_BANCO) {
+            try {
+                idempotenciaDAO.gravar(resposta, resposta.getCriadaEm() - VALIDADE_MS);
+            } catch (RuntimeException e) {
+                falhasBanco.increment();
+            }
+        }
+    }
+
+    private static void lembrar(RespostaIdempotente resposta) {
+        synchronized (respostas) {
+            respostas.remove(resposta.getChave());
+            respostas.put(resposta.getChave(), resposta);
+            descartarVencidas();
+            Iterator<RespostaIdempotente> maisAntigas = respostas.values().iterator();
+            while (respostas.size() > CAPACIDADE && maisAntigas.hasNext()) {
+                maisAntigas.next();
+                maisAntigas.remove();
+            }
+        }
+    }
+
+    // Chamado com a trava de 'respostas'
+    private static void descartarVencidas() {
+        Iterator<RespostaIdempotente> maisAntigas = respostas.values().iterator();
+        while (maisAntigas.hasNext() && vencida(maisAntigas.next())) {
+            maisAntigas.remove();
+        }
+    }
+
+    private static boolean vencida(RespostaIdempotente resposta) {
+        return resposta.getCriadaEm() < System.currentTimeMillis() - VALIDADE_MS;
+    }
+
+    private static String sha256(String texto) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(texto.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // todo Java tem SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
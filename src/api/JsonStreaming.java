@@ -0,0 +1,158 @@
+package api;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.gson.Strictness;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+
+import spark.Request;
+import spark.Response;
+import util.BancoIndisponivelException;
+
+/**
+ * Escreve coleções como array JSON (ou CBOR, conforme o Formato negociado)
+ * direto no OutputStream da resposta.
+ *
+ * Cada elemento entregue pela fonte (normalmente um ResultSet em streaming do
+ * DAO) é serializado e escrito na hora, então a memória usada não depende do
+ * número de linhas e o primeiro byte sai antes da consulta terminar.
+ * transmitirLinhas faz o mesmo em NDJSON (um objeto por linha), para as
+ * exportações.
+ */
+class JsonStreaming {
+
+    private static final int TAMANHO_BUFFER = 8 * 1024;
+
+    private JsonStreaming() {
+    }
+
+    /**
+     * Transmite os itens produzidos pela fonte como um array, no formato
+     * negociado, com o adaptador informado (o registrado no Gson ou o de uma
+     * projeção ?fields=).
+     *
+     * A fonte devolve false (ou o pool lança BancoIndisponivelException) quando
+     * o banco falha. Se nada foi enviado ainda, a resposta vira um 500 com a
+     * mensagem de erro; se o começo do array já saiu, a conexão é abortada sem
+     * fechar o array, como em transmitirLinhas.
+     *
+     * @return string vazia, para ser devolvida pela rota (o Spark não escreve
+     *         nada depois que a resposta já foi enviada), ou o corpo do 500
+     */
+    static <T> String transmitirArray(Request request, Response response, Formato formato, TypeAdapter<T> adaptador,
+            Predicate<Consumer<T>> fonte) {
+        response.type(formato.tipo);
+        boolean completo;
+        try {
+            JsonWriter writer = formato.criarEscritor(
+                    new BufferedOutputStream(response.raw().getOutputStream(), TAMANHO_BUFFER));
+            writer.beginArray();
+            try {
+                completo = fonte.test(item -> {
+                    try {
+                        adaptador.write(writer, item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (BancoIndisponivelException e) {
+                // sem conexão nem para começar a leitura
+                completo = false;
+            }
+            if (completo) {
+                writer.endArray();
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao escrever a resposta em streaming.", e);
+        }
+        if (completo) {
+            return "";
+        }
+        if (!response.raw().isCommitted()) {
+            // o que ficou nos buffers é descartado; o Spark escreve o corpo do erro
+            response.raw().resetBuffer();
+            response.status(500);
+            response.type("application/json");
+            return "{\"mensagem\": \"Erro ao consultar o banco de dados.\"}";
+        }
+        org.eclipse.jetty.server.Request.getBaseRequest(request.raw()).getHttpChannel()
+                .abort(new IOException("Resposta interrompida por falha no banco de dados."));
+        return "";
+    }
+
+    /**
+     * Transmite os itens como NDJSON: cada item é um objeto JSON numa linha,
+     * sem array em volta, então o consumidor processa linha a linha. Com
+     * gzip, comprime na própria saída.
+     *
+     * A fonte devolve false quando o banco falha no meio da leitura. Aí a
+     * conexão é abortada sem terminar a resposta, para o cliente ver um
+     * erro de transferência em vez de um arquivo que parece completo.
+     */
+    static <T> String transmitirLinhas(Request request, Response response, TypeAdapter<T> adaptador, boolean gzip,
+            Predicate<Consumer<T>> fonte) {
+        response.type("application/x-ndjson");
+        if (gzip) {
+            response.header("Content-Encoding", "gzip");
+        }
+        boolean completo;
+        try {
+            OutputStream saida = response.raw().getOutputStream();
+            if (gzip) {
+                saida = new GZIPOutputStream(saida, TAMANHO_BUFFER);
+            }
+            Writer texto = new BufferedWriter(new OutputStreamWriter(saida, StandardCharsets.UTF_8), TAMANHO_BUFFER);
+            JsonWriter writer = new JsonWriter(texto);
+            // leniente para aceitar um valor de topo depois do outro; a quebra de linha vai direto no Writer
+            writer.setStrictness(Strictness.LENIENT);
+            writer.setSerializeNulls(false);
+            completo = fonte.test(item -> {
+                try {
+                    adaptador.write(writer, item);
+                    texto.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (completo) {
+                // close termina o gzip; o Jetty fecha a resposta normalmente
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Falha ao escrever a exportação.", e);
+        }
+        if (!completo) {
+            org.eclipse.jetty.server.Request.getBaseRequest(request.raw()).getHttpChannel()
+                    .abort(new IOException("Exportação interrompida por falha no banco de dados."));
+        }
+        return "";
+    }
+
+    // Accept-Encoding com gzip (e q diferente de 0)
+    static boolean aceitaGzip(Request request) {
+        String accept = request.headers("Accept-Encoding");
+        if (accept == null) {
+            return false;
+        }
+        for (String faixa : accept.split(",")) {
+            String[] partes = faixa.split(";");
+            if (partes[0].trim().toLowerCase(Locale.ROOT).equals("gzip")) {
+                return partes.length == 1 || !partes[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,153 @@
+package api;
+
+import static spark.Spark.afterAfter;
+import static spark.Spark.before;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import spark.Spark;
+import spark.routematch.RouteMatch;
+import util.Histograma;
+import util.Metricas;
+
+/**
+ * Latência e vazão de cada rota do Spark, exportadas em GET /metrics.
+ *
+ * O rótulo é o padrão da rota ("/jogos/:id"), não o caminho pedido, para o
+ * número de séries não crescer com os IDs. A rota é descoberta comparando o
+ * caminho com a tabela montada em registrarRotas(), sem alocar nada; o tempo
+ * vai do primeiro filtro ao fim da rota (inclui a espera na admissão).
+ */
+class MetricasRotas {
+
+    private static final String NOME = "locadora_http_requisicao_segundos";
+    private static final String AJUDA = "Tempo de atendimento das requisições, por rota";
+    private static final String[] METODOS = { "GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS" };
+
+    // before e afterAfter rodam na mesma thread, dentro do mesmo doFilter
+    private static final ThreadLocal<long[]> INICIO = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static volatile Rota[] rotas = new Rota[0];
+    // uma série por método para caminhos sem rota (404), sem criar rótulos novos
+    private static final Histograma[] SEM_ROTA = new Histograma[METODOS.length];
+
+    private MetricasRotas() {
+    }
+
+    // Registra os filtros; deve ser o primeiro filtro "before" da aplicação
+    static void instalar() {
+        before((request, response) -> INICIO.get()[0] = System.nanoTime());
+
+        afterAfter((request, response) -> {
+            long[] inicio = INICIO.get();
+            if (inicio[0] == 0) {
+                return;
+            }
+            long duracao = System.nanoTime() - inicio[0];
+            inicio[0] = 0;
+
+            Histograma tempo = localizar(request.requestMethod(), request.pathInfo());
+            if (tempo != null) {
+                tempo.registrar(duracao);
+            }
+        });
+    }
+
+    /**
+     * Monta a tabela de rotas a partir das rotas já declaradas no Spark. Deve
+     * ser chamado depois da última rota; antes disso nada é registrado.
+     */
+    static void registrarRotas() {
+        List<Rota> encontradas = new ArrayList<>();
+        for (RouteMatch rota : Spark.routes()) {
+            String metodo = rota.getHttpMethod().name().toUpperCase(Locale.ROOT);
+            if (indiceMetodo(metodo) >= 0) {
+                encontradas.add(new Rota(metodo, rota.getMatchUri(),
+                        Metricas.histograma(NOME, AJUDA, "metodo", metodo, "rota", rota.getMatchUri())));
+            }
+        }
+        // "/locacoes/batch" antes de "/locacoes/:id"
+        encontradas.sort((a, b) -> Integer.compare(b.literais, a.literais));
+
+        for (int i = 0; i < METODOS.length; i++) {
+            SEM_ROTA[i] = Metricas.histograma(NOME, AJUDA, "metodo", METODOS[i], "rota", "(nenhuma)");
+        }
+        rotas = encontradas.toArray(new Rota[0]);
+    }
+
+    private static Histograma localizar(String metodo, String caminho) {
+        for (Rota rota : rotas) {
+            if (rota.metodo.equals(metodo) && rota.corresponde(caminho)) {
+                return rota.tempo;
+            }
+        }
+        int indice = indiceMetodo(metodo);
+        return indice >= 0 ? SEM_ROTA[indice] : null;
+    }
+
+    private static int indiceMetodo(String metodo) {
+        for (int i = 0; i < METODOS.length; i++) {
+            if (METODOS[i].equals(metodo)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ------------------------------------
+    // ROTA
+    // ------------------------------------
+    private static final class Rota {
+        final String metodo;
+        // segmentos do padrão; os que começam com ':' aceitam qualquer valor
+        final String[] segmentos;
+        final int literais;
+        final Histograma tempo;
+
+        Rota(String metodo, String padrao, Histograma tempo) {
+            this.metodo = metodo;
+            this.tempo = tempo;
+            List<String> partes = new ArrayList<>();
+            int literais = 0;
+            for (String parte : padrao.split("/")) {
+                if (!parte.isEmpty()) {
+                    partes.add(parte);
+                    if (!parte.startsWith(":")) {
+                        literais++;
+                    }
+                }
+            }
+            this.segmentos = partes.toArray(new String[0]);
+            this.literais = literais;
+        }
+
+        boolean corresponde(String caminho) {
+            if (segmentos.length == 0) {
+                return "/".equals(caminho);
+            }
+            int n = caminho.length();
+            int pos = 0;
+            for (String segmento : segmentos) {
+                if (pos >= n || caminho.charAt(pos) != '/') {
+                    return false;
+                }
+                pos++;
+                int fim = caminho.indexOf('/', pos);
+                if (fim < 0) {
+                    fim = n;
+                }
+                if (segmento.charAt(0) == ':') {
+                    if (fim == pos) {
+                        return false;
+                    }
+                } else if (fim - pos != segmento.length() || !caminho.regionMatches(pos, segmento, 0, fim - pos)) {
+                    return false;
+                }
+                pos = fim;
+            }
+            return pos == n;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package api;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+/**
+ * Escolhe em que threads o Jetty embutido do Spark executa as requisições
+ * (propriedade locadora.execucao).
+ *
+ * plataforma (padrão): pool de threads do sistema, limitado por
+ * locadora.threads.max. Cada requisição bloqueada no JDBC ocupa uma delas.
+ *
+ * virtual: cada tarefa do Jetty roda em uma virtual thread (Java 21+), então
+ * esperar o banco não prende uma thread do sistema. O trabalho simultâneo no
+ * banco continua limitado pelo pool de conexões (locadora.pool.max): as
+ * requisições além disso esperam uma conexão livre, não uma thread.
+ */
+class ModoExecucao {
+
+    static final String PLATAFORMA = "plataforma";
+    static final String VIRTUAL = "virtual";
+
+    private static final String MODO = System.getProperty("locadora.execucao", PLATAFORMA);
+    // mesmos padrões do QueuedThreadPool que o Spark cria sozinho
+    private static final int THREADS_MAX = Integer.getInteger("locadora.threads.max", 200);
+    private static final int THREADS_MIN = Integer.getInteger("locadora.threads.min", 8);
+    private static final int THREADS_OCIOSA_MS = 60_000;
+
+    private static volatile ThreadPool threadPool;
+    private static volatile String modoAtivo = PLATAFORMA;
+
+    private ModoExecucao() {
+    }
+
+    /**
+     * Registra a fábrica do Jetty com o pool de threads escolhido. Precisa ser
+     * chamado antes da primeira rota, que é quando o Spark sobe o servidor.
+     */
+    static void configurar() {
+        ThreadPool pool = null;
+
+        if (VIRTUAL.equals(MODO)) {
+            ExecutorService executor = criarExecutorVirtual();
+            if (executor != null) {
+                pool = new PoolThreadsVirtuais(executor);
+                modoAtivo = VIRTUAL;
+            } else {
+                System.err.println("Virtual threads exigem Java 21 ou superior (atual: "
+                        + System.getProperty("java.version") + "). Usando threads de plataforma.");
+            }
+        } else if (!PLATAFORMA.equals(MODO)) {
+            System.err.println("locadora.execucao desconhecido: '" + MODO + "'. Usando threads de plataforma.");
+        }
+
+        if (pool == null) {
+            QueuedThreadPool plataforma = new QueuedThreadPool(THREADS_MAX, THREADS_MIN, THREADS_OCIOSA_MS);
+            plataforma.setName("http");
+            pool = plataforma;
+        }
+
+        threadPool = pool;
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory().withThreadPool(pool));
+        System.out.println("Modo de execução: " + modoAtivo);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() por reflexão, para o projeto
+    // continuar compilando e rodando em Java 17; null se não existir
+    private static ExecutorService criarExecutorVirtual() {
+        try {
+            Method fabrica = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) fabrica.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Falha ao criar o executor de virtual threads: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // ------------------------------------
+    // ESTATÍSTICAS
+    // ------------------------------------
+    static String getModo() {
+        return modoAtivo;
+    }
+
+    // threads existentes (plataforma) ou tarefas em execução (virtual)
+    static int getThreads() {
+        ThreadPool pool = threadPool;
+        return pool != null ? pool.getThreads() : 0;
+    }
+
+    static int getThreadsOciosas() {
+        ThreadPool pool = threadPool;
+        return pool != null ? pool.getIdleThreads() : 0;
+    }
+
+    // null no modo virtual, que não tem limite de threads
+    static Integer getThreadsMaximo() {
+        return threadPool instanceof QueuedThreadPool ? ((QueuedThreadPool) threadPool).getMaxThreads() : null;
+    }
+
+    // ------------------------------------
+    // POOL DO JETTY SOBRE VIRTUAL THREADS
+    // ------------------------------------
+    // Uma virtual thread nova por tarefa; não há threads ociosas nem falta de
+    // threads, então o Jetty nunca entra em modo de economia.
+    private static final class PoolThreadsVirtuais extends AbstractLifeCycle implements ThreadPool {
+        private static final long TIMEOUT_ENCERRAMENTO_MS = 5_000;
+
+        private final ExecutorService executor;
+        private final AtomicInteger emExecucao = new AtomicInteger();
+
+        PoolThreadsVirtuais(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable tarefa) {
+            emExecucao.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    try {
+                        tarefa.run();
+                    } finally {
+                        emExecucao.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                emExecucao.decrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        protected void doStop() throws Exception {
+            executor.shutdown();
+            if (!executor.awaitTermination(TIMEOUT_ENCERRAMENTO_MS, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // espera o encerramento do servidor
+            }
+        }
+
+        @Override
+        public int getThreads() {
+            return emExecucao.get();
+        }
+
+        @Override
+        public int getIdleThreads() {
+            return 0;
+        }
+
+        @Override
+        public boolean isLowOnThreads() {
+            return false;
+        }
+    }
+}
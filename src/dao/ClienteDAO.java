@@ -6,19 +6,149 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import model.Cliente;
+import util.ChamadaUnica;
 import util.ConnectionFactory;
+import util.IndiceBusca;
+import util.SqlUtil;
 
 public class ClienteDAO {
+
+    // ------------------------------------
+    // BUSCA POR NOME: índice em memória
+    // ------------------------------------
+    // Guarda uma cópia de cada cliente, então a busca não vai ao banco. As
+    // escritas deste DAO atualizam o índice depois de gravar. A carga lê o
+    // banco sem trava; as escritas feitas enquanto ela lê ficam anotadas e são
+    // reaplicadas no índice novo na hora da troca, então nenhuma se perde e
+    // nenhuma escrita espera a leitura da tabela.
+    private static volatile IndiceBusca<Cliente> indiceBusca;
+
+    // protege a troca do índice e as escritas anotadas durante a carga
+    private static final Object travaIndice = new Object();
+    // por ID, o último estado escrito durante a carga (null = excluído); null fora de carga
+    private static Map<Long, Cliente> escritasDuranteCarga;
+    // buscas simultâneas sem índice esperam uma única carga
+    private static final ChamadaUnica<String, Boolean> cargasIndice = new ChamadaUnica<>("ClienteDAO.indiceBusca");
+
+    // Monta o índice a partir do banco (na inicialização da API ou na primeira busca)
+    public static void carregarIndiceBusca() {
+        cargasIndice.executar("indice", 0, ClienteDAO::montarIndiceBusca);
+    }
+
+    private static Boolean montarIndiceBusca() {
+        synchronized (travaIndice) {
+            escritasDuranteCarga = new LinkedHashMap<>();
+        }
+        IndiceBusca<Cliente> indice = null;
+        try {
+            List<Cliente> clientes = carregarTodos();
+            // null: erro no banco, tenta de novo na próxima busca
+            if (clientes != null) {
+                indice = new IndiceBusca<>();
+                for (Cliente cliente : clientes) {
+                    indice.indexar(cliente.getId(), cliente.getNome(), cliente);
+                }
+            }
+        } finally {
+            publicarIndice(indice);
+        }
+        return indice != null;
+    }
+
+    // Troca o índice (null: a carga falhou e o atual continua) depois de
+    // reaplicar nele as escritas feitas durante a carga
+    private static void publicarIndice(IndiceBusca<Cliente> indice) {
+        synchronized (travaIndice) {
+            if (indice != null) {
+                for (Map.Entry<Long, Cliente> escrita : escritasDuranteCarga.entrySet()) {
+                    Cliente cliente = escrita.getValue();
+                    if (cliente != null) {
+                        indice.indexar(cliente.getId(), cliente.getNome(), cliente);
+                    } else {
+                        indice.remover(escrita.getKey());
+                    }
+                }
+                indiceBusca = indice;
+            }
+            escritasDuranteCarga = null;
+        }
+    }
+
+    // chamado depois de cada inclusão ou alteração confirmada
+    private static void indexar(Cliente cliente) {
+        versaoEscritas.incrementAndGet();
+        if (cliente.getId() == null) {
+            return;
+        }
+        Cliente copia = new Cliente(cliente.getId(), cliente.getNome(), cliente.getIdade());
+        copia.setVersao(cliente.getVersao());
+        synchronized (travaIndice) {
+            if (escritasDuranteCarga != null) {
+                escritasDuranteCarga.put(copia.getId(), copia);
+            }
+            if (indiceBusca != null) {
+                indiceBusca.indexar(copia.getId(), copia.getNome(), copia);
+            }
+        }
+    }
+
+    // chamado depois de cada exclusão confirmada
+    private static void removerDoIndice(Long id) {
+        versaoEscritas.incrementAndGet();
+        synchronized (travaIndice) {
+            if (escritasDuranteCarga != null) {
+                escritasDuranteCarga.put(id, null);
+            }
+            if (indiceBusca != null) {
+                indiceBusca.remover(id);
+            }
+        }
+    }
+
+    // Cliente do índice em memória, sem ir ao banco (usado com o banco fora do
+    // ar); null se o índice não foi carregado ou não tem o ID. Para saber
+    // qual dos dois, veja isIndiceCarregado().
+    public static Cliente buscarEmCache(Long id) {
+        IndiceBusca<Cliente> indice = indiceBusca;
+        return indice != null ? indice.buscarPorId(id) : null;
+    }
+
+    public static boolean isIndiceCarregado() {
+        return indiceBusca != null;
+    }
+
+    // Clientes cujo nome mais se parece com a consulta (prefixo, trecho ou
+    // com erros de digitação), sem diferenciar acentos
+    public List<Cliente> buscarPorNome(String consulta, int limite) {
+        if (indiceBusca == null) {
+            carregarIndiceBusca();
+        }
+        IndiceBusca<Cliente> indice = indiceBusca;
+        return indice != null ? indice.buscar(consulta, limite) : new ArrayList<>();
+    }
+
     // ------------------------------------
     // READ
     // ------------------------------------
     public List<Cliente> buscarTodos() {
+        List<Cliente> clientes = carregarTodos();
+        return clientes != null ? clientes : new ArrayList<>();
+    }
+
+    // lê todos os clientes do banco; null se houver erro
+    private static List<Cliente> carregarTodos() {
         List<Cliente> clientes = new ArrayList<>();
         // query SQL para selecionar todos os campos
-        String sql = "SELECT id, nome, idade FROM cliente";
+        String sql = "SELECT id, nome, idade, versao FROM cliente";
                  
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql);
@@ -26,28 +156,91 @@ public class ClienteDAO {
             
             // itera sobre cada linha retornada pelo banco
             while (rs.next()) {
-                // cria um novo objeto Cliente a partir dos dados da linha atual do ResultSet
-                Cliente cliente = new Cliente(
-                        rs.getLong("id"),
-                        rs.getString("nome"),
-                        rs.getInt("idade"));
-                clientes.add(cliente);
+                clientes.add(mapear(rs));
             }
         } catch (SQLException e) {
             System.err.println("Erro ao buscar os Clientes: " + e.getMessage());
             e.printStackTrace();
+            return null;
+        }
+        return clientes;
+    }
+
+    // ------------------------------------
+    // READ: página (keyset no id)
+    // ------------------------------------
+    public List<Cliente> buscarPagina(Long depoisDe, int limite) {
+        List<Cliente> clientes = new ArrayList<>();
+        // o cursor é o último ID da página anterior; o índice da PK evita o custo do OFFSET
+        String sql = "SELECT id, nome, idade, versao FROM cliente WHERE id > ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, depoisDe != null ? depoisDe : 0L);
+            stmt.setInt(2, limite);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    clientes.add(mapear(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao buscar a página de Clientes: " + e.getMessage());
+            e.printStackTrace();
         }
         return clientes;
     }
+
+    // ------------------------------------
+    // READ: streaming (sem montar lista)
+    // ------------------------------------
+    public void percorrerTodos(Consumer<Cliente> consumidor) {
+        percorrer(null, consumidor);
+    }
+
+    // Só os clientes com ID maior que 'depoisDe' (null: todos); false se o banco falhou no meio
+    public boolean percorrer(Long depoisDe, Consumer<Cliente> consumidor) {
+        String sql = "SELECT id, nome, idade, versao FROM cliente WHERE id > ? ORDER BY id";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, depoisDe != null ? depoisDe : 0L);
+            // Integer.MIN_VALUE faz o driver do MySQL ler linha a linha do servidor
+            stmt.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumidor.accept(mapear(rs));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Erro ao percorrer os Clientes: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
     
     // ------------------------------------
     // READ BY ID
     // ------------------------------------
+    // muda a cada escrita confirmada
+    private static final AtomicLong versaoEscritas = new AtomicLong();
+    private static final ChamadaUnica<Long, Cliente> buscasPorId = new ChamadaUnica<>("ClienteDAO.buscarPorId");
+
+    // Buscas simultâneas do mesmo ID viram uma só ida ao banco; uma busca que
+    // começa depois de uma escrita não aproveita a leitura de antes dela
     public Cliente buscarPorId(Long id) {
+        return buscasPorId.executar(id, versaoEscritas.get(), () -> consultarPorId(id));
+    }
+
+    private static Cliente consultarPorId(Long id) {
         
         Cliente cliente = null;
         
-        String sql = "SELECT id, nome, idade FROM cliente WHERE id = ?";
+        String sql = "SELECT id, nome, idade, versao FROM cliente WHERE id = ?";
         
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -58,11 +251,7 @@ public class ClienteDAO {
             try (ResultSet rs = stmt.executeQuery()) {
                 // itera sobre cada linha retornada pelo banco
                 if (rs.next()) {
-                    // cria um novo objeto Cliente a partir dos dados da linha atual do ResultSet
-                    cliente = new Cliente(
-                            rs.getLong("id"),
-                            rs.getString("nome"),
-                            rs.getInt("idade"));
+                    cliente = mapear(rs);
                 }
             }
         } catch (SQLException e) {
@@ -72,6 +261,71 @@ public class ClienteDAO {
         return cliente;
     }
 
+    // ------------------------------------
+    // READ BY IDS: vários clientes em uma consulta
+    // ------------------------------------
+    public Map<Long, Cliente> buscarPorIds(Collection<Long> ids) {
+        Map<Long, Cliente> clientes = new HashMap<>();
+        if (ids.isEmpty()) {
+            return clientes;
+        }
+
+        String sql = "SELECT id, nome, idade, versao FROM cliente WHERE id IN (" + SqlUtil.placeholders(ids.size()) + ")";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            for (Long id : ids) {
+                stmt.setLong(i++, id);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Cliente cliente = mapear(rs);
+                    clientes.put(cliente.getId(), cliente);
+                }
+            }
+        } catch (SQLException e) {
+            // um mapa vazio ou parcial faria os clientes parecerem inexistentes
+            System.err.println("Erro ao buscar Clientes por IDs: " + ids + ". Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao buscar clientes por IDs.", e);
+        }
+        return clientes;
+    }
+
+    // cria um novo objeto Cliente a partir dos dados da linha atual do ResultSet
+    private static Cliente mapear(ResultSet rs) throws SQLException {
+        Cliente cliente = new Cliente(
+                rs.getLong("id"),
+                rs.getString("nome"),
+                rs.getInt("idade"));
+        cliente.setVersao(rs.getInt("versao"));
+        return cliente;
+    }
+
+    // ------------------------------------
+    // EXISTS
+    // ------------------------------------
+    public boolean existe(Long id) {
+        String sql = "SELECT 1 FROM cliente WHERE id = ?";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao verificar o Cliente ID: " + id + ". Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao verificar cliente.", e);
+        }
+    }
+
     // ------------------------------------
     // CREATE
     // ------------------------------------
@@ -101,8 +355,10 @@ public class ClienteDAO {
                 if (rs.next()) {
                     // define o ID no objeto Cliente que foi passado (importante para a API)
                     cliente.setId(rs.getLong(1));
+                    cliente.setVersao(1);
                 }
             }
+            indexar(cliente);
             
         } catch (SQLException e) {
             System.err.println("Erro ao inserir Cliente. Detalhes: " + e.getMessage());
@@ -113,12 +369,16 @@ public class ClienteDAO {
     // ------------------------------------
     // UPDATE
     // ------------------------------------
-    public void atualizar(Cliente cliente) {
+    // devolve as linhas afetadas: 0 quando o cliente não existe ou, com
+    // versaoEsperada, quando outra atualização chegou antes
+    public int atualizar(Cliente cliente, Integer versaoEsperada) {
 
-        String sql = "UPDATE cliente SET nome = ?, idade = ? WHERE id = ?";
+        // LAST_INSERT_ID(versao + 1) devolve a nova versão no próprio UPDATE
+        String sql = "UPDATE cliente SET nome = ?, idade = ?, versao = LAST_INSERT_ID(versao + 1) WHERE id = ?"
+                + (versaoEsperada != null ? " AND versao = ?" : "");
 
         try (Connection conn = ConnectionFactory.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+                PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             // define os parâmetros (os novos valores)
             stmt.setString(1, cliente.getNome());
@@ -130,40 +390,66 @@ public class ClienteDAO {
                 stmt.setNull(2, java.sql.Types.INTEGER);
             }
 
-            // define o ID no WHERE (o último '?')
+            // define o ID (e a versão esperada) no WHERE
             stmt.setLong(3, cliente.getId());
+            if (versaoEsperada != null) {
+                stmt.setInt(4, versaoEsperada);
+            }
 
             // executa a atualização
             int linhasAfetadas = stmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                cliente.setVersao(SqlUtil.versaoGerada(stmt));
+                indexar(cliente);
+            }
             System.out.println("Cliente ID " + cliente.getId() + " atualizado. Linhas afetadas: " + linhasAfetadas);
+            return linhasAfetadas;
 
         } catch (SQLException e) {
             System.err.println("Erro ao atualizar cliente ID: " + cliente.getId() + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            throw new RuntimeException("Erro ao atualizar cliente.", e);
         }
     }
 
+    public int atualizar(Cliente cliente) {
+        return atualizar(cliente, null);
+    }
+
     // ------------------------------------
     // DELETE
     // ------------------------------------
-    public void deletar(Long id) {
+    public int deletar(Long id, Integer versaoEsperada) {
 
         // a exclusão precisa do ID no WHERE
-        String sql = "DELETE FROM cliente WHERE id = ?";
+        String sql = "DELETE FROM cliente WHERE id = ?" + (versaoEsperada != null ? " AND versao = ?" : "");
 
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             // define o ID do cliente a ser deletado
             stmt.setLong(1, id);
+            if (versaoEsperada != null) {
+                stmt.setInt(2, versaoEsperada);
+            }
 
             // executa a exclusão
             int linhasAfetadas = stmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                removerDoIndice(id);
+            }
             System.out.println("Tentativa de deletar Cliente ID " + id + ". Linhas afetadas: " + linhasAfetadas);
+            return linhasAfetadas;
 
         } catch (SQLException e) {
             System.err.println("Erro ao deletar cliente ID: " + id + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            // a causa (ex.: SQLIntegrityConstraintViolationException) chega à rota
+            throw new RuntimeException("Erro ao deletar cliente.", e);
         }
     }
-}
\ No newline at end of file
+
+    public int deletar(Long id) {
+        return deletar(id, null);
+    }
+}
@@ -0,0 +1,15 @@
+package dao;
+
+/**
+ * Lançada quando o commit de uma transação falhou depois de enviado (queda
+ * da conexão, por exemplo). O servidor pode ter gravado tudo ou nada, então
+ * quem a recebe não deve repetir a operação por conta própria.
+ */
+public class CommitIncertoException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CommitIncertoException(String mensagem, Throwable causa) {
+        super(mensagem, causa);
+    }
+}
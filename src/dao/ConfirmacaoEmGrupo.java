@@ -0,0 +1,209 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import model.Locacao;
+import util.Histograma;
+import util.Metricas;
+
+/**
+ * Gravação das locações de POST /locacoes em grupo (group commit), opcional.
+ *
+ * Cada inserção entra numa fila limitada e quem chamou espera. Uma única
+ * thread de confirmação tira da fila até 'maxLinhas' locações, esperando no
+ * máximo 'maxEsperaMs' depois da primeira, e grava todas com
+ * LocacaoDAO.inserirGrupo: um commit (um fsync no banco) para o grupo em vez
+ * de um por locação. Enquanto um grupo é confirmado, o próximo se forma na
+ * fila. Cada chamada só retorna depois do commit do seu grupo.
+ *
+ * Se a transação do grupo falhar antes do commit, as locações dele são
+ * gravadas uma a uma (inserirValidado), para que a falha de uma não recuse as
+ * outras. Se o próprio commit falhar (CommitIncertoException), o grupo pode
+ * ter sido gravado: todas recebem a exceção, como uma inserção isolada que
+ * perde a conexão, e nenhuma é repetida. Com a
+ * fila cheia por mais de ESPERA_FILA_MS, a inserção é recusada (FILA_CHEIA).
+ */
+public class ConfirmacaoEmGrupo {
+
+    private static final long ESPERA_FILA_MS = Long.getLong("locadora.escrita.grupo.esperaFilaMs", 1_000L);
+
+    private static final class Pedido {
+        final Locacao locacao;
+        final long enfileiradoEm = System.nanoTime();
+        final CompletableFuture<ResultadoLocacao> resultado = new CompletableFuture<>();
+
+        Pedido(Locacao locacao) {
+            this.locacao = locacao;
+        }
+    }
+
+    // null enquanto a gravação em grupo não foi iniciada
+    private static volatile BlockingQueue<Pedido> fila;
+    private static int maxLinhas;
+    private static long maxEsperaNanos;
+
+    private static final LocacaoDAO locacaoDAO = new LocacaoDAO();
+
+    private static final LongAdder locacoes = new LongAdder();
+    private static final LongAdder grupos = new LongAdder();
+    private static final LongAdder gruposFalhos = new LongAdder();
+    private static final LongAdder gruposIncertos = new LongAdder();
+    private static final LongAdder recusadasFilaCheia = new LongAdder();
+    private static Histograma tempoCommit;
+    private static Histograma tempoEspera;
+
+    private ConfirmacaoEmGrupo() {
+    }
+
+    // ------------------------------------
+    // INICIALIZAÇÃO
+    // ------------------------------------
+    public static synchronized void iniciar(int maxLinhas, long maxEsperaMs, int capacidadeFila) {
+        if (fila != null) {
+            return;
+        }
+        ConfirmacaoEmGrupo.maxLinhas = Math.max(1, maxLinhas);
+        ConfirmacaoEmGrupo.maxEsperaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxEsperaMs));
+        BlockingQueue<Pedido> novaFila = new ArrayBlockingQueue<>(Math.max(1, capacidadeFila));
+
+        tempoCommit = Metricas.histograma("locadora_grupo_commit_segundos",
+                "Tempo de gravação e commit de cada grupo de locações");
+        tempoEspera = Metricas.histograma("locadora_grupo_espera_segundos",
+                "Tempo de cada locação da entrada na fila até o commit do seu grupo");
+        Metricas.medidor("locadora_grupo_locacoes_total", "Locações processadas pela gravação em grupo",
+                Metricas.TIPO_CONTADOR, locacoes::sum);
+        Metricas.medidor("locadora_grupo_commits_total", "Grupos de locações gravados",
+                Metricas.TIPO_CONTADOR, grupos::sum, "resultado", "ok");
+        Metricas.medidor("locadora_grupo_commits_total", "Grupos de locações gravados",
+                Metricas.TIPO_CONTADOR, gruposFalhos::sum, "resultado", "falha");
+        Metricas.medidor("locadora_grupo_commits_total", "Grupos de locações gravados",
+                Metricas.TIPO_CONTADOR, gruposIncertos::sum, "resultado", "incerto");
+        Metricas.medidor("locadora_grupo_recusadas_total", "Locações recusadas com a fila da gravação em grupo cheia",
+                Metricas.TIPO_CONTADOR, recusadasFilaCheia::sum);
+        Metricas.medidor("locadora_grupo_fila", "Locações aguardando a gravação em grupo",
+                Metricas.TIPO_MEDIDOR, novaFila::size);
+
+        Thread confirmador = new Thread(() -> confirmarGrupos(novaFila), "confirmacao-locacoes");
+        confirmador.setDaemon(true);
+        confirmador.start();
+        fila = novaFila;
+    }
+
+    public static boolean isAtivo() {
+        return fila != null;
+    }
+
+    // ------------------------------------
+    // CREATE
+    // ------------------------------------
+    /**
+     * Enfileira a locação e espera o commit do seu grupo. Devolve o mesmo
+     * resultado de LocacaoDAO.inserirValidado, ou FILA_CHEIA; lança
+     * RuntimeException se o banco falhou.
+     */
+    public static ResultadoLocacao inserir(Locacao locacao) {
+        Pedido pedido = new Pedido(locacao);
+        try {
+            if (!fila.offer(pedido, ESPERA_FILA_MS, TimeUnit.MILLISECONDS)) {
+                recusadasFilaCheia.increment();
+                return new ResultadoLocacao(ResultadoLocacao.Status.FILA_CHEIA, null);
+            }
+            return pedido.resultado.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrompido aguardando a gravação da locação.", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new RuntimeException("Erro ao inserir locação.", e.getCause());
+        }
+    }
+
+    // ------------------------------------
+    // CONFIRMAÇÃO
+    // ------------------------------------
+    private static void confirmarGrupos(BlockingQueue<Pedido> fila) {
+        List<Pedido> grupo = new ArrayList<>(maxLinhas);
+        while (true) {
+            try {
+                grupo.add(fila.take());
+                long limite = System.nanoTime() + maxEsperaNanos;
+                while (grupo.size() < maxLinhas) {
+                    // o que já está na fila entra sem esperar
+                    if (fila.drainTo(grupo, maxLinhas - grupo.size()) > 0) {
+                        continue;
+                    }
+                    long restante = limite - System.nanoTime();
+                    Pedido proximo = restante > 0 ? fila.poll(restante, TimeUnit.NANOSECONDS) : null;
+                    if (proximo == null) {
+                        break;
+                    }
+                    grupo.add(proximo);
+                }
+                confirmar(grupo);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // uma exceção aqui pararia a thread e deixaria os pedidos esperando para sempre
+                System.err.println("Erro na gravação em grupo de locações: " + e.getMessage());
+                e.printStackTrace();
+                for (Pedido pedido : grupo) {
+                    pedido.resultado.completeExceptionally(e);
+                }
+            } finally {
+                grupo.clear();
+            }
+        }
+    }
+
+    private static void confirmar(List<Pedido> grupo) {
+        List<Locacao> locacoesGrupo = new ArrayList<>(grupo.size());
+        for (Pedido pedido : grupo) {
+            locacoesGrupo.add(pedido.locacao);
+        }
+        locacoes.add(grupo.size());
+
+        long inicio = System.nanoTime();
+        List<ResultadoLocacao> resultados;
+        try {
+            resultados = locacaoDAO.inserirGrupo(locacoesGrupo);
+        } catch (CommitIncertoException e) {
+            gruposIncertos.increment();
+            System.err.println("Grupo de " + grupo.size() + " locações com commit incerto; nenhuma será repetida.");
+            for (Pedido pedido : grupo) {
+                pedido.resultado.completeExceptionally(e);
+                tempoEspera.registrar(System.nanoTime() - pedido.enfileiradoEm);
+            }
+            return;
+        } catch (RuntimeException e) {
+            gruposFalhos.increment();
+            System.err.println("Grupo de " + grupo.size() + " locações não gravado; gravando uma a uma.");
+            for (Pedido pedido : grupo) {
+                try {
+                    pedido.resultado.complete(locacaoDAO.inserirValidado(pedido.locacao));
+                } catch (RuntimeException falha) {
+                    pedido.resultado.completeExceptionally(falha);
+                }
+                tempoEspera.registrar(System.nanoTime() - pedido.enfileiradoEm);
+            }
+            return;
+        }
+        long fim = System.nanoTime();
+        tempoCommit.registrar(fim - inicio);
+        grupos.increment();
+
+        for (int i = 0; i < grupo.size(); i++) {
+            Pedido pedido = grupo.get(i);
+            tempoEspera.registrar(fim - pedido.enfileiradoEm);
+            pedido.resultado.complete(resultados.get(i));
+        }
+    }
+}
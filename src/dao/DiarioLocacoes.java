@@ -0,0 +1,491 @@
+package dao;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32C;
+
+import model.Cliente;
+import model.Jogo;
+import model.Locacao;
+import util.ConnectionFactory;
+import util.Metricas;
+
+/**
+ * Diário local das locações aceitas com o banco fora do ar.
+ *
+ * Quando POST /locacoes não consegue abrir uma conexão, a locação é gravada
+ * neste arquivo e a API responde 202. O arquivo só recebe acréscimos; cada
+ * registro leva o tamanho e um CRC32C, então um registro cortado por uma
+ * queda no meio da escrita é detectado (e descartado) na abertura. Uma thread
+ * grava os registros de várias requisições com um único force() (fsync), e
+ * cada requisição só recebe a resposta depois que o seu registro está no
+ * disco.
+ *
+ * Outra thread reaplica os registros na ordem em que foram aceitos, assim que
+ * o banco volta, com LocacaoDAO.inserirDoDiario: a chave de cada registro é
+ * gravada em locacao_diario na mesma transação da locação, então reaplicar
+ * de novo (depois de uma queda no meio da reaplicação) não duplica nada.
+ * Quando não sobra nenhum pendente, o arquivo é truncado.
+ */
+public class DiarioLocacoes {
+
+    private static final byte VERSAO_REGISTRO = 1;
+    // versão, chave (2 longs), recebida em, data da locação, vencimento, jogo, cliente
+    private static final int TAMANHO_DADOS = 1 + 16 + 8 + 4 + 4 + 8 + 8;
+    // tamanho dos dados + CRC32C dos dados
+    private static final int TAMANHO_REGISTRO = 4 + 4 + TAMANHO_DADOS;
+    // vencimento ausente
+    private static final int SEM_DATA = Integer.MIN_VALUE;
+
+    // registros gravados com um único force()
+    private static final int MAXIMO_LOTE = 512;
+    // espera entre tentativas de reaplicação com o banco fora do ar
+    private static final long INTERVALO_TENTATIVA_MS = Long.getLong("locadora.diario.tentativaMs", 5_000L);
+    // erros que não são de conexão antes de desistir de um registro
+    private static final int TENTATIVAS_POR_REGISTRO = 5;
+    // recusas mantidas para GET /status
+    private static final int RECUSAS_GUARDADAS = 20;
+
+    public static final class Registro {
+        private final UUID chave;
+        private final long recebidaEm;
+        private final Locacao locacao;
+
+        Registro(UUID chave, long recebidaEm, Locacao locacao) {
+            this.chave = chave;
+            this.recebidaEm = recebidaEm;
+            this.locacao = locacao;
+        }
+
+        public String getChave() {
+            return chave.toString();
+        }
+
+        public long getRecebidaEm() {
+            return recebidaEm;
+        }
+    }
+
+    private static final class Pedido {
+        final Registro registro;
+        final CompletableFuture<Void> gravado = new CompletableFuture<>();
+
+        Pedido(Registro registro) {
+            this.registro = registro;
+        }
+    }
+
+    private static volatile boolean ativo;
+    private static Path arquivo;
+    private static FileChannel canal;
+    // fim do último registro completo (só muda com travaArquivo)
+    private static volatile long fimArquivo;
+    // gravação, truncamento e a lista de pendentes não se cruzam
+    private static final Object travaArquivo = new Object();
+
+    private static final BlockingQueue<Pedido> aGravar = new LinkedBlockingQueue<>();
+    // já no disco e ainda não reaplicados, na ordem do arquivo
+    private static final ConcurrentLinkedQueue<Registro> pendentes = new ConcurrentLinkedQueue<>();
+    // liberado a cada lote gravado, para a reaplicação não esperar o intervalo
+    private static final Semaphore novosRegistros = new Semaphore(0);
+
+    private static final LongAdder gravadas = new LongAdder();
+    private static final LongAdder sincronizacoes = new LongAdder();
+    private static final LongAdder reaplicadas = new LongAdder();
+    private static final LongAdder jaReaplicadas = new LongAdder();
+    private static final LongAdder recusadas = new LongAdder();
+    private static final Deque<Map<String, Object>> ultimasRecusas = new ArrayDeque<>();
+    private static volatile String ultimaFalha;
+
+    private static final LocacaoDAO locacaoDAO = new LocacaoDAO();
+
+    // ------------------------------------
+    // INICIALIZAÇÃO
+    // ------------------------------------
+    /**
+     * Abre (ou cria) o diário, descarta um final corrompido e inicia as
+     * threads de gravação e de reaplicação. Os registros que ficaram de uma
+     * execução anterior começam a ser reaplicados logo em seguida.
+     */
+    public static synchronized void iniciar(Path caminho) {
+        if (ativo) {
+            return;
+        }
+        try {
+            if (caminho.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(caminho.toAbsolutePath().getParent());
+            }
+            arquivo = caminho;
+            canal = FileChannel.open(caminho, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            List<Registro> lidos = recuperar();
+            pendentes.addAll(lidos);
+            System.out.println("Diário de locações em " + caminho.toAbsolutePath() + ": "
+                    + lidos.size() + " registro(s) pendente(s) de reaplicação.");
+        } catch (IOException e) {
+            System.err.println("Erro ao abrir o diário de locações " + caminho + ". Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao abrir o diário de locações.", e);
+        }
+
+        Metricas.medidor("locadora_diario_pendentes", "Locações do diário local ainda não reaplicadas no banco",
+                Metricas.TIPO_MEDIDOR, pendentes::size);
+        Metricas.medidor("locadora_diario_bytes", "Tamanho do arquivo do diário local",
+                Metricas.TIPO_MEDIDOR, () -> fimArquivo);
+        Metricas.medidor("locadora_diario_gravadas_total", "Locações gravadas no diário local",
+                Metricas.TIPO_CONTADOR, gravadas::sum);
+        Metricas.medidor("locadora_diario_sincronizacoes_total", "Chamadas de force() (fsync) do diário local",
+                Metricas.TIPO_CONTADOR, sincronizacoes::sum);
+        Metricas.medidor("locadora_diario_reaplicacoes_total", "Registros do diário local reaplicados no banco",
+                Metricas.TIPO_CONTADOR, reaplicadas::sum, "resultado", "gravada");
+        Metricas.medidor("locadora_diario_reaplicacoes_total", "Registros do diário local reaplicados no banco",
+                Metricas.TIPO_CONTADOR, jaReaplicadas::sum, "resultado", "ja_reaplicada");
+        Metricas.medidor("locadora_diario_reaplicacoes_total", "Registros do diário local reaplicados no banco",
+                Metricas.TIPO_CONTADOR, recusadas::sum, "resultado", "recusada");
+
+        iniciarThread("gravacao-diario", DiarioLocacoes::gravarPedidos);
+        iniciarThread("reaplicacao-diario", DiarioLocacoes::reaplicarPendentes);
+        ativo = true;
+    }
+
+    private static void iniciarThread(String nome, Runnable tarefa) {
+        Thread thread = new Thread(tarefa, nome);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static boolean isAtivo() {
+        return ativo;
+    }
+
+    // Lê os registros completos; o que vier depois do primeiro inválido é
+    // copiado para <arquivo>.corrompido-<instante> e cortado do diário
+    private static List<Registro> recuperar() throws IOException {
+        List<Registro> lidos = new ArrayList<>();
+        long tamanho = canal.size();
+        long posicao = 0;
+        canal.position(0);
+        DataInputStream entrada = new DataInputStream(new BufferedInputStream(Channels.newInputStream(canal), 64 * 1024));
+        byte[] dados = new byte[TAMANHO_DADOS];
+        CRC32C crc = new CRC32C();
+        try {
+            while (posicao + TAMANHO_REGISTRO <= tamanho) {
+                int tamanhoDados = entrada.readInt();
+                int crcGravado = entrada.readInt();
+                if (tamanhoDados != TAMANHO_DADOS) {
+                    break;
+                }
+                entrada.readFully(dados);
+                crc.reset();
+                crc.update(dados);
+                if ((int) crc.getValue() != crcGravado || dados[0] != VERSAO_REGISTRO) {
+                    break;
+                }
+                lidos.add(decodificar(ByteBuffer.wrap(dados)));
+                posicao += TAMANHO_REGISTRO;
+            }
+        } catch (EOFException e) {
+            // final cortado: tratado abaixo
+        }
+
+        if (posicao < tamanho) {
+            Path copia = arquivo.resolveSibling(arquivo.getFileName() + ".corrompido-" + System.currentTimeMillis());
+            Files.copy(arquivo, copia, StandardCopyOption.REPLACE_EXISTING);
+            canal.truncate(posicao);
+            canal.force(true);
+            System.err.println("Diário de locações: " + (tamanho - posicao) + " byte(s) inválido(s) depois de "
+                    + lidos.size() + " registro(s) descartado(s); cópia do arquivo original em " + copia);
+        }
+        fimArquivo = posicao;
+        return lidos;
+    }
+
+    // ------------------------------------
+    // GRAVAÇÃO
+    // ------------------------------------
+    /**
+     * Grava a locação no diário e só retorna depois do force() que a levou ao
+     * disco. Só jogo.id, cliente.id e as datas são guardados. RuntimeException
+     * se o arquivo não pôde ser gravado (nada foi aceito).
+     */
+    public static Registro registrar(Locacao locacao) {
+        if (!ativo) {
+            throw new IllegalStateException("Diário de locações não iniciado.");
+        }
+        Registro registro = new Registro(UUID.randomUUID(), System.currentTimeMillis(), copiar(locacao));
+        Pedido pedido = new Pedido(registro);
+        aGravar.add(pedido);
+        try {
+            pedido.gravado.get();
+            return registro;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrompido aguardando a gravação no diário de locações.", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Erro ao gravar locação no diário.", e.getCause());
+        }
+    }
+
+    private static Locacao copiar(Locacao locacao) {
+        return new Locacao(null, locacao.getDataLocacao(), locacao.getDataVencimento(),
+                new Jogo(locacao.getJogo().getId(), null), new Cliente(locacao.getCliente().getId(), null));
+    }
+
+    // Thread de gravação: junta os pedidos que chegaram e grava com um force()
+    private static void gravarPedidos() {
+        List<Pedido> lote = new ArrayList<>();
+        while (true) {
+            try {
+                lote.add(aGravar.take());
+                aGravar.drainTo(lote, MAXIMO_LOTE - 1);
+                gravar(lote);
+                for (Pedido pedido : lote) {
+                    pedido.gravado.complete(null);
+                }
+                novosRegistros.release();
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                ultimaFalha = "gravação: " + e.getMessage();
+                System.err.println("Erro ao gravar " + lote.size() + " locação(ões) no diário. Detalhes: " + e.getMessage());
+                e.printStackTrace();
+                for (Pedido pedido : lote) {
+                    pedido.gravado.completeExceptionally(e);
+                }
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    private static void gravar(List<Pedido> lote) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(lote.size() * TAMANHO_REGISTRO);
+        CRC32C crc = new CRC32C();
+        for (Pedido pedido : lote) {
+            int inicio = buffer.position();
+            buffer.position(inicio + 8);
+            codificar(buffer, pedido.registro);
+            crc.reset();
+            crc.update(buffer.array(), inicio + 8, TAMANHO_DADOS);
+            buffer.putInt(inicio, TAMANHO_DADOS);
+            buffer.putInt(inicio + 4, (int) crc.getValue());
+        }
+        buffer.flip();
+
+        synchronized (travaArquivo) {
+            long posicao = fimArquivo;
+            try {
+                while (buffer.hasRemaining()) {
+                    posicao += canal.write(buffer, posicao);
+                }
+                canal.force(false);
+            } catch (IOException e) {
+                // corta o que foi escrito pela metade, para o próximo lote não
+                // ficar depois de um registro inválido
+                try {
+                    canal.truncate(fimArquivo);
+                } catch (IOException falha) {
+                    e.addSuppressed(falha);
+                }
+                throw e;
+            }
+            fimArquivo = posicao;
+            for (Pedido pedido : lote) {
+                pendentes.add(pedido.registro);
+            }
+        }
+        sincronizacoes.increment();
+        gravadas.add(lote.size());
+    }
+
+    private static void codificar(ByteBuffer buffer, Registro registro) {
+        Locacao locacao = registro.locacao;
+        buffer.put(VERSAO_REGISTRO);
+        buffer.putLong(registro.chave.getMostSignificantBits());
+        buffer.putLong(registro.chave.getLeastSignificantBits());
+        buffer.putLong(registro.recebidaEm);
+        buffer.putInt(dia(locacao.getDataLocacao()));
+        buffer.putInt(dia(locacao.getDataVencimento()));
+        buffer.putLong(locacao.getJogo().getId());
+        buffer.putLong(locacao.getCliente().getId());
+    }
+
+    private static Registro decodificar(ByteBuffer dados) {
+        dados.get();
+        UUID chave = new UUID(dados.getLong(), dados.getLong());
+        long recebidaEm = dados.getLong();
+        Date dataLocacao = data(dados.getInt());
+        Date dataVencimento = data(dados.getInt());
+        Locacao locacao = new Locacao(null, dataLocacao, dataVencimento,
+                new Jogo(dados.getLong(), null), new Cliente(dados.getLong(), null));
+        return new Registro(chave, recebidaEm, locacao);
+    }
+
+    // datas como dias desde 1970
+    private static int dia(Date data) {
+        return data != null ? (int) data.toLocalDate().toEpochDay() : SEM_DATA;
+    }
+
+    private static Date data(int dia) {
+        return dia != SEM_DATA ? Date.valueOf(LocalDate.ofEpochDay(dia)) : null;
+    }
+
+    // ------------------------------------
+    // REAPLICAÇÃO
+    // ------------------------------------
+    // Thread de reaplicação: grava os pendentes no banco, um por vez e em
+    // ordem; com o banco fora do ar, tenta de novo a cada INTERVALO_TENTATIVA_MS
+    private static void reaplicarPendentes() {
+        int tentativas = 0;
+        long reaplicadasNaRodada = 0;
+        while (true) {
+            try {
+                Registro registro = pendentes.peek();
+                if (registro == null) {
+                    if (reaplicadasNaRodada > 0) {
+                        System.out.println("Diário de locações reaplicado: " + reaplicadasNaRodada
+                                + " registro(s) nesta rodada (" + reaplicadas.sum() + " gravado(s), "
+                                + jaReaplicadas.sum() + " já reaplicado(s), " + recusadas.sum()
+                                + " recusado(s) desde o início).");
+                        reaplicadasNaRodada = 0;
+                    }
+                    truncarSeVazio();
+                    novosRegistros.drainPermits();
+                    if (pendentes.isEmpty()) {
+                        novosRegistros.tryAcquire(INTERVALO_TENTATIVA_MS, TimeUnit.MILLISECONDS);
+                    }
+                    continue;
+                }
+
+                try {
+                    Locacao locacao = new Locacao(null, registro.locacao.getDataLocacao(),
+                            registro.locacao.getDataVencimento(), registro.locacao.getJogo(), registro.locacao.getCliente());
+                    ResultadoLocacao resultado = locacaoDAO.inserirDoDiario(registro.getChave(), locacao);
+                    if (resultado.isOk()) {
+                        reaplicadas.increment();
+                    } else if (resultado.getStatus() == ResultadoLocacao.Status.JA_REAPLICADA) {
+                        jaReaplicadas.increment();
+                    } else {
+                        recusar(registro, resultado.getStatus().name());
+                    }
+                } catch (RuntimeException e) {
+                    ultimaFalha = "reaplicação: " + e.getMessage();
+                    if (ConnectionFactory.isFalhaDeConexao(e)) {
+                        // banco ainda fora do ar (ou caiu no meio): o registro espera
+                        tentativas = 0;
+                        Thread.sleep(INTERVALO_TENTATIVA_MS);
+                        continue;
+                    }
+                    if (++tentativas < TENTATIVAS_POR_REGISTRO) {
+                        Thread.sleep(INTERVALO_TENTATIVA_MS);
+                        continue;
+                    }
+                    recusar(registro, "ERRO: " + e.getMessage());
+                }
+                pendentes.poll();
+                tentativas = 0;
+                reaplicadasNaRodada++;
+                if (reaplicadasNaRodada % 1000 == 0) {
+                    System.out.println("Diário de locações: " + reaplicadasNaRodada + " registro(s) reaplicado(s), "
+                            + pendentes.size() + " pendente(s).");
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // uma exceção aqui pararia a reaplicação
+                System.err.println("Erro na reaplicação do diário de locações: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // O registro sai do diário sem virar locação; fica no log e em GET /status
+    private static void recusar(Registro registro, String motivo) {
+        recusadas.increment();
+        System.err.println("Locação do diário recusada na reaplicação (chave " + registro.getChave()
+                + ", jogo " + registro.locacao.getJogo().getId() + ", cliente " + registro.locacao.getCliente().getId()
+                + ", data " + registro.locacao.getDataLocacao() + "): " + motivo);
+
+        Map<String, Object> recusa = new LinkedHashMap<>();
+        recusa.put("chave", registro.getChave());
+        recusa.put("jogoId", registro.locacao.getJogo().getId());
+        recusa.put("clienteId", registro.locacao.getCliente().getId());
+        recusa.put("motivo", motivo);
+        synchronized (ultimasRecusas) {
+            ultimasRecusas.addFirst(recusa);
+            if (ultimasRecusas.size() > RECUSAS_GUARDADAS) {
+                ultimasRecusas.removeLast();
+            }
+        }
+    }
+
+    // Com tudo reaplicado, o arquivo volta a zero; um lote gravado depois do
+    // teste entra em pendentes com a trava, então não é cortado
+    private static void truncarSeVazio() {
+        synchronized (travaArquivo) {
+            if (!pendentes.isEmpty() || fimArquivo == 0) {
+                return;
+            }
+            try {
+                canal.truncate(0);
+                canal.force(false);
+                fimArquivo = 0;
+            } catch (IOException e) {
+                ultimaFalha = "truncamento: " + e.getMessage();
+                System.err.println("Erro ao truncar o diário de locações. Detalhes: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // ------------------------------------
+    // PROGRESSO
+    // ------------------------------------
+    // Resumo para GET /status
+    public static Map<String, Object> estatisticas() {
+        Map<String, Object> estatisticas = new LinkedHashMap<>();
+        estatisticas.put("arquivo", arquivo != null ? arquivo.toString() : null);
+        estatisticas.put("bytes", fimArquivo);
+        estatisticas.put("pendentes", pendentes.size());
+        Registro maisAntigo = pendentes.peek();
+        if (maisAntigo != null) {
+            estatisticas.put("pendenteDesde", Instant.ofEpochMilli(maisAntigo.getRecebidaEm()).toString());
+        }
+        estatisticas.put("gravadas", gravadas.sum());
+        estatisticas.put("reaplicadas", reaplicadas.sum());
+        estatisticas.put("jaReaplicadas", jaReaplicadas.sum());
+        estatisticas.put("recusadas", recusadas.sum());
+        synchronized (ultimasRecusas) {
+            estatisticas.put("ultimasRecusas", new ArrayList<>(ultimasRecusas));
+        }
+        estatisticas.put("ultimaFalha", ultimaFalha);
+        return estatisticas;
+    }
+}
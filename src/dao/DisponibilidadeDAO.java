@@ -0,0 +1,238 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import model.Locacao;
+import util.ConnectionFactory;
+
+/**
+ * Quantas locações de cada jogo estão abertas agora (vencimento hoje ou
+ * depois, ou sem vencimento), sem consultar a tabela locacao.
+ *
+ * Cada jogo tem um LongAdder com as abertas, lido em O(1). As locações com
+ * vencimento também são contadas por dia de vencimento; quando o dia vira, os
+ * dias que passaram são descontados dos contadores de uma vez. Os contadores
+ * são carregados do banco na inicialização e mantidos a cada escrita do
+ * LocacaoDAO (ouvinte). As escritas só compartilham a trava de leitura entre
+ * si; a de escrita fica para a virada do dia e para a carga.
+ */
+public class DisponibilidadeDAO {
+
+    private static final String SQL_ABERTAS = "SELECT jogo_id, data_devolucao, COUNT(*) AS quantidade FROM locacao " +
+            "WHERE data_devolucao IS NULL OR data_devolucao >= ? GROUP BY jogo_id, data_devolucao";
+
+    // tentativas de uma carga até achar um intervalo sem escritas
+    private static final int TENTATIVAS_CARGA = 5;
+
+    private static final class Estado {
+        // locações abertas por jogo
+        final Map<Long, LongAdder> abertas = new ConcurrentHashMap<>();
+        // dia de vencimento (desde 1970) -> jogo -> locações abertas que vencem nesse dia
+        final NavigableMap<Long, Map<Long, LongAdder>> porVencimento = new ConcurrentSkipListMap<>();
+        // vencimentos antes deste dia já foram descontados
+        volatile long primeiroDiaAberto;
+        // instante em que primeiroDiaAberto deixa de ser hoje
+        volatile long viradaMillis;
+
+        Estado(LocalDate hoje) {
+            definirDia(hoje);
+        }
+
+        void definirDia(LocalDate hoje) {
+            ZoneId zona = ZoneId.systemDefault();
+            primeiroDiaAberto = hoje.toEpochDay();
+            viradaMillis = hoje.plusDays(1).atStartOfDay(zona).toInstant().toEpochMilli();
+        }
+
+        // soma 'delta' à locação se ela ainda está aberta; false se não mexeu em nada
+        boolean somar(Long jogoId, Date vencimento, long delta) {
+            if (jogoId == null) {
+                return false;
+            }
+            if (vencimento != null) {
+                long dia = vencimento.toLocalDate().toEpochDay();
+                if (dia < primeiroDiaAberto) {
+                    return false;
+                }
+                porVencimento.computeIfAbsent(dia, d -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(jogoId, j -> new LongAdder()).add(delta);
+            }
+            abertas.computeIfAbsent(jogoId, j -> new LongAdder()).add(delta);
+            return true;
+        }
+    }
+
+    // null até a primeira carga
+    private static volatile Estado estado;
+    private static final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+    // muda a cada alteração dos contadores (para ETags e caches de JSON)
+    private static final AtomicLong versao = new AtomicLong();
+
+    private static boolean iniciado;
+
+    // ------------------------------------
+    // INICIALIZAÇÃO
+    // ------------------------------------
+    // Passa a acompanhar as escritas em locacao e carrega os contadores do banco
+    public static synchronized void iniciar() {
+        if (!iniciado) {
+            LocacaoDAO.registrarOuvinte(DisponibilidadeDAO::aplicar);
+            iniciado = true;
+        }
+        carregar();
+    }
+
+    /**
+     * Lê do banco as locações abertas e substitui os contadores. Só publica
+     * uma leitura durante a qual nenhuma escrita do LocacaoDAO esteve em
+     * andamento; devolve false se não conseguiu (ou se o banco falhou).
+     */
+    public static synchronized boolean carregar() {
+        for (int tentativa = 1; tentativa <= TENTATIVAS_CARGA; tentativa++) {
+            long marca = LocacaoDAO.marcaEscritas();
+            if (marca >= 0) {
+                Estado novo = lerAbertas(LocalDate.now());
+                if (novo == null) {
+                    return false;
+                }
+                trava.writeLock().lock();
+                try {
+                    // escritas que começarem depois daqui já encontram o estado novo
+                    if (LocacaoDAO.marcaEscritas() == marca) {
+                        estado = novo;
+                        versao.incrementAndGet();
+                        return true;
+                    }
+                } finally {
+                    trava.writeLock().unlock();
+                }
+            }
+            try {
+                Thread.sleep(50L * tentativa);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        System.err.println("Carga da disponibilidade de jogos adiada: escritas em andamento.");
+        return false;
+    }
+
+    private static Estado lerAbertas(LocalDate hoje) {
+        Estado novo = new Estado(hoje);
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(SQL_ABERTAS)) {
+
+            stmt.setDate(1, Date.valueOf(hoje));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    novo.somar(rs.getLong("jogo_id"), rs.getDate("data_devolucao"), rs.getLong("quantidade"));
+                }
+            }
+            return novo;
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao contar locações abertas por jogo. Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // ------------------------------------
+    // MANUTENÇÃO INCREMENTAL
+    // ------------------------------------
+    private static void aplicar(Locacao antes, Locacao depois) {
+        Long jogoAntes = antes != null && antes.getJogo() != null ? antes.getJogo().getId() : null;
+        Long jogoDepois = depois != null && depois.getJogo() != null ? depois.getJogo().getId() : null;
+        Date vencimentoAntes = antes != null ? antes.getDataVencimento() : null;
+        Date vencimentoDepois = depois != null ? depois.getDataVencimento() : null;
+        if (antes != null && depois != null && Objects.equals(jogoAntes, jogoDepois)
+                && Objects.equals(vencimentoAntes, vencimentoDepois)) {
+            return;
+        }
+
+        atualizado();
+        trava.readLock().lock();
+        try {
+            Estado atual = estado;
+            if (atual == null) {
+                // a carga ainda vai ler esta escrita do banco
+                return;
+            }
+            boolean mudou = antes != null && atual.somar(jogoAntes, vencimentoAntes, -1);
+            mudou |= depois != null && atual.somar(jogoDepois, vencimentoDepois, 1);
+            if (mudou) {
+                versao.incrementAndGet();
+            }
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    // Estado atual, descontando antes os vencimentos de dias que já passaram
+    private static Estado atualizado() {
+        Estado atual = estado;
+        if (atual != null && System.currentTimeMillis() >= atual.viradaMillis) {
+            virarDia(atual);
+        }
+        return atual;
+    }
+
+    private static void virarDia(Estado atual) {
+        trava.writeLock().lock();
+        try {
+            LocalDate hoje = LocalDate.now();
+            if (hoje.toEpochDay() <= atual.primeiroDiaAberto) {
+                // outra thread já virou o dia
+                return;
+            }
+            Map<Long, Map<Long, LongAdder>> vencidos = atual.porVencimento.headMap(hoje.toEpochDay());
+            for (Map<Long, LongAdder> porJogo : vencidos.values()) {
+                for (Map.Entry<Long, LongAdder> entrada : porJogo.entrySet()) {
+                    atual.abertas.get(entrada.getKey()).add(-entrada.getValue().sum());
+                }
+            }
+            vencidos.clear();
+            atual.definirDia(hoje);
+            versao.incrementAndGet();
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    // ------------------------------------
+    // READ
+    // ------------------------------------
+    // Locações abertas do jogo; null se os contadores ainda não foram carregados
+    public static Long locacoesAbertas(Long jogoId) {
+        Estado atual = atualizado();
+        if (atual == null) {
+            return null;
+        }
+        LongAdder abertas = atual.abertas.get(jogoId);
+        return abertas != null ? abertas.sum() : 0L;
+    }
+
+    public static boolean isCarregado() {
+        return estado != null;
+    }
+
+    public static long getVersao() {
+        atualizado();
+        return versao.get();
+    }
+}
@@ -0,0 +1,68 @@
+package dao;
+
+import java.sql.Date;
+
+/**
+ * Filtros de GET /locacoes (LocacaoDAO.buscarPagina / percorrer). Campos
+ * nulos não filtram; os presentes são combinados com AND.
+ */
+public class FiltroLocacao {
+
+    public enum Status {
+        // vencimento hoje ou depois, ou sem vencimento (como em DisponibilidadeDAO)
+        ABERTA,
+        // vencimento antes de hoje
+        VENCIDA
+    }
+
+    private Long clienteId;
+    private Long jogoId;
+    // intervalo de data_locacao, inclusivo nas duas pontas
+    private Date de;
+    private Date ate;
+    private Status status;
+
+    public Long getClienteId() {
+        return clienteId;
+    }
+
+    public void setClienteId(Long clienteId) {
+        this.clienteId = clienteId;
+    }
+
+    public Long getJogoId() {
+        return jogoId;
+    }
+
+    public void setJogoId(Long jogoId) {
+        this.jogoId = jogoId;
+    }
+
+    public Date getDe() {
+        return de;
+    }
+
+    public void setDe(Date de) {
+        this.de = de;
+    }
+
+    public Date getAte() {
+        return ate;
+    }
+
+    public void setAte(Date ate) {
+        this.ate = ate;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public boolean isVazio() {
+        return clienteId == null && jogoId == null && de == null && ate == null && status == null;
+    }
+}
@@ -6,17 +6,123 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import model.Genero;
+import util.ChamadaUnica;
 import util.ConnectionFactory;
+import util.SqlUtil;
 
 public class GeneroDAO {
 
+    // ------------------------------------
+    // CACHE: snapshot completo da tabela genero
+    // ------------------------------------
+    // A tabela é pequena e quase nunca muda, então as leituras são atendidas
+    // por um snapshot em memória carregado no primeiro acesso. Toda escrita
+    // descarta o snapshot; a próxima leitura carrega de novo.
+    // Os objetos do snapshot são compartilhados: quem lê não deve alterá-los.
+    private static final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    // incrementada a cada escrita, para um carregamento antigo não sobrescrever a invalidação
+    private static final AtomicLong geracao = new AtomicLong();
+
+    private static final LongAdder acertos = new LongAdder();
+    private static final LongAdder falhas = new LongAdder();
+    private static final LongAdder invalidacoes = new LongAdder();
+
+    private static final String CHAVE_SNAPSHOT = "generos";
+    private static final ChamadaUnica<String, Snapshot> cargasSnapshot = new ChamadaUnica<>("GeneroDAO.snapshot");
+
+    private static final class Snapshot {
+        final List<Genero> lista;
+        final Map<Long, Genero> porId;
+
+        Snapshot(List<Genero> lista) {
+            Map<Long, Genero> mapa = new LinkedHashMap<>();
+            for (Genero genero : lista) {
+                mapa.put(genero.getId(), genero);
+            }
+            this.lista = Collections.unmodifiableList(lista);
+            this.porId = mapa;
+        }
+    }
+
+    // null se o banco falhou (nada é guardado)
+    private static Snapshot obterSnapshot() {
+        Snapshot atual = snapshot.get();
+        if (atual != null) {
+            acertos.increment();
+            return atual;
+        }
+
+        falhas.increment();
+        long geracaoLida = geracao.get();
+        // sem snapshot, as leituras simultâneas esperam uma única carga
+        Snapshot novo = cargasSnapshot.executar(CHAVE_SNAPSHOT, geracaoLida, () -> {
+            List<Genero> generos = carregarDoBanco();
+            return generos != null ? new Snapshot(generos) : null;
+        });
+        if (novo == null) {
+            return null;
+        }
+        // só publica se nenhuma escrita aconteceu durante a leitura
+        if (geracao.get() == geracaoLida) {
+            snapshot.compareAndSet(null, novo);
+        }
+        return novo;
+    }
+
+    private static void invalidar() {
+        geracao.incrementAndGet();
+        if (snapshot.getAndSet(null) != null) {
+            invalidacoes.increment();
+        }
+        // o nome do gênero aparece nos jogos, então o catálogo também muda
+        JogoDAO.notificarAlteracaoGenero();
+    }
+
+    // Gêneros por ID, usados pelo JogoDAO no lugar do JOIN com genero.
+    // Deve ser chamado antes de abrir a conexão da consulta de jogos, para um
+    // carregamento do snapshot não disputar o pool com ela. Se o banco
+    // falhar, lança exceção: um mapa vazio faria os jogos saírem sem gênero
+    // (e o catálogo ficaria assim guardado até a próxima escrita).
+    static Map<Long, Genero> mapaEmCache() {
+        Snapshot atual = obterSnapshot();
+        if (atual == null) {
+            throw new RuntimeException("Erro ao carregar os gêneros.");
+        }
+        return atual.porId;
+    }
+
+    public static long getAcertosCache() {
+        return acertos.sum();
+    }
+
+    public static long getFalhasCache() {
+        return falhas.sum();
+    }
+
+    public static long getInvalidacoesCache() {
+        return invalidacoes.sum();
+    }
+
     // READ
      public List<Genero> buscarTodos() {
+        // erro no banco: devolve vazio, como antes do cache
+        Snapshot atual = obterSnapshot();
+        return atual != null ? atual.lista : new ArrayList<>();
+    }
+
+    // carrega a tabela inteira; null se houver erro
+    private static List<Genero> carregarDoBanco() {
         List<Genero> generos = new ArrayList<>();
-        String sql = "SELECT id, nome FROM genero";
+        String sql = "SELECT id, nome, versao FROM genero ORDER BY id";
 
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql);
@@ -26,11 +132,13 @@ public class GeneroDAO {
                 Genero genero = new Genero(
                         rs.getLong("id"),
                         rs.getString("nome"));
+                genero.setVersao(rs.getInt("versao"));
                 generos.add(genero);
             }
         } catch (SQLException e) {
             System.err.println("Erro ao buscar os gêneros: " + e.getMessage());
             e.printStackTrace();
+            return null;
         }
         return generos;
     }
@@ -38,26 +146,8 @@ public class GeneroDAO {
 
     // READ BY ID
      public Genero buscarPorId(Long id) {
-        Genero genero = null;
-        String sql = "SELECT id, nome FROM genero WHERE id = ?";
-
-        try (Connection conn = ConnectionFactory.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
-
-            stmt.setLong(1, id);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    genero = new Genero(
-                            rs.getLong("id"),
-                            rs.getString("nome"));
-                }
-            }
-        } catch (SQLException e) {
-            System.err.println("Erro ao buscar gênero por ID: " + id + ". Detalhes: " + e.getMessage());
-            e.printStackTrace();
-        }
-        return genero;
+        Snapshot atual = obterSnapshot();
+        return atual != null ? atual.porId.get(id) : null;
     }
 
     // CREATE
@@ -73,47 +163,78 @@ public class GeneroDAO {
             try (ResultSet rs = stmt.getGeneratedKeys()) {
                 if (rs.next()) {
                     genero.setId(rs.getLong(1));
+                    genero.setVersao(1);
                 }
             }
 
         } catch (SQLException e) {
             System.err.println("Erro ao inserir o gênero: " + genero.getNome() + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            invalidar();
         }
     }
 
     // UPDATE
-    public void atualizarGenero(Genero genero) {
-        String sql = "UPDATE genero SET nome = ? WHERE id = ?";
+    // devolve as linhas afetadas: 0 quando o gênero não existe ou, com
+    // versaoEsperada, quando outra atualização chegou antes
+    public int atualizarGenero(Genero genero, Integer versaoEsperada) {
+        String sql = "UPDATE genero SET nome = ?, versao = LAST_INSERT_ID(versao + 1) WHERE id = ?"
+                + (versaoEsperada != null ? " AND versao = ?" : "");
 
         try (Connection conn = ConnectionFactory.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+                PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             stmt.setString(1, genero.getNome());
-            stmt.setLong(2, genero.getId()); 
+            stmt.setLong(2, genero.getId());
+            if (versaoEsperada != null) {
+                stmt.setInt(3, versaoEsperada);
+            }
 
-            stmt.executeUpdate();
+            int linhasAfetadas = stmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                genero.setVersao(SqlUtil.versaoGerada(stmt));
+            }
+            return linhasAfetadas;
 
         } catch (SQLException e) {
             System.err.println("Erro ao atualizar gênero ID: " + genero.getId() + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            throw new RuntimeException("Erro ao atualizar gênero.", e);
+        } finally {
+            invalidar();
         }
     }
 
+    public int atualizarGenero(Genero genero) {
+        return atualizarGenero(genero, null);
+    }
+
 
     // DELETE
-     public void deletar(Long id) {
-        String sql = "DELETE FROM genero WHERE id = ?";
+    public int deletar(Long id, Integer versaoEsperada) {
+        String sql = "DELETE FROM genero WHERE id = ?" + (versaoEsperada != null ? " AND versao = ?" : "");
 
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setLong(1, id);
-            stmt.executeUpdate();
+            if (versaoEsperada != null) {
+                stmt.setInt(2, versaoEsperada);
+            }
+            return stmt.executeUpdate();
 
         } catch (SQLException e) {
             System.err.println("Erro ao deletar gênero com ID: " + id + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            // a causa (ex.: gênero ainda usado por jogos) chega à rota
+            throw new RuntimeException("Erro ao deletar gênero.", e);
+        } finally {
+            invalidar();
         }
     }
+
+    public int deletar(Long id) {
+        return deletar(id, null);
+    }
 }
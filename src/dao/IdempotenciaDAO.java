@@ -0,0 +1,104 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import model.RespostaIdempotente;
+import util.ConnectionFactory;
+
+/**
+ * Respostas guardadas dos POST com Idempotency-Key (tabela
+ * requisicao_idempotente). O cache em memória fica no filtro
+ * api.Idempotencia; esta tabela só é lida quando ele não tem a chave (depois
+ * de reiniciar a API ou de a entrada sair do cache).
+ */
+public class IdempotenciaDAO {
+
+    // ------------------------------------
+    // READ
+    // ------------------------------------
+    // Resposta guardada a partir de 'desde' (ms); null se não há
+    public RespostaIdempotente buscar(String chave, long desde) {
+        String sql = "SELECT chave, impressao, status, tipo, corpo, criada_em FROM requisicao_idempotente " +
+                     "WHERE chave = ? AND criada_em >= ?";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, chave);
+            stmt.setTimestamp(2, new Timestamp(desde));
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new RespostaIdempotente(rs.getString("chave"), rs.getString("impressao"),
+                        rs.getInt("status"), rs.getString("tipo"), rs.getString("corpo"),
+                        rs.getTimestamp("criada_em").getTime());
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao buscar resposta idempotente. Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao buscar resposta idempotente.", e);
+        }
+    }
+
+    // ------------------------------------
+    // CREATE
+    // ------------------------------------
+    // A primeira resposta vale: uma chave já gravada (de uma entrada vencida,
+    // por exemplo) é substituída só se tiver passado do prazo
+    public void gravar(RespostaIdempotente resposta, long vencidasAntesDe) {
+        String sql = "INSERT INTO requisicao_idempotente (chave, impressao, status, tipo, corpo, criada_em) " +
+                     "VALUES (?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+                     "impressao = IF(criada_em < ?, VALUES(impressao), impressao), " +
+                     "status = IF(criada_em < ?, VALUES(status), status), " +
+                     "tipo = IF(criada_em < ?, VALUES(tipo), tipo), " +
+                     "corpo = IF(criada_em < ?, VALUES(corpo), corpo), " +
+                     "criada_em = IF(criada_em < ?, VALUES(criada_em), criada_em)";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            Timestamp limite = new Timestamp(vencidasAntesDe);
+            stmt.setString(1, resposta.getChave());
+            stmt.setString(2, resposta.getImpressao());
+            stmt.setInt(3, resposta.getStatus());
+            stmt.setString(4, resposta.getTipo());
+            stmt.setString(5, resposta.getCorpo());
+            stmt.setTimestamp(6, new Timestamp(resposta.getCriadaEm()));
+            for (int i = 7; i <= 11; i++) {
+                stmt.setTimestamp(i, limite);
+            }
+            stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao gravar resposta idempotente. Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao gravar resposta idempotente.", e);
+        }
+    }
+
+    // ------------------------------------
+    // DELETE
+    // ------------------------------------
+    // Remove as respostas criadas antes de 'antesDe' (ms); devolve quantas
+    public int removerVencidas(long antesDe) {
+        String sql = "DELETE FROM requisicao_idempotente WHERE criada_em < ?";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setTimestamp(1, new Timestamp(antesDe));
+            return stmt.executeUpdate();
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao remover respostas idempotentes vencidas. Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao remover respostas idempotentes vencidas.", e);
+        }
+    }
+}
@@ -6,69 +6,323 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import model.Jogo;
 import model.Genero;
+import util.ChamadaUnica;
 import util.ConnectionFactory;
+import util.IndiceBusca;
+import util.SqlUtil;
 
 public class JogoDAO {
 
+    // o genero vem do cache do GeneroDAO, então não precisa de JOIN
+    private static final String SELECT_JOGO = "SELECT j.id, j.nome, j.preco, j.idadeMinima, j.genero_id, j.versao " +
+            "FROM jogo j";
+
+    // ------------------------------------
+    // CATÁLOGO: snapshot versionado de todos os jogos
+    // ------------------------------------
+    // A versão só cresce: toda escrita em jogo (ou em genero, cujo nome aparece
+    // nos jogos) incrementa a versão e descarta o snapshot. Começa no horário
+    // de inicialização para não repetir versões de uma execução anterior.
+    private static final AtomicLong versaoCatalogo = new AtomicLong(System.currentTimeMillis());
+    private static final AtomicReference<Catalogo> catalogo = new AtomicReference<>();
+    private static final String CHAVE_CATALOGO = "catalogo";
+    private static final ChamadaUnica<String, Catalogo> cargasCatalogo = new ChamadaUnica<>("JogoDAO.catalogo");
+
+    public static final class Catalogo {
+        private final long versao;
+        private final List<Jogo> jogos;
+        private final Map<Long, Jogo> porId;
+
+        private Catalogo(long versao, List<Jogo> jogos) {
+            this.versao = versao;
+            this.jogos = Collections.unmodifiableList(jogos);
+            this.porId = new HashMap<>();
+            for (Jogo jogo : jogos) {
+                porId.put(jogo.getId(), jogo);
+            }
+        }
+
+        public long getVersao() {
+            return versao;
+        }
+
+        // objetos compartilhados: não devem ser alterados por quem lê
+        public List<Jogo> getJogos() {
+            return jogos;
+        }
+
+        public Jogo buscar(Long id) {
+            return porId.get(id);
+        }
+    }
+
+    public static long getVersaoCatalogo() {
+        return versaoCatalogo.get();
+    }
+
+    public Catalogo buscarCatalogo() {
+        Catalogo atual = catalogo.get();
+        if (atual != null) {
+            return atual;
+        }
+
+        long versaoLida = versaoCatalogo.get();
+        // depois de uma escrita, as requisições simultâneas esperam uma única
+        // carga do catálogo em vez de cada uma ler a tabela inteira
+        Catalogo novo = cargasCatalogo.executar(CHAVE_CATALOGO, versaoLida, () -> {
+            List<Jogo> jogos = carregarTodos();
+            return jogos != null ? new Catalogo(versaoLida, jogos) : null;
+        });
+        if (novo == null) {
+            // erro no banco: um catálogo vazio seria guardado (e receberia ETag)
+            // como se fosse o real, então quem pediu recebe a falha
+            throw new RuntimeException("Erro ao carregar o catálogo de jogos.");
+        }
+        // só publica se nenhuma escrita aconteceu durante a leitura
+        if (versaoCatalogo.get() == novo.getVersao()) {
+            catalogo.set(novo);
+        }
+        return novo;
+    }
+
+    // Catálogo já carregado, sem ir ao banco (usado com o banco fora do ar);
+    // null se ainda não foi carregado ou foi invalidado por uma escrita
+    public static Catalogo catalogoEmCache() {
+        return catalogo.get();
+    }
+
+    private static void alterarCatalogo() {
+        versaoCatalogo.incrementAndGet();
+        catalogo.set(null);
+    }
+
+    // chamado pelo GeneroDAO quando um gênero muda
+    static void notificarAlteracaoGenero() {
+        alterarCatalogo();
+    }
+
+    // ------------------------------------
+    // BUSCA POR NOME: índice em memória
+    // ------------------------------------
+    // O índice guarda só o ID; os jogos encontrados vêm do catálogo, que já
+    // reflete mudanças de gênero. As escritas deste DAO atualizam o índice
+    // depois de gravar; as feitas enquanto a carga lê o banco (sem trava) são
+    // anotadas e reaplicadas no índice novo na hora da troca.
+    private static volatile IndiceBusca<Long> indiceBusca;
+
+    // protege a troca do índice e as escritas anotadas durante a carga
+    private static final Object travaIndice = new Object();
+    // por ID, o último nome escrito durante a carga (null = excluído); null fora de carga
+    private static Map<Long, String> escritasDuranteCarga;
+    // buscas simultâneas sem índice esperam uma única carga
+    private static final ChamadaUnica<String, Boolean> cargasIndice = new ChamadaUnica<>("JogoDAO.indiceBusca");
+
+    // Monta o índice a partir do banco (na inicialização da API ou na primeira busca)
+    public static void carregarIndiceBusca() {
+        cargasIndice.executar("indice", 0, JogoDAO::montarIndiceBusca);
+    }
+
+    private static Boolean montarIndiceBusca() {
+        synchronized (travaIndice) {
+            escritasDuranteCarga = new LinkedHashMap<>();
+        }
+        IndiceBusca<Long> indice = null;
+        try {
+            List<Jogo> jogos = carregarTodos();
+            // null: erro no banco, tenta de novo na próxima busca
+            if (jogos != null) {
+                indice = new IndiceBusca<>();
+                for (Jogo jogo : jogos) {
+                    indice.indexar(jogo.getId(), jogo.getNome(), jogo.getId());
+                }
+            }
+        } finally {
+            publicarIndice(indice);
+        }
+        return indice != null;
+    }
+
+    // Troca o índice (null: a carga falhou e o atual continua) depois de
+    // reaplicar nele as escritas feitas durante a carga
+    private static void publicarIndice(IndiceBusca<Long> indice) {
+        synchronized (travaIndice) {
+            if (indice != null) {
+                for (Map.Entry<Long, String> escrita : escritasDuranteCarga.entrySet()) {
+                    if (escrita.getValue() != null) {
+                        indice.indexar(escrita.getKey(), escrita.getValue(), escrita.getKey());
+                    } else {
+                        indice.remover(escrita.getKey());
+                    }
+                }
+                indiceBusca = indice;
+            }
+            escritasDuranteCarga = null;
+        }
+    }
+
+    private static void indexar(Jogo jogo) {
+        if (jogo.getId() == null) {
+            return;
+        }
+        synchronized (travaIndice) {
+            if (escritasDuranteCarga != null) {
+                escritasDuranteCarga.put(jogo.getId(), jogo.getNome());
+            }
+            if (indiceBusca != null) {
+                indiceBusca.indexar(jogo.getId(), jogo.getNome(), jogo.getId());
+            }
+        }
+    }
+
+    private static void removerDoIndice(Long id) {
+        synchronized (travaIndice) {
+            if (escritasDuranteCarga != null) {
+                escritasDuranteCarga.put(id, null);
+            }
+            if (indiceBusca != null) {
+                indiceBusca.remover(id);
+            }
+        }
+    }
+
+    // Jogos cujo nome mais se parece com a consulta (prefixo, trecho ou com
+    // erros de digitação), sem diferenciar acentos
+    public List<Jogo> buscarPorNome(String consulta, int limite) {
+        if (indiceBusca == null) {
+            carregarIndiceBusca();
+        }
+        IndiceBusca<Long> indice = indiceBusca;
+        List<Jogo> jogos = new ArrayList<>();
+        if (indice == null) {
+            return jogos;
+        }
+        Catalogo atual = buscarCatalogo();
+        for (Long id : indice.buscar(consulta, limite)) {
+            Jogo jogo = atual.buscar(id);
+            if (jogo != null) {
+                jogos.add(jogo);
+            }
+        }
+        return jogos;
+    }
+
     // ------------------------------------
     // READ: Buscar Todos
     // ------------------------------------
     public List<Jogo> buscarTodos() {
+        List<Jogo> jogos = carregarTodos();
+        return jogos != null ? jogos : new ArrayList<>();
+    }
+
+    // lê todos os jogos do banco; null se houver erro
+    private static List<Jogo> carregarTodos() {
+        Map<Long, Genero> generos = GeneroDAO.mapaEmCache();
         List<Jogo> jogos = new ArrayList<>();
 
-        // Left Join para buscar os campos de genero
-        String sql = "SELECT j.id, j.nome, j.preco, j.idadeMinima, " +
-                "g.id as id_genero, g.nome as nome_genero " +
-                "FROM jogo j " +
-                "LEFT JOIN genero g ON j.genero_id = g.id";
+        String sql = SELECT_JOGO + " ORDER BY j.id";
 
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql);
                 ResultSet rs = stmt.executeQuery()) {
 
             while (rs.next()) {
-                Genero genero = null;
+                jogos.add(mapear(rs, generos));
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao buscar jogos: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+        return jogos;
+    }
 
-                // Lendo o generoId como Long
-                Long generoId = rs.getLong("id_genero");
+    // ------------------------------------
+    // READ: Página (keyset em j.id)
+    // ------------------------------------
+    public List<Jogo> buscarPagina(Long depoisDe, int limite) {
+        Map<Long, Genero> generos = GeneroDAO.mapaEmCache();
+        List<Jogo> jogos = new ArrayList<>();
+        String sql = SELECT_JOGO + " WHERE j.id > ? ORDER BY j.id LIMIT ?";
 
-                if (!rs.wasNull()) {
-                    genero = new Genero(
-                            generoId,
-                            rs.getString("nome_genero"));
-                }
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-                Jogo jogo = new Jogo(
-                        rs.getLong("id"),
-                        rs.getString("nome"),
-                        rs.getDouble("preco"),
-                        rs.getInt("idadeMinima"),
-                        genero);
-                jogos.add(jogo);
+            stmt.setLong(1, depoisDe != null ? depoisDe : 0L);
+            stmt.setInt(2, limite);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    jogos.add(mapear(rs, generos));
+                }
             }
         } catch (SQLException e) {
-            System.err.println("Erro ao buscar jogos: " + e.getMessage());
+            System.err.println("Erro ao buscar a página de jogos: " + e.getMessage());
             e.printStackTrace();
         }
         return jogos;
     }
 
+    // ------------------------------------
+    // READ: Streaming (sem montar lista)
+    // ------------------------------------
+    public void percorrerTodos(Consumer<Jogo> consumidor) {
+        percorrer(null, consumidor);
+    }
+
+    // Só os jogos com ID maior que 'depoisDe' (null: todos); false se o banco falhou no meio
+    public boolean percorrer(Long depoisDe, Consumer<Jogo> consumidor) {
+        Map<Long, Genero> generos = GeneroDAO.mapaEmCache();
+        String sql = SELECT_JOGO + " WHERE j.id > ? ORDER BY j.id";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, depoisDe != null ? depoisDe : 0L);
+            // Integer.MIN_VALUE faz o driver do MySQL ler linha a linha do servidor
+            stmt.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumidor.accept(mapear(rs, generos));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Erro ao percorrer jogos: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     // ------------------------------------
     // READ BY ID: Buscar por ID
     // ------------------------------------
+    private static final ChamadaUnica<Long, Jogo> buscasPorId = new ChamadaUnica<>("JogoDAO.buscarPorId");
+
+    // Buscas simultâneas do mesmo ID viram uma só ida ao banco; a versão do
+    // catálogo muda a cada escrita em jogo ou gênero, então uma busca que
+    // começa depois de uma escrita não aproveita a leitura de antes dela
     public Jogo buscarPorId(Long id) {
+        return buscasPorId.executar(id, versaoCatalogo.get(), () -> consultarPorId(id));
+    }
+
+    private static Jogo consultarPorId(Long id) {
+        Map<Long, Genero> generos = GeneroDAO.mapaEmCache();
         Jogo jogo = null;
 
-        // Left Join para buscar os campos de genero
-        String sql = "SELECT j.id, j.nome, j.preco, j.idadeMinima, " +
-                "g.id as id_genero, g.nome as nome_genero " +
-                "FROM jogo j " +
-                "LEFT JOIN genero g ON j.genero_id = g.id " +
-                "WHERE j.id = ?";
+        String sql = SELECT_JOGO + " WHERE j.id = ?";
 
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -77,32 +331,93 @@ public class JogoDAO {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    Genero genero = null;
+                    jogo = mapear(rs, generos);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao buscar jogo por ID: " + id + ". Detalhes: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return jogo;
+    }
 
-                    // Lendo o generoId como Long
-                    Long generoId = rs.getLong("id_genero");
+    // ------------------------------------
+    // READ BY IDS: vários jogos em uma consulta
+    // ------------------------------------
+    public Map<Long, Jogo> buscarPorIds(Collection<Long> ids) {
+        Map<Long, Jogo> jogos = new HashMap<>();
+        if (ids.isEmpty()) {
+            return jogos;
+        }
+        Map<Long, Genero> generos = GeneroDAO.mapaEmCache();
 
-                    if (!rs.wasNull()) {
-                        genero = new Genero(
-                                generoId,
-                                rs.getString("nome_genero"));
-                    }
+        String sql = SELECT_JOGO + " WHERE j.id IN (" + SqlUtil.placeholders(ids.size()) + ")";
 
-                    jogo = new Jogo(
-                            rs.getLong("id"),
-                            rs.getString("nome"),
-                            rs.getDouble("preco"),
-                            rs.getInt("idadeMinima"),
-                            genero);
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int i = 1;
+            for (Long id : ids) {
+                stmt.setLong(i++, id);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Jogo jogo = mapear(rs, generos);
+                    jogos.put(jogo.getId(), jogo);
                 }
             }
         } catch (SQLException e) {
-            System.err.println("Erro ao buscar jogo por ID: " + id + ". Detalhes: " + e.getMessage());
+            // um mapa vazio ou parcial faria os jogos parecerem inexistentes
+            System.err.println("Erro ao buscar jogos por IDs: " + ids + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            throw new RuntimeException("Erro ao buscar jogos por IDs.", e);
         }
+        return jogos;
+    }
+
+    // monta o Jogo (e o Genero, se houver) a partir da linha atual do ResultSet
+    private static Jogo mapear(ResultSet rs, Map<Long, Genero> generos) throws SQLException {
+        Genero genero = null;
+
+        // Lendo o generoId como Long
+        Long generoId = rs.getLong("genero_id");
+
+        if (!rs.wasNull()) {
+            genero = generos.get(generoId);
+        }
+
+        Jogo jogo = new Jogo(
+                rs.getLong("id"),
+                rs.getString("nome"),
+                rs.getDouble("preco"),
+                rs.getInt("idadeMinima"),
+                genero);
+        jogo.setVersao(rs.getInt("versao"));
         return jogo;
     }
 
+    // ------------------------------------
+    // EXISTS
+    // ------------------------------------
+    public boolean existe(Long id) {
+        String sql = "SELECT 1 FROM jogo WHERE id = ?";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao verificar o Jogo ID: " + id + ". Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao verificar jogo.", e);
+        }
+    }
+
     // ------------------------------------
     // CREATE: Inserir
     // ------------------------------------
@@ -122,23 +437,31 @@ public class JogoDAO {
             try (ResultSet rs = stmt.getGeneratedKeys()) {
                 if (rs.next()) {
                     jogo.setId(rs.getLong(1));
+                    jogo.setVersao(1);
                 }
             }
+            indexar(jogo);
 
         } catch (SQLException e) {
             System.err.println("Erro ao inserir o jogo: " + jogo.getNome() + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            alterarCatalogo();
         }
     }
 
     // ------------------------------------
     // UPDATE: Atualizar
     // ------------------------------------
-    public void atualizar(Jogo jogo) {
-        String sql = "UPDATE jogo SET nome = ?, preco = ?, idadeMinima = ?, genero_id = ? WHERE id = ?";
+    // devolve as linhas afetadas: 0 quando o jogo não existe ou, com
+    // versaoEsperada, quando outra atualização chegou antes
+    public int atualizar(Jogo jogo, Integer versaoEsperada) {
+        String sql = "UPDATE jogo SET nome = ?, preco = ?, idadeMinima = ?, genero_id = ?, "
+                + "versao = LAST_INSERT_ID(versao + 1) WHERE id = ?"
+                + (versaoEsperada != null ? " AND versao = ?" : "");
 
         try (Connection conn = ConnectionFactory.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+                PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             stmt.setString(1, jogo.getNome());
             stmt.setDouble(2, jogo.getPreco());
@@ -147,33 +470,63 @@ public class JogoDAO {
             
 
             stmt.setLong(5, jogo.getId());
+            if (versaoEsperada != null) {
+                stmt.setInt(6, versaoEsperada);
+            }
 
             int linhasAfetadas = stmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                jogo.setVersao(SqlUtil.versaoGerada(stmt));
+                indexar(jogo);
+            }
             System.out.println("Jogo ID " + jogo.getId() + " atualizado. Linhas afetadas: " + linhasAfetadas);
+            return linhasAfetadas;
 
         } catch (SQLException e) {
             System.err.println("Erro ao atualizar jogo ID: " + jogo.getId() + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            throw new RuntimeException("Erro ao atualizar jogo.", e);
+        } finally {
+            alterarCatalogo();
         }
     }
 
+    public int atualizar(Jogo jogo) {
+        return atualizar(jogo, null);
+    }
+
     // ------------------------------------
     // DELETE: Deletar por ID
     // ------------------------------------
-    public void deletar(Long id) {
-        String sql = "DELETE FROM jogo WHERE id = ?";
+    public int deletar(Long id, Integer versaoEsperada) {
+        String sql = "DELETE FROM jogo WHERE id = ?" + (versaoEsperada != null ? " AND versao = ?" : "");
 
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setLong(1, id);
+            if (versaoEsperada != null) {
+                stmt.setInt(2, versaoEsperada);
+            }
 
             int linhasAfetadas = stmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                removerDoIndice(id);
+            }
             System.out.println("Tentativa de deletar Jogo ID " + id + ". Linhas afetadas: " + linhasAfetadas);
+            return linhasAfetadas;
 
         } catch (SQLException e) {
             System.err.println("Erro ao deletar jogo com ID: " + id + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            // a causa (ex.: jogo com locações) chega à rota
+            throw new RuntimeException("Erro ao deletar jogo.", e);
+        } finally {
+            alterarCatalogo();
         }
     }
-}
\ No newline at end of file
+
+    public int deletar(Long id) {
+        return deletar(id, null);
+    }
+}
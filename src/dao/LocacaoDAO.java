@@ -1,31 +1,132 @@
 package dao;
 
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import model.Cliente;
+import model.Genero;
 import model.Jogo;
 import model.Locacao;
+import util.ChamadaUnica;
 import util.ConnectionFactory;
+import util.SqlUtil;
 
 public class LocacaoDAO{
+    // colunas e joins comuns a todas as consultas de locação
+    private static final String COLUNAS_LOCACAO = "SELECT l.id, l.data_locacao, l.data_devolucao, l.versao, " +
+                     "j.id AS id_jogo, j.nome AS nome_jogo, " +
+                     "c.id AS id_cliente, c.nome AS nome_cliente ";
+    private static final String JOINS_LOCACAO = " INNER JOIN jogo j ON l.jogo_id = j.id " +
+                     "INNER JOIN cliente c ON l.cliente_id = c.id";
+    private static final String SELECT_LOCACAO = COLUNAS_LOCACAO + "FROM locacao l" + JOINS_LOCACAO;
+
+    // Locações abertas são poucas e as mais recentes (IDs mais altos). Com
+    // ORDER BY l.id LIMIT o otimizador prefere percorrer a PK, e chega a ler a
+    // tabela inteira até achá-las; sem a PK para ordenar, usa data_devolucao.
+    private static final String FROM_LOCACAO_ABERTAS = "FROM locacao l IGNORE INDEX FOR ORDER BY (PRIMARY)";
+    private static final String SELECT_LOCACAO_ABERTAS = COLUNAS_LOCACAO + FROM_LOCACAO_ABERTAS + JOINS_LOCACAO;
+
+    // insere só se jogo e cliente existem e o cliente tem a idade mínima do jogo
+    private static final String SQL_INSERIR_VALIDADO = "INSERT INTO locacao (data_locacao, data_devolucao, jogo_id, cliente_id) " +
+            "SELECT ?, ?, j.id, c.id FROM jogo j " +
+            "INNER JOIN cliente c ON c.id = ? " +
+            "WHERE j.id = ? AND c.idade >= j.idademinima";
+
+    // ------------------------------------
+    // OUVINTES DE ALTERAÇÕES
+    // ------------------------------------
+    // Quem mantém dados derivados de locacao em memória (relatórios, contadores)
+    // recebe cada alteração gravada por este DAO. Para que atualizações e
+    // exclusões informem a linha anterior, elas a leem com FOR UPDATE na mesma
+    // transação; sem ouvintes registrados essa leitura extra não acontece.
+    private static final List<OuvinteLocacao> ouvintes = new CopyOnWriteArrayList<>();
+
+    // escritas iniciadas e terminadas (já notificadas); iguais = nenhuma em andamento
+    private static final AtomicLong escritasIniciadas = new AtomicLong();
+    private static final AtomicLong escritasConcluidas = new AtomicLong();
+
+    public static void registrarOuvinte(OuvinteLocacao ouvinte) {
+        ouvintes.add(ouvinte);
+    }
+
+    /**
+     * Marca para quem relê a tabela inteira: número de escritas iniciadas, ou
+     * -1 se alguma ainda não terminou. Se a marca lida antes e depois da
+     * leitura for a mesma (e não -1), nenhuma escrita aconteceu no meio.
+     */
+    public static long marcaEscritas() {
+        long concluidas = escritasConcluidas.get();
+        long iniciadas = escritasIniciadas.get();
+        return iniciadas == concluidas ? iniciadas : -1;
+    }
+
+    private static void notificar(Locacao antes, Locacao depois) {
+        for (OuvinteLocacao ouvinte : ouvintes) {
+            try {
+                ouvinte.alterada(antes, depois);
+            } catch (RuntimeException e) {
+                // a gravação já foi confirmada; um ouvinte com erro não a desfaz
+                System.err.println("Erro ao notificar alteração de locação: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Com ouvintes, abre uma transação e trava a linha para ler como ela estava
+    // antes da alteração. Sem ouvintes (ou se a linha não existe), null.
+    private static Locacao travarLinhaAnterior(Connection conn, Long id) throws SQLException {
+        if (ouvintes.isEmpty()) {
+            return null;
+        }
+        conn.setAutoCommit(false);
+        String sql = "SELECT data_locacao, data_devolucao, jogo_id, cliente_id FROM locacao WHERE id = ? FOR UPDATE";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, id);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new Locacao(id, rs.getDate("data_locacao"), rs.getDate("data_devolucao"),
+                        new Jogo(rs.getLong("jogo_id"), null), new Cliente(rs.getLong("cliente_id"), null));
+            }
+        }
+    }
+
+    // confirma a transação aberta por travarLinhaAnterior, se houver
+    private static void confirmar(Connection conn) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            conn.commit();
+        }
+    }
+
+    // Em caso de exceção o rollback fica com a devolução da conexão ao pool
+    private static void desfazer(Connection conn) throws SQLException {
+        if (!conn.getAutoCommit()) {
+            conn.rollback();
+        }
+    }
+
     // ------------------------------------
     // READ
     // ------------------------------------
     public List<Locacao> buscarTodos() {
         List<Locacao> locacoes = new ArrayList<>();
         // query SQL para selecionar todos os campos
-        String sql = "SELECT l.id, l.data_locacao, l.data_devolucao, " +
-                     "j.id AS id_jogo, j.nome AS nome_jogo, " +
-                     "c.id AS id_cliente, c.nome AS nome_cliente " +
-                     "FROM locacao l " +
-                     "INNER JOIN jogo j ON l.jogo_id = j.id " + 
-                     "INNER JOIN cliente c ON l.cliente_id = c.id";
+        String sql = SELECT_LOCACAO;
                  
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql);
@@ -33,27 +134,7 @@ public class LocacaoDAO{
             
             // itera sobre cada linha retornada pelo banco
             while (rs.next()) {
-                // Mapeia o Cliente
-                Cliente cliente = null;
-                Long idCliente = rs.getLong("id_cliente");
-                
-                //mapeia o jogo
-                Jogo jogo = null;
-                Long idJogo = rs.getLong("id_jogo");
-                
-                // mapeia os items caso nao sejem null
-                if (!rs.wasNull()) {
-                    cliente = new Cliente(idCliente, rs.getString("nome_cliente"));
-                    jogo = new Jogo(idJogo, rs.getString("nome_jogo"));
-                }
-                
-                // cria um novo objeto Locacao a partir dos dados da linha atual do ResultSet
-                Locacao locacao = new Locacao(
-                        rs.getLong("id"),
-                        rs.getDate("data_locacao"),
-                        rs.getDate("data_devolucao"), 
-                        jogo, cliente);
-                locacoes.add(locacao);
+                locacoes.add(mapear(rs));
             }
         } catch (SQLException e) {
             System.err.println("Erro ao buscar as Locações: " + e.getMessage());
@@ -61,21 +142,299 @@ public class LocacaoDAO{
         }
         return locacoes;
     }
+
+    // ------------------------------------
+    // READ: página (keyset em l.id)
+    // ------------------------------------
+    public List<Locacao> buscarPagina(Long depoisDe, int limite) {
+        return buscarPagina(null, depoisDe, limite);
+    }
+
+    public List<Locacao> buscarPagina(FiltroLocacao filtro, Long depoisDe, int limite) {
+        return buscarPagina(filtro, null, depoisDe, limite);
+    }
+
+    // projecao null: todas as colunas, com jogo e cliente
+    public List<Locacao> buscarPagina(FiltroLocacao filtro, Projecao projecao, Long depoisDe, int limite) {
+        List<Locacao> locacoes = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        // o cursor é o último ID da página anterior; o índice da PK evita o custo do OFFSET
+        parametros.add(depoisDe != null ? depoisDe : 0L);
+        String sql = selectLocacao(filtro, projecao) + " WHERE l.id > ?" + condicoes(filtro, parametros)
+                + " ORDER BY l.id LIMIT ?";
+        parametros.add(limite);
+        Map<Long, Genero> generos = expandeGenero(projecao) ? GeneroDAO.mapaEmCache() : null;
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            definirParametros(stmt, parametros);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    locacoes.add(mapear(rs, projecao, generos));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao buscar a página de Locações: " + e.getMessage());
+            e.printStackTrace();
+        }
+        return locacoes;
+    }
+
+    // ------------------------------------
+    // READ: streaming (sem montar lista)
+    // ------------------------------------
+    public void percorrerTodos(Consumer<Locacao> consumidor) {
+        percorrer(null, consumidor);
+    }
+
+    public void percorrer(FiltroLocacao filtro, Consumer<Locacao> consumidor) {
+        percorrer(filtro, null, consumidor);
+    }
+
+    public void percorrer(FiltroLocacao filtro, Projecao projecao, Consumer<Locacao> consumidor) {
+        percorrer(filtro, projecao, null, consumidor);
+    }
+
+    // Só as locações com ID maior que 'depoisDe' (null: todas); false se o banco falhou no meio
+    public boolean percorrer(FiltroLocacao filtro, Projecao projecao, Long depoisDe, Consumer<Locacao> consumidor) {
+        List<Object> parametros = new ArrayList<>();
+        parametros.add(depoisDe != null ? depoisDe : 0L);
+        String sql = selectLocacao(filtro, projecao) + " WHERE l.id > ?" + condicoes(filtro, parametros) + " ORDER BY l.id";
+        Map<Long, Genero> generos;
+        try {
+            generos = expandeGenero(projecao) ? GeneroDAO.mapaEmCache() : null;
+        } catch (RuntimeException e) {
+            // gêneros não carregados: falha como o banco, antes de escrever qualquer linha
+            System.err.println("Erro ao percorrer as Locações: " + e.getMessage());
+            return false;
+        }
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            definirParametros(stmt, parametros);
+            // Integer.MIN_VALUE faz o driver do MySQL ler linha a linha do servidor
+            stmt.setFetchSize(Integer.MIN_VALUE);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumidor.accept(mapear(rs, projecao, generos));
+                }
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Erro ao percorrer as Locações: " + e.getMessage());
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // ------------------------------------
+    // FILTROS
+    // ------------------------------------
+    // Cada filtro presente vira um "AND ... ?" com o valor em parametros, na
+    // ordem dos '?'. Só a presença dos filtros muda o SQL, então há poucas
+    // variações e todas ficam no cache de statements. Índices usados:
+    // (cliente_id, data_locacao), (jogo_id, data_locacao), (data_locacao) e
+    // (data_devolucao); ver bd/migracoes/002_indices_locacao.sql.
+    private static String condicoes(FiltroLocacao filtro, List<Object> parametros) {
+        if (filtro == null || filtro.isVazio()) {
+            return "";
+        }
+        StringBuilder sql = new StringBuilder();
+        if (filtro.getClienteId() != null) {
+            sql.append(" AND l.cliente_id = ?");
+            parametros.add(filtro.getClienteId());
+        }
+        if (filtro.getJogoId() != null) {
+            sql.append(" AND l.jogo_id = ?");
+            parametros.add(filtro.getJogoId());
+        }
+        if (filtro.getDe() != null) {
+            sql.append(" AND l.data_locacao >= ?");
+            parametros.add(filtro.getDe());
+        }
+        if (filtro.getAte() != null) {
+            sql.append(" AND l.data_locacao <= ?");
+            parametros.add(filtro.getAte());
+        }
+        if (filtro.getStatus() != null) {
+            // "hoje" vem da aplicação, o mesmo dia usado no cálculo de diasRestantes
+            sql.append(filtro.getStatus() == FiltroLocacao.Status.ABERTA
+                    ? " AND (l.data_devolucao IS NULL OR l.data_devolucao >= ?)"
+                    : " AND l.data_devolucao < ?");
+            parametros.add(Date.valueOf(LocalDate.now()));
+        }
+        return sql.toString();
+    }
+
+    private static String selectLocacao(FiltroLocacao filtro, Projecao projecao) {
+        boolean abertas = filtro != null && filtro.getStatus() == FiltroLocacao.Status.ABERTA;
+        if (projecao == null) {
+            return abertas ? SELECT_LOCACAO_ABERTAS : SELECT_LOCACAO;
+        }
+        return colunasProjetadas(projecao) + (abertas ? FROM_LOCACAO_ABERTAS : "FROM locacao l") + joinsProjetados(projecao);
+    }
+
+    // ------------------------------------
+    // PROJEÇÃO (?fields= / ?expand=)
+    // ------------------------------------
+    // Só as colunas pedidas; jogo e cliente não expandidos vêm das chaves
+    // estrangeiras de locacao, sem JOIN. O gênero do jogo vem do cache do
+    // GeneroDAO, então expandir genero só acrescenta j.genero_id.
+    private static String colunasProjetadas(Projecao projecao) {
+        StringBuilder sql = new StringBuilder("SELECT l.id");
+        if (projecao.inclui("dataLocacao")) {
+            sql.append(", l.data_locacao");
+        }
+        if (projecao.inclui("dataVencimento") || projecao.inclui("diasRestantes")) {
+            sql.append(", l.data_devolucao");
+        }
+        if (projecao.inclui("versao")) {
+            sql.append(", l.versao");
+        }
+        if (projecao.expande("jogo")) {
+            sql.append(", j.id AS id_jogo, j.nome AS nome_jogo");
+            if (expandeGenero(projecao)) {
+                sql.append(", j.genero_id");
+            }
+        } else if (projecao.inclui("jogo")) {
+            sql.append(", l.jogo_id AS id_jogo");
+        }
+        if (projecao.expande("cliente")) {
+            sql.append(", c.id AS id_cliente, c.nome AS nome_cliente");
+        } else if (projecao.inclui("cliente")) {
+            sql.append(", l.cliente_id AS id_cliente");
+        }
+        return sql.append(' ').toString();
+    }
+
+    // o gênero fica dentro do jogo: só expande junto com ele
+    private static boolean expandeGenero(Projecao projecao) {
+        return projecao != null && projecao.expande("jogo") && projecao.pediuExpansao("genero");
+    }
+
+    private static String joinsProjetados(Projecao projecao) {
+        String joins = "";
+        if (projecao.expande("jogo")) {
+            joins += " INNER JOIN jogo j ON l.jogo_id = j.id";
+        }
+        if (projecao.expande("cliente")) {
+            joins += " INNER JOIN cliente c ON l.cliente_id = c.id";
+        }
+        return joins;
+    }
+
+    // mapear() para uma projeção: só lê as colunas que colunasProjetadas() incluiu
+    private static Locacao mapear(ResultSet rs, Projecao projecao, Map<Long, Genero> generos) throws SQLException {
+        if (projecao == null) {
+            return mapear(rs);
+        }
+        Locacao locacao = new Locacao();
+        locacao.setId(rs.getLong("id"));
+        if (projecao.inclui("dataLocacao")) {
+            locacao.setDataLocacao(rs.getDate("data_locacao"));
+        }
+        if (projecao.inclui("dataVencimento") || projecao.inclui("diasRestantes")) {
+            locacao.setDataVencimento(rs.getDate("data_devolucao"));
+        }
+        if (projecao.inclui("versao")) {
+            locacao.setVersao(rs.getInt("versao"));
+        }
+        if (projecao.inclui("jogo")) {
+            Jogo jogo = new Jogo();
+            jogo.setId(rs.getLong("id_jogo"));
+            if (projecao.expande("jogo")) {
+                jogo.setNome(rs.getString("nome_jogo"));
+                if (generos != null) {
+                    jogo.setGenero(generos.get(rs.getLong("genero_id")));
+                }
+            }
+            locacao.setJogo(jogo);
+        }
+        if (projecao.inclui("cliente")) {
+            Cliente cliente = new Cliente();
+            cliente.setId(rs.getLong("id_cliente"));
+            if (projecao.expande("cliente")) {
+                cliente.setNome(rs.getString("nome_cliente"));
+            }
+            locacao.setCliente(cliente);
+        }
+        return locacao;
+    }
+
+    private static void definirParametros(PreparedStatement stmt, List<Object> parametros) throws SQLException {
+        for (int i = 0; i < parametros.size(); i++) {
+            stmt.setObject(i + 1, parametros.get(i));
+        }
+    }
+
+    // cria um objeto Locacao a partir dos dados da linha atual do ResultSet
+    private static Locacao mapear(ResultSet rs) throws SQLException {
+        // Mapeia o Cliente
+        Cliente cliente = null;
+        Long idCliente = rs.getLong("id_cliente");
+        
+        //mapeia o jogo
+        Jogo jogo = null;
+        Long idJogo = rs.getLong("id_jogo");
+        
+        // mapeia os items caso nao sejem null
+        if (!rs.wasNull()) {
+            cliente = new Cliente(idCliente, rs.getString("nome_cliente"));
+            jogo = new Jogo(idJogo, rs.getString("nome_jogo"));
+        }
+        
+        Locacao locacao = new Locacao(
+                rs.getLong("id"),
+                rs.getDate("data_locacao"),
+                rs.getDate("data_devolucao"), 
+                jogo, cliente);
+        locacao.setVersao(rs.getInt("versao"));
+        return locacao;
+    }
+
+    // ------------------------------------
+    // EXISTS
+    // ------------------------------------
+    public boolean existe(Long id) {
+        String sql = "SELECT 1 FROM locacao WHERE id = ?";
+
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setLong(1, id);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            System.err.println("Erro ao verificar a Locacao ID: " + id + ". Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao verificar locação.", e);
+        }
+    }
     
     // ------------------------------------
     // READ BY ID
     // ------------------------------------
+    private static final ChamadaUnica<Long, Locacao> buscasPorId = new ChamadaUnica<>("LocacaoDAO.buscarPorId");
+
+    // Buscas simultâneas do mesmo ID viram uma só ida ao banco. A versão é o
+    // contador de escritas concluídas (depois do commit), então uma busca que
+    // começa depois de uma escrita não aproveita a leitura de antes dela
     public Locacao buscarPorId(Long id) {
+        return buscasPorId.executar(id, escritasConcluidas.get(), () -> consultarPorId(id));
+    }
+
+    private static Locacao consultarPorId(Long id) {
         
         Locacao locacao = null;
         
-        String sql = "SELECT l.id, l.data_locacao, l.data_devolucao, " +
-                     "j.id AS id_jogo, j.nome AS nome_jogo, " +
-                     "c.id AS id_cliente, c.nome AS nome_cliente " +
-                     "FROM locacao l " +
-                     "INNER JOIN jogo j ON l.jogo_id = j.id " + 
-                     "INNER JOIN cliente c ON l.cliente_id = c.id " +
-                     "WHERE l.id = ?";
+        String sql = SELECT_LOCACAO + " WHERE l.id = ?";
+
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
             
@@ -85,26 +444,7 @@ public class LocacaoDAO{
             try (ResultSet rs = stmt.executeQuery()) {
                 // itera sobre cada linha retornada pelo banco
                 if (rs.next()) {
-                    // Mapeia o Cliente
-                    Cliente cliente = null;
-                    Long idCliente = rs.getLong("id_cliente");
-                    
-                    //mapeia o jogo
-                    Jogo jogo = null;
-                    Long idJogo = rs.getLong("id_jogo");
-                    
-                    // mapeia os items caso nao sejem null
-                    if (!rs.wasNull()) {
-                        cliente = new Cliente(idCliente, rs.getString("nome_cliente"));
-                        jogo = new Jogo(idJogo, rs.getString("nome_jogo"));
-                    }
-                    
-                    // cria um novo objeto Locacao a partir dos dados da linha atual do ResultSet
-                    locacao = new Locacao(
-                            rs.getLong("id"),
-                            rs.getDate("data_locacao"),
-                            rs.getDate("data_devolucao"), 
-                            jogo, cliente);
+                    locacao = mapear(rs);
                 }
             }
         } catch (SQLException e) {
@@ -122,6 +462,7 @@ public class LocacaoDAO{
         // usa Statement.RETURN_GENERATED_KEYS para solicitar o ID gerado
         String sql = "INSERT INTO locacao (data_locacao, data_devolucao, jogo_id, cliente_id) VALUES (?, ?, ?, ?)";
         
+        escritasIniciadas.incrementAndGet();
         try (Connection conn = ConnectionFactory.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             
@@ -154,24 +495,405 @@ public class LocacaoDAO{
                 if (rs.next()) {
                     // define o ID no objeto Locacao que foi passado (importante para a API)
                     locacao.setId(rs.getLong(1));
+                    locacao.setVersao(1);
+                    notificar(null, locacao);
                 }
             }
             
         } catch (SQLException e) {
             System.err.println("Erro ao inserir Locacao. Detalhes: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            escritasConcluidas.incrementAndGet();
+        }
+    }
+
+    // ------------------------------------
+    // CREATE: validado no próprio INSERT
+    // ------------------------------------
+    // A idade mínima é conferida pelo INSERT ... SELECT, então o caminho feliz é
+    // um único comando. O SELECT trava as linhas de jogo e cliente lidas, e
+    // nenhuma alteração entre a verificação e a gravação passa despercebida.
+    // O diagnóstico só roda quando nada foi inserido.
+    public ResultadoLocacao inserirValidado(Locacao locacao) {
+        Long idJogo = locacao.getJogo().getId();
+        Long idCliente = locacao.getCliente().getId();
+
+        escritasIniciadas.incrementAndGet();
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERIR_VALIDADO, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setDate(1, locacao.getDataLocacao());
+                stmt.setDate(2, locacao.getDataVencimento());
+                stmt.setLong(3, idCliente);
+                stmt.setLong(4, idJogo);
+
+                if (stmt.executeUpdate() == 1) {
+                    try (ResultSet rs = stmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            locacao.setId(rs.getLong(1));
+                            locacao.setVersao(1);
+                        }
+                    }
+                    notificar(null, locacao);
+                    return ResultadoLocacao.ok();
+                }
+            }
+            return diagnosticar(conn, null, null, idJogo, idCliente);
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao inserir Locacao. Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao inserir locação.", e);
+        } finally {
+            escritasConcluidas.incrementAndGet();
+        }
+    }
+
+    // ------------------------------------
+    // CREATE: reaplicação do diário local (DiarioLocacoes)
+    // ------------------------------------
+    // O mesmo INSERT de inserirValidado, na transação que grava a chave do
+    // registro em locacao_diario. Uma chave que já está lá devolve
+    // JA_REAPLICADA sem inserir nada, então reaplicar o diário de novo (depois
+    // de uma queda no meio da reaplicação, por exemplo) não duplica locações.
+    public ResultadoLocacao inserirDoDiario(String chave, Locacao locacao) {
+        Long idJogo = locacao.getJogo().getId();
+        Long idCliente = locacao.getCliente().getId();
+
+        escritasIniciadas.incrementAndGet();
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT locacao_id FROM locacao_diario WHERE chave = ? FOR UPDATE")) {
+                    stmt.setString(1, chave);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            locacao.setId(rs.getLong(1));
+                            conn.rollback();
+                            return new ResultadoLocacao(ResultadoLocacao.Status.JA_REAPLICADA, null);
+                        }
+                    }
+                }
+
+                boolean inserida = false;
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERIR_VALIDADO, Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setDate(1, locacao.getDataLocacao());
+                    stmt.setDate(2, locacao.getDataVencimento());
+                    stmt.setLong(3, idCliente);
+                    stmt.setLong(4, idJogo);
+
+                    if (stmt.executeUpdate() == 1) {
+                        try (ResultSet rs = stmt.getGeneratedKeys()) {
+                            if (!rs.next()) {
+                                // sem o ID não há como ligar a chave à locação: desfaz tudo
+                                throw new SQLException("INSERT da locação não devolveu o ID gerado.");
+                            }
+                            locacao.setId(rs.getLong(1));
+                            locacao.setVersao(1);
+                        }
+                        inserida = true;
+                    }
+                }
+                if (!inserida) {
+                    ResultadoLocacao falha = diagnosticar(conn, null, null, idJogo, idCliente);
+                    conn.rollback();
+                    return falha;
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO locacao_diario (chave, locacao_id) VALUES (?, ?)")) {
+                    stmt.setString(1, chave);
+                    stmt.setLong(2, locacao.getId());
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                locacao.setId(null);
+                throw e;
+            }
+            notificar(null, locacao);
+            return ResultadoLocacao.ok();
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao reaplicar locação do diário (chave " + chave + "). Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao reaplicar locação do diário.", e);
+        } finally {
+            escritasConcluidas.incrementAndGet();
+        }
+    }
+
+    // ------------------------------------
+    // UPDATE: validado no próprio UPDATE
+    // ------------------------------------
+    // Com versaoEsperada (If-Match) a versão também entra no WHERE, então uma
+    // gravação concorrente faz o UPDATE não encontrar a linha.
+    public ResultadoLocacao atualizarValidado(Locacao locacao, Integer versaoEsperada) {
+        String sql = "UPDATE locacao l " +
+                     "INNER JOIN jogo j ON j.id = ? " +
+                     "INNER JOIN cliente c ON c.id = ? " +
+                     "SET l.data_locacao = ?, l.data_devolucao = ?, l.jogo_id = j.id, l.cliente_id = c.id, " +
+                     "l.versao = LAST_INSERT_ID(l.versao + 1) " +
+                     "WHERE l.id = ? AND c.idade >= j.idademinima" +
+                     (versaoEsperada != null ? " AND l.versao = ?" : "");
+
+        Long idJogo = locacao.getJogo().getId();
+        Long idCliente = locacao.getCliente().getId();
+
+        escritasIniciadas.incrementAndGet();
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            Locacao antes = travarLinhaAnterior(conn, locacao.getId());
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setLong(1, idJogo);
+                stmt.setLong(2, idCliente);
+                stmt.setDate(3, locacao.getDataLocacao());
+                stmt.setDate(4, locacao.getDataVencimento());
+                stmt.setLong(5, locacao.getId());
+                if (versaoEsperada != null) {
+                    stmt.setInt(6, versaoEsperada);
+                }
+
+                // o driver devolve linhas encontradas (não só as alteradas), então
+                // um PUT com os mesmos valores também conta como 1
+                if (stmt.executeUpdate() == 1) {
+                    locacao.setVersao(SqlUtil.versaoGerada(stmt));
+                    confirmar(conn);
+                    if (antes != null) {
+                        notificar(antes, locacao);
+                    }
+                    return ResultadoLocacao.ok();
+                }
+            }
+            ResultadoLocacao falha = diagnosticar(conn, locacao.getId(), versaoEsperada, idJogo, idCliente);
+            desfazer(conn);
+            return falha;
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao atualizar locacao ID: " + locacao.getId() + ". Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao atualizar locação.", e);
+        } finally {
+            escritasConcluidas.incrementAndGet();
+        }
+    }
+
+    public ResultadoLocacao atualizarValidado(Locacao locacao) {
+        return atualizarValidado(locacao, null);
+    }
+
+    // descobre por que o INSERT/UPDATE validado não gravou nada
+    private static ResultadoLocacao diagnosticar(Connection conn, Long idLocacao, Integer versaoEsperada,
+            Long idJogo, Long idCliente) throws SQLException {
+        String sql = "SELECT (SELECT idademinima FROM jogo WHERE id = ?) AS idade_minima, " +
+                     "(SELECT idade FROM cliente WHERE id = ?) AS idade, " +
+                     "(SELECT versao FROM locacao WHERE id = ?) AS versao_locacao";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, idJogo);
+            stmt.setLong(2, idCliente);
+            stmt.setLong(3, idLocacao != null ? idLocacao : 0L);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                int versaoAtual = rs.getInt("versao_locacao");
+                if (idLocacao != null && rs.wasNull()) {
+                    return new ResultadoLocacao(ResultadoLocacao.Status.LOCACAO_NAO_ENCONTRADA, null);
+                }
+                if (versaoEsperada != null && versaoAtual != versaoEsperada) {
+                    return new ResultadoLocacao(ResultadoLocacao.Status.VERSAO_DIVERGENTE, null);
+                }
+                int idadeMinima = rs.getInt("idade_minima");
+                if (rs.wasNull()) {
+                    return new ResultadoLocacao(ResultadoLocacao.Status.JOGO_NAO_ENCONTRADO, null);
+                }
+                int idade = rs.getInt("idade");
+                if (rs.wasNull()) {
+                    return new ResultadoLocacao(ResultadoLocacao.Status.CLIENTE_NAO_ENCONTRADO, null);
+                }
+                if (idade < idadeMinima) {
+                    return new ResultadoLocacao(ResultadoLocacao.Status.IDADE_INSUFICIENTE, idadeMinima);
+                }
+                return new ResultadoLocacao(ResultadoLocacao.Status.CONFLITO, null);
+            }
+        }
+    }
+
+    // ------------------------------------
+    // CREATE: lote em uma única transação
+    // ------------------------------------
+    public void inserirLote(List<Locacao> locacoes) {
+        if (locacoes.isEmpty()) {
+            return;
+        }
+
+        escritasIniciadas.incrementAndGet();
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            conn.setAutoCommit(false);
+
+            try {
+                inserirLinhas(conn, locacoes);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Locacao locacao : locacoes) {
+                    locacao.setId(null);
+                }
+                throw e;
+            }
+            for (Locacao locacao : locacoes) {
+                notificar(null, locacao);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao inserir lote de " + locacoes.size() + " Locações. Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao inserir lote de locações.", e);
+        } finally {
+            escritasConcluidas.incrementAndGet();
+        }
+    }
+
+    // ------------------------------------
+    // CREATE: grupo validado em uma transação (ConfirmacaoEmGrupo)
+    // ------------------------------------
+    // A mesma validação de inserirValidado, mas com um número fixo de comandos
+    // por grupo: jogos e clientes do grupo são lidos de uma vez com trava
+    // compartilhada (como no INSERT ... SELECT, não mudam até o commit), as
+    // válidas vão num único INSERT multi-linha e há um commit só. As recusadas
+    // não impedem as outras. Se o banco falhar antes do commit, nada do grupo
+    // fica gravado e a exceção sobe; se o próprio commit falhar, o grupo pode
+    // ter sido gravado e sobe CommitIncertoException.
+    public List<ResultadoLocacao> inserirGrupo(List<Locacao> locacoes) {
+        Set<Long> idsJogos = new HashSet<>();
+        Set<Long> idsClientes = new HashSet<>();
+        for (Locacao locacao : locacoes) {
+            idsJogos.add(locacao.getJogo().getId());
+            idsClientes.add(locacao.getCliente().getId());
+        }
+
+        escritasIniciadas.incrementAndGet();
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            conn.setAutoCommit(false);
+            List<ResultadoLocacao> resultados = new ArrayList<>(locacoes.size());
+            List<Locacao> validas = new ArrayList<>(locacoes.size());
+            try {
+                Map<Long, Integer> idadesMinimas = lerIdadesTravadas(conn,
+                        "SELECT id, idademinima AS idade FROM jogo WHERE id IN (", idsJogos);
+                Map<Long, Integer> idades = lerIdadesTravadas(conn,
+                        "SELECT id, idade FROM cliente WHERE id IN (", idsClientes);
+
+                // mesma ordem de verificação de diagnosticar()
+                for (Locacao locacao : locacoes) {
+                    Integer idadeMinima = idadesMinimas.get(locacao.getJogo().getId());
+                    Integer idade = idades.get(locacao.getCliente().getId());
+                    if (idadeMinima == null) {
+                        resultados.add(new ResultadoLocacao(ResultadoLocacao.Status.JOGO_NAO_ENCONTRADO, null));
+                    } else if (idade == null) {
+                        resultados.add(new ResultadoLocacao(ResultadoLocacao.Status.CLIENTE_NAO_ENCONTRADO, null));
+                    } else if (idade < idadeMinima) {
+                        resultados.add(new ResultadoLocacao(ResultadoLocacao.Status.IDADE_INSUFICIENTE, idadeMinima));
+                    } else {
+                        resultados.add(ResultadoLocacao.ok());
+                        validas.add(locacao);
+                    }
+                }
+
+                if (!validas.isEmpty()) {
+                    inserirLinhas(conn, validas);
+                }
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Locacao locacao : validas) {
+                    locacao.setId(null);
+                }
+                throw e;
+            }
+            try {
+                conn.commit();
+            } catch (SQLException e) {
+                // o servidor pode ter confirmado antes da falha: não dá para repetir sem risco de duplicar
+                System.err.println("Commit do grupo de " + locacoes.size() + " Locações sem confirmação. Detalhes: " + e.getMessage());
+                e.printStackTrace();
+                throw new CommitIncertoException("Resultado do commit do grupo de locações desconhecido.", e);
+            }
+            for (Locacao locacao : validas) {
+                notificar(null, locacao);
+            }
+            return resultados;
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao inserir grupo de " + locacoes.size() + " Locações. Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            throw new RuntimeException("Erro ao inserir grupo de locações.", e);
+        } finally {
+            escritasConcluidas.incrementAndGet();
+        }
+    }
+
+    // id -> idade das linhas encontradas, travadas até o fim da transação
+    private static Map<Long, Integer> lerIdadesTravadas(Connection conn, String inicioSql, Set<Long> ids)
+            throws SQLException {
+        Map<Long, Integer> idades = new HashMap<>();
+        String sql = inicioSql + SqlUtil.placeholders(ids.size()) + ") LOCK IN SHARE MODE";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            for (Long id : ids) {
+                stmt.setLong(i++, id);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    idades.put(rs.getLong("id"), rs.getInt("idade"));
+                }
+            }
+        }
+        return idades;
+    }
+
+    // INSERT das locações já validadas, em lote; preenche ID e versão
+    private static void inserirLinhas(Connection conn, List<Locacao> locacoes) throws SQLException {
+        String sql = "INSERT INTO locacao (data_locacao, data_devolucao, jogo_id, cliente_id) VALUES (?, ?, ?, ?)";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (Locacao locacao : locacoes) {
+                stmt.setDate(1, locacao.getDataLocacao());
+                stmt.setDate(2, locacao.getDataVencimento());
+                stmt.setLong(3, locacao.getJogo().getId());
+                stmt.setLong(4, locacao.getCliente().getId());
+                stmt.addBatch();
+            }
+
+            // com rewriteBatchedStatements o driver envia um único INSERT multi-linha
+            stmt.executeBatch();
+
+            // as chaves geradas voltam na mesma ordem do lote
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                for (Locacao locacao : locacoes) {
+                    if (!rs.next()) {
+                        // sem o ID a locação não pode ser devolvida: desfaz a transação inteira
+                        throw new SQLException("INSERT em lote devolveu menos IDs gerados que locações.");
+                    }
+                    locacao.setId(rs.getLong(1));
+                    locacao.setVersao(1);
+                }
+            }
         }
     }
 
     // ------------------------------------
     // UPDATE
     // ------------------------------------
-    public void atualizar(Locacao locacao) {
+    // devolve as linhas afetadas (0 quando a locação não existe)
+    public int atualizar(Locacao locacao) {
 
-        String sql = "UPDATE locacao SET data_locacao = ?, data_devolucao = ?, jogo_id = ?, cliente_id = ? WHERE id = ?";
+        String sql = "UPDATE locacao SET data_locacao = ?, data_devolucao = ?, jogo_id = ?, cliente_id = ?, " +
+                     "versao = LAST_INSERT_ID(versao + 1) WHERE id = ?";
 
-        try (Connection conn = ConnectionFactory.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+        escritasIniciadas.incrementAndGet();
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            Locacao antes = travarLinhaAnterior(conn, locacao.getId());
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             // define os parâmetros (os novos valores)
             stmt.setDate(1, locacao.getDataLocacao());
@@ -196,36 +918,68 @@ public class LocacaoDAO{
 
             // executa a atualização
             int linhasAfetadas = stmt.executeUpdate();
+            if (linhasAfetadas > 0) {
+                locacao.setVersao(SqlUtil.versaoGerada(stmt));
+            }
+            confirmar(conn);
+            if (linhasAfetadas > 0 && antes != null) {
+                notificar(antes, locacao);
+            }
             System.out.println("Locacao ID " + locacao.getId() + " atualizada. Linhas afetadas: " + linhasAfetadas);
+            return linhasAfetadas;
+            }
 
         } catch (SQLException e) {
             System.err.println("Erro ao atualizar locacao ID: " + locacao.getId() + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            throw new RuntimeException("Erro ao atualizar locação.", e);
+        } finally {
+            escritasConcluidas.incrementAndGet();
         }
     }
 
     // ------------------------------------
     // DELETE
     // ------------------------------------
-    public void deletar(Long id) {
+    // devolve as linhas afetadas: 0 quando a locação não existe ou, com
+    // versaoEsperada, quando outra atualização chegou antes
+    public int deletar(Long id, Integer versaoEsperada) {
 
         // a exclusão precisa do ID no WHERE
-        String sql = "DELETE FROM locacao WHERE id = ?";
+        String sql = "DELETE FROM locacao WHERE id = ?" + (versaoEsperada != null ? " AND versao = ?" : "");
 
-        try (Connection conn = ConnectionFactory.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+        escritasIniciadas.incrementAndGet();
+        try (Connection conn = ConnectionFactory.getConnection()) {
+            Locacao antes = travarLinhaAnterior(conn, id);
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             // define o ID da locacao a ser deletada
             stmt.setLong(1, id);
+            if (versaoEsperada != null) {
+                stmt.setInt(2, versaoEsperada);
+            }
 
             // executa a exclusão
             int linhasAfetadas = stmt.executeUpdate();
+            confirmar(conn);
+            if (linhasAfetadas > 0 && antes != null) {
+                notificar(antes, null);
+            }
             System.out.println("Tentativa de deletar Locacao ID " + id + ". Linhas afetadas: " + linhasAfetadas);
+            return linhasAfetadas;
+            }
 
         } catch (SQLException e) {
             System.err.println("Erro ao deletar locacao ID: " + id + ". Detalhes: " + e.getMessage());
             e.printStackTrace();
+            throw new RuntimeException("Erro ao deletar locação.", e);
+        } finally {
+            escritasConcluidas.incrementAndGet();
         }
     }
 
+    public int deletar(Long id) {
+        return deletar(id, null);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package dao;
+
+import model.Locacao;
+
+/**
+ * Recebe as alterações gravadas em locacao, logo depois do commit e na thread
+ * que fez a escrita. Registrado com LocacaoDAO.registrarOuvinte; deve ser
+ * rápido, porque a resposta da escrita espera por ele.
+ */
+public interface OuvinteLocacao {
+
+    // antes: a linha antes da alteração (null na inclusão); depois: a linha
+    // gravada (null na exclusão). Id, datas, jogo.id e cliente.id vêm sempre
+    // preenchidos.
+    void alterada(Locacao antes, Locacao depois);
+}
@@ -0,0 +1,38 @@
+package dao;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Campos e relações pedidos em ?fields= e ?expand= nas rotas de listagem.
+ * Os DAOs usam a projeção para montar só as colunas e JOINs necessários, e os
+ * adaptadores JSON para escrever só os campos pedidos. O id é sempre incluído
+ * (é o cursor da paginação).
+ */
+public class Projecao {
+
+    // null = todos os campos
+    private final Set<String> campos;
+    private final Set<String> expandidas;
+
+    public Projecao(Set<String> campos, Set<String> expandidas) {
+        this.campos = campos != null ? Collections.unmodifiableSet(new HashSet<>(campos)) : null;
+        this.expandidas = Collections.unmodifiableSet(new HashSet<>(expandidas));
+    }
+
+    public boolean inclui(String campo) {
+        return campos == null || campos.contains(campo) || "id".equals(campo);
+    }
+
+    // Relação incluída e expandida; incluída sem expandir vira só {"id": ...}
+    public boolean expande(String relacao) {
+        return inclui(relacao) && pediuExpansao(relacao);
+    }
+
+    // Se a relação está em ?expand=, para relações aninhadas (o genero do jogo
+    // de uma locação), que não são campos do registro
+    public boolean pediuExpansao(String relacao) {
+        return expandidas.contains(relacao);
+    }
+}
@@ -0,0 +1,295 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import model.Genero;
+import model.Jogo;
+import model.Locacao;
+import model.ReceitaMensal;
+import util.ConnectionFactory;
+import util.Metricas;
+
+/**
+ * Relatório de receita e quantidade de locações por gênero e mês, sem
+ * varrer a tabela locacao a cada consulta.
+ *
+ * Em memória fica só a contagem de locações por (jogo, mês de data_locacao),
+ * mantida a cada inclusão, alteração e exclusão do LocacaoDAO (ouvinte). O
+ * gênero e o preço vêm do catálogo de jogos na hora da consulta, então o
+ * relatório é sempre o JOIN locacao x jogo x genero atual, sem manutenção
+ * quando um jogo muda de preço ou de gênero.
+ *
+ * Um job periódico recalcula as contagens com GROUP BY e substitui as de
+ * memória; células que divergiam (escritas feitas fora desta API, por
+ * exemplo) são registradas no log e em GET /metrics.
+ */
+public class ReceitaDAO {
+
+    // célula = jogo_id * FATOR_CELULA + yyyyMM
+    private static final long FATOR_CELULA = 1_000_000L;
+
+    private static final String SQL_CONTAGENS = "SELECT jogo_id, YEAR(data_locacao) * 100 + MONTH(data_locacao) AS mes, " +
+            "COUNT(*) AS quantidade FROM locacao GROUP BY jogo_id, mes";
+
+    // tentativas de uma reconstrução até achar um intervalo sem escritas
+    private static final int TENTATIVAS_RECONSTRUCAO = 5;
+
+    // null até a primeira reconstrução; sem células zeradas
+    private static volatile Map<Long, Long> celulas;
+    // deltas dos ouvintes e a troca do mapa na reconstrução não se cruzam
+    private static final Object travaCelulas = new Object();
+
+    private static final LongAdder reconstrucoes = new LongAdder();
+    private static final LongAdder reconstrucoesAdiadas = new LongAdder();
+    private static final LongAdder celulasDivergentes = new LongAdder();
+
+    private static ScheduledExecutorService agendador;
+
+    private final JogoDAO jogoDAO = new JogoDAO();
+
+    // ------------------------------------
+    // INICIALIZAÇÃO
+    // ------------------------------------
+    /**
+     * Passa a acompanhar as escritas em locacao e agenda a reconstrução: a
+     * primeira logo em seguida, as outras a cada 'intervaloMin' minutos.
+     */
+    public static synchronized void iniciar(long intervaloMin) {
+        if (agendador != null) {
+            return;
+        }
+        LocacaoDAO.registrarOuvinte(ReceitaDAO::aplicar);
+
+        Metricas.medidor("locadora_receita_reconstrucoes_total", "Reconstruções do relatório de receita",
+                Metricas.TIPO_CONTADOR, reconstrucoes::sum, "resultado", "publicada");
+        Metricas.medidor("locadora_receita_reconstrucoes_total", "Reconstruções do relatório de receita",
+                Metricas.TIPO_CONTADOR, reconstrucoesAdiadas::sum, "resultado", "adiada");
+        Metricas.medidor("locadora_receita_celulas_divergentes_total",
+                "Células (jogo, mês) corrigidas pela reconstrução do relatório de receita",
+                Metricas.TIPO_CONTADOR, celulasDivergentes::sum);
+        Metricas.medidor("locadora_receita_celulas", "Células (jogo, mês) mantidas em memória",
+                Metricas.TIPO_MEDIDOR, () -> {
+                    Map<Long, Long> atuais = celulas;
+                    return atuais != null ? atuais.size() : 0;
+                });
+
+        agendador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "reconstrucao-receita");
+            thread.setDaemon(true);
+            return thread;
+        });
+        agendador.scheduleWithFixedDelay(() -> {
+            try {
+                reconstruir();
+            } catch (RuntimeException e) {
+                // uma exceção aqui cancelaria as próximas execuções
+                System.err.println("Erro ao reconstruir relatório de receita: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }, 0, Math.max(1, intervaloMin), TimeUnit.MINUTES);
+    }
+
+    // ------------------------------------
+    // MANUTENÇÃO INCREMENTAL
+    // ------------------------------------
+    private static void aplicar(Locacao antes, Locacao depois) {
+        long celulaAntes = celula(antes);
+        long celulaDepois = celula(depois);
+        if (celulaAntes == celulaDepois) {
+            return;
+        }
+        synchronized (travaCelulas) {
+            Map<Long, Long> atuais = celulas;
+            if (atuais == null) {
+                // a primeira reconstrução ainda vai ler esta escrita do banco
+                return;
+            }
+            if (celulaAntes >= 0) {
+                somar(atuais, celulaAntes, -1);
+            }
+            if (celulaDepois >= 0) {
+                somar(atuais, celulaDepois, 1);
+            }
+        }
+    }
+
+    private static void somar(Map<Long, Long> atuais, long celula, long delta) {
+        // merge devolvendo null remove a célula que zerou
+        atuais.merge(celula, delta, (atual, soma) -> atual + soma == 0 ? null : atual + soma);
+    }
+
+    // -1 se a locação não tem jogo ou data
+    private static long celula(Locacao locacao) {
+        if (locacao == null || locacao.getDataLocacao() == null
+                || locacao.getJogo() == null || locacao.getJogo().getId() == null) {
+            return -1;
+        }
+        LocalDate data = locacao.getDataLocacao().toLocalDate();
+        return locacao.getJogo().getId() * FATOR_CELULA + data.getYear() * 100 + data.getMonthValue();
+    }
+
+    // ------------------------------------
+    // RECONSTRUÇÃO
+    // ------------------------------------
+    /**
+     * Relê as contagens do banco e substitui as de memória. Só publica uma
+     * leitura durante a qual nenhuma escrita do LocacaoDAO esteve em andamento;
+     * se não conseguir (ou o banco falhar), devolve false e as contagens
+     * atuais continuam valendo até a próxima execução.
+     */
+    public static synchronized boolean reconstruir() {
+        for (int tentativa = 1; tentativa <= TENTATIVAS_RECONSTRUCAO; tentativa++) {
+            long marca = LocacaoDAO.marcaEscritas();
+            if (marca >= 0) {
+                Map<Long, Long> lidas = lerContagens();
+                if (lidas == null) {
+                    return false;
+                }
+                synchronized (travaCelulas) {
+                    // escritas que começarem depois daqui notificam o mapa novo
+                    if (LocacaoDAO.marcaEscritas() == marca) {
+                        publicar(lidas);
+                        return true;
+                    }
+                }
+            }
+            try {
+                Thread.sleep(50L * tentativa);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        reconstrucoesAdiadas.increment();
+        System.err.println("Reconstrução do relatório de receita adiada: escritas em andamento.");
+        return false;
+    }
+
+    // Chamado com travaCelulas
+    private static void publicar(Map<Long, Long> lidas) {
+        Map<Long, Long> atuais = celulas;
+        if (atuais != null) {
+            Set<Long> todas = new HashSet<>(atuais.keySet());
+            todas.addAll(lidas.keySet());
+            int divergentes = 0;
+            for (Long celula : todas) {
+                if (!lidas.getOrDefault(celula, 0L).equals(atuais.getOrDefault(celula, 0L))) {
+                    divergentes++;
+                }
+            }
+            if (divergentes > 0) {
+                celulasDivergentes.add(divergentes);
+                System.err.println("Relatório de receita: " + divergentes
+                        + " célula(s) divergente(s) do banco corrigida(s) na reconstrução.");
+            }
+        }
+        celulas = new ConcurrentHashMap<>(lidas);
+        reconstrucoes.increment();
+    }
+
+    private static Map<Long, Long> lerContagens() {
+        Map<Long, Long> lidas = new HashMap<>();
+        try (Connection conn = ConnectionFactory.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(SQL_CONTAGENS);
+                ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                lidas.put(rs.getLong("jogo_id") * FATOR_CELULA + rs.getInt("mes"), rs.getLong("quantidade"));
+            }
+            return lidas;
+
+        } catch (SQLException e) {
+            System.err.println("Erro ao contar locações por jogo e mês. Detalhes: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // ------------------------------------
+    // READ: Receita por gênero e mês
+    // ------------------------------------
+    /**
+     * Locações e receita (quantidade x preço atual do jogo) por gênero e mês,
+     * ordenadas por mês e nome do gênero. Filtros nulos não restringem; o
+     * intervalo de meses é inclusivo.
+     */
+    public List<ReceitaMensal> buscarReceita(YearMonth de, YearMonth ate, Long generoId) {
+        Map<Long, Long> atuais = celulas;
+        if (atuais == null) {
+            reconstruir();
+            atuais = celulas;
+            if (atuais == null) {
+                throw new RuntimeException("Relatório de receita ainda não disponível.");
+            }
+        }
+        int mesInicial = de != null ? de.getYear() * 100 + de.getMonthValue() : 0;
+        int mesFinal = ate != null ? ate.getYear() * 100 + ate.getMonthValue() : Integer.MAX_VALUE;
+
+        JogoDAO.Catalogo catalogo = jogoDAO.buscarCatalogo();
+        // chave = yyyyMM * FATOR_CELULA + genero_id
+        Map<Long, Linha> linhas = new HashMap<>();
+        for (Map.Entry<Long, Long> entrada : atuais.entrySet()) {
+            int mes = (int) (entrada.getKey() % FATOR_CELULA);
+            if (mes < mesInicial || mes > mesFinal) {
+                continue;
+            }
+            Jogo jogo = catalogo.buscar(entrada.getKey() / FATOR_CELULA);
+            if (jogo == null || jogo.getGenero() == null) {
+                // jogo incluído depois do catálogo; entra na próxima consulta
+                continue;
+            }
+            Genero genero = jogo.getGenero();
+            if (generoId != null && !generoId.equals(genero.getId())) {
+                continue;
+            }
+            Linha linha = linhas.computeIfAbsent(mes * FATOR_CELULA + genero.getId(), c -> new Linha(mes, genero));
+            linha.locacoes += entrada.getValue();
+            linha.receita = linha.receita.add(
+                    BigDecimal.valueOf(jogo.getPreco()).multiply(BigDecimal.valueOf(entrada.getValue())));
+        }
+
+        List<Linha> ordenadas = new ArrayList<>(linhas.values());
+        ordenadas.sort((a, b) -> a.mes != b.mes
+                ? Integer.compare(a.mes, b.mes)
+                : String.valueOf(a.genero.getNome()).compareToIgnoreCase(String.valueOf(b.genero.getNome())));
+
+        List<ReceitaMensal> relatorio = new ArrayList<>(ordenadas.size());
+        for (Linha linha : ordenadas) {
+            relatorio.add(new ReceitaMensal(
+                    String.format("%04d-%02d", linha.mes / 100, linha.mes % 100),
+                    linha.genero.getId(), linha.genero.getNome(), linha.locacoes,
+                    linha.receita.setScale(2, RoundingMode.HALF_UP).doubleValue()));
+        }
+        return relatorio;
+    }
+
+    private static final class Linha {
+        final int mes;
+        final Genero genero;
+        long locacoes;
+        BigDecimal receita = BigDecimal.ZERO;
+
+        Linha(int mes, Genero genero) {
+            this.mes = mes;
+            this.genero = genero;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package dao;
+
+/**
+ * Resultado de uma gravação de locação com a validação de idade feita no
+ * próprio SQL (LocacaoDAO.inserirValidado / atualizarValidado / inserirDoDiario).
+ */
+public class ResultadoLocacao {
+
+    public enum Status {
+        OK,
+        LOCACAO_NAO_ENCONTRADA,
+        JOGO_NAO_ENCONTRADO,
+        CLIENTE_NAO_ENCONTRADO,
+        IDADE_INSUFICIENTE,
+        // If-Match com uma versão que não é mais a atual
+        VERSAO_DIVERGENTE,
+        // jogo ou cliente mudou entre a gravação e o diagnóstico
+        CONFLITO,
+        // fila da gravação em grupo cheia (ConfirmacaoEmGrupo); nada foi gravado
+        FILA_CHEIA,
+        // registro do diário local já reaplicado antes (DiarioLocacoes); nada foi gravado de novo
+        JA_REAPLICADA
+    }
+
+    private final Status status;
+    private final Integer idadeMinima;
+
+    ResultadoLocacao(Status status, Integer idadeMinima) {
+        this.status = status;
+        this.idadeMinima = idadeMinima;
+    }
+
+    static ResultadoLocacao ok() {
+        return new ResultadoLocacao(Status.OK, null);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOk() {
+        return status == Status.OK;
+    }
+
+    // preenchida quando o status é IDADE_INSUFICIENTE
+    public Integer getIdadeMinima() {
+        return idadeMinima;
+    }
+}
@@ -4,6 +4,8 @@ public class Cliente {
     private Long id;
     private String nome;
     private Integer idade;
+    // incrementada a cada atualização (controle otimista via If-Match)
+    private Integer versao;
 
     // Construtor vazio
     public Cliente() {}
@@ -46,9 +48,17 @@ public class Cliente {
         this.idade = idade;
     }
 
+    public Integer getVersao() {
+        return versao;
+    }
+
+    public void setVersao(Integer versao) {
+        this.versao = versao;
+    }
+
     @Override
     public String toString() {
-        return "Cliente [id=" + id + ", nome=" + nome + ", idade=" + idade + "]";
+        return "Cliente [id=" + id + ", nome=" + nome + ", idade=" + idade + ", versao=" + versao + "]";
     }
     
 }
@@ -3,6 +3,8 @@ package model;
 public class Genero {
     private Long id;
     private String nome;
+    // incrementada a cada atualização (controle otimista via If-Match)
+    private Integer versao;
 
     // Construtor vazio
     public Genero() {}
@@ -30,9 +32,17 @@ public class Genero {
         this.nome = nome;
     }
 
+    public Integer getVersao() {
+        return versao;
+    }
+
+    public void setVersao(Integer versao) {
+        this.versao = versao;
+    }
+
     @Override
     public String toString() {
-        return "Genero [id=" + id + ", nome=" + nome + "]";
+        return "Genero [id=" + id + ", nome=" + nome + ", versao=" + versao + "]";
     }
 }
 
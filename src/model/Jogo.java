@@ -6,6 +6,8 @@ public class Jogo {
     private Double preco;
     private Integer idadeMinima;
     private Genero genero;
+    // incrementada a cada atualização (controle otimista via If-Match)
+    private Integer versao;
     
     // Construtor vazio
     public Jogo() {}
@@ -65,9 +67,17 @@ public class Jogo {
         this.genero = genero;
     }
 
+    public Integer getVersao() {
+        return versao;
+    }
+
+    public void setVersao(Integer versao) {
+        this.versao = versao;
+    }
+
     @Override
     public String toString() {
         return "Jogo [id=" + id + ", nome=" + nome + ", preco=" + preco + ", idadeMinima=" + idadeMinima + ", genero="
-                + genero + "]";
+                + genero + ", versao=" + versao + "]";
     }
 }
@@ -8,6 +8,8 @@ public class Locacao {
     private Date dataVencimento;
     private Jogo jogo;
     private Cliente cliente;
+    // incrementada a cada atualização (controle otimista via If-Match)
+    private Integer versao;
 
     // Construtor vazio
     public Locacao() {}
@@ -62,10 +64,18 @@ public class Locacao {
         this.cliente = cliente;
     }
 
+    public Integer getVersao() {
+        return versao;
+    }
+
+    public void setVersao(Integer versao) {
+        this.versao = versao;
+    }
+
     @Override
     public String toString() {
         return "Locacao [id=" + id + ", dataLocacao=" + dataLocacao + ", dataVencimento=" + dataVencimento + ", jogo="
-                + jogo + ", cliente=" + cliente + "]";
+                + jogo + ", cliente=" + cliente + ", versao=" + versao + "]";
     }
 }
 
@@ -0,0 +1,70 @@
+package model;
+
+// Uma linha do relatório de receita: locações de um gênero em um mês
+public class ReceitaMensal {
+    // yyyy-MM
+    private String mes;
+    private Long generoId;
+    private String genero;
+    private Long locacoes;
+    private Double receita;
+
+    // Construtor vazio
+    public ReceitaMensal() {}
+
+    // Construtor parametrizado
+    public ReceitaMensal(String mes, Long generoId, String genero, Long locacoes, Double receita) {
+        this.mes = mes;
+        this.generoId = generoId;
+        this.genero = genero;
+        this.locacoes = locacoes;
+        this.receita = receita;
+    }
+
+    // Getters e Setters
+    public String getMes() {
+        return mes;
+    }
+
+    public void setMes(String mes) {
+        this.mes = mes;
+    }
+
+    public Long getGeneroId() {
+        return generoId;
+    }
+
+    public void setGeneroId(Long generoId) {
+        this.generoId = generoId;
+    }
+
+    public String getGenero() {
+        return genero;
+    }
+
+    public void setGenero(String genero) {
+        this.genero = genero;
+    }
+
+    public Long getLocacoes() {
+        return locacoes;
+    }
+
+    public void setLocacoes(Long locacoes) {
+        this.locacoes = locacoes;
+    }
+
+    public Double getReceita() {
+        return receita;
+    }
+
+    public void setReceita(Double receita) {
+        this.receita = receita;
+    }
+
+    @Override
+    public String toString() {
+        return "ReceitaMensal [mes=" + mes + ", generoId=" + generoId + ", genero=" + genero
+                + ", locacoes=" + locacoes + ", receita=" + receita + "]";
+    }
+}
@@ -0,0 +1,76 @@
+package model;
+
+// Resposta guardada de um POST com Idempotency-Key, devolvida nas repetições
+public class RespostaIdempotente {
+    // SHA-256 (hex) do método, caminho e Idempotency-Key
+    private String chave;
+    // SHA-256 (hex) do corpo da requisição original
+    private String impressao;
+    private int status;
+    private String tipo;
+    private String corpo;
+    // milissegundos desde 1970
+    private long criadaEm;
+
+    // Construtor vazio
+    public RespostaIdempotente() {}
+
+    // Construtor parametrizado
+    public RespostaIdempotente(String chave, String impressao, int status, String tipo, String corpo, long criadaEm) {
+        this.chave = chave;
+        this.impressao = impressao;
+        this.status = status;
+        this.tipo = tipo;
+        this.corpo = corpo;
+        this.criadaEm = criadaEm;
+    }
+
+    // Getters e Setters
+    public String getChave() {
+        return chave;
+    }
+
+    public void setChave(String chave) {
+        this.chave = chave;
+    }
+
+    public String getImpressao() {
+        return impressao;
+    }
+
+    public void setImpressao(String impressao) {
+        this.impressao = impressao;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    public void setTipo(String tipo) {
+        this.tipo = tipo;
+    }
+
+    public String getCorpo() {
+        return corpo;
+    }
+
+    public void setCorpo(String corpo) {
+        this.corpo = corpo;
+    }
+
+    public long getCriadaEm() {
+        return criadaEm;
+    }
+
+    public void setCriadaEm(long criadaEm) {
+        this.criadaEm = criadaEm;
+    }
+}
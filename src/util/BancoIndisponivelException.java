@@ -0,0 +1,15 @@
+package util;
+
+/**
+ * Lançada pelo ConnectionFactory quando não foi possível abrir uma conexão
+ * com o banco (MySQL fora do ar, rede, porta errada). Nada chegou a ser
+ * enviado ao banco, então quem a recebe sabe que a operação não foi feita.
+ */
+public class BancoIndisponivelException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public BancoIndisponivelException(String mensagem, Throwable causa) {
+        super(mensagem, causa);
+    }
+}
@@ -0,0 +1,173 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache LRU de PreparedStatements de uma conexão física, indexado pelo texto
+ * do SQL.
+ *
+ * Vive junto com a conexão no pool: quando um DAO fecha o statement ele volta
+ * para o cache em vez de ser descartado, e a próxima chamada com o mesmo SQL
+ * reaproveita o statement já preparado no servidor.
+ */
+class CacheStatements {
+
+    private final Connection conexao;
+    private final int capacidade;
+    private final LongAdder acertos;
+    private final LongAdder falhas;
+    private final LongAdder remocoes;
+
+    // accessOrder = true: a iteração começa pelo menos usado recentemente
+    private final LinkedHashMap<String, Entrada> entradas;
+
+    CacheStatements(Connection conexao, int capacidade, LongAdder acertos, LongAdder falhas, LongAdder remocoes) {
+        this.conexao = conexao;
+        this.capacidade = capacidade;
+        this.acertos = acertos;
+        this.falhas = falhas;
+        this.remocoes = remocoes;
+        this.entradas = new LinkedHashMap<String, Entrada>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entrada> maisAntiga) {
+                if (size() <= CacheStatements.this.capacidade) {
+                    return false;
+                }
+                remover(maisAntiga.getValue());
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement preparar(String sql, int gerarChaves) throws SQLException {
+        String chave = gerarChaves == Statement.RETURN_GENERATED_KEYS ? "K" + sql : "N" + sql;
+        // o rótulo é de quem pede o statement agora: o mesmo SQL pode ser usado
+        // por mais de um método de DAO
+        Histograma tempo = Metricas.histogramaConsultaDoChamador();
+
+        Entrada entrada = entradas.get(chave);
+        if (entrada != null && !entrada.emUso) {
+            acertos.increment();
+            entrada.emUso = true;
+            return entrada.novoProxy(tempo);
+        }
+
+        falhas.increment();
+        PreparedStatement real = conexao.prepareStatement(sql, gerarChaves);
+        if (entrada != null) {
+            // o mesmo SQL já está aberto nesta conexão (consulta aninhada):
+            // entrega um statement avulso, fora do cache
+            return StatementMedido.envolver(real, tempo);
+        }
+
+        entrada = new Entrada(real);
+        entrada.emUso = true;
+        entradas.put(chave, entrada);
+        return entrada.novoProxy(tempo);
+    }
+
+    private void remover(Entrada entrada) {
+        remocoes.increment();
+        entrada.removida = true;
+        if (!entrada.emUso) {
+            fechar(entrada.statement);
+        }
+    }
+
+    private static void fechar(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // statement já inválido; nada a fazer
+        }
+    }
+
+    // ------------------------------------
+    // ENTRADA + PROXY
+    // ------------------------------------
+    private class Entrada {
+        final PreparedStatement statement;
+        boolean emUso;
+        boolean removida;
+
+        Entrada(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        // 'tempo': histograma do método de DAO que pegou o statement
+        PreparedStatement novoProxy(Histograma tempo) {
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new Uso(this, tempo));
+        }
+
+        void devolver() {
+            emUso = false;
+            if (removida) {
+                fechar(statement);
+                return;
+            }
+            try {
+                // o próximo uso do mesmo SQL deve encontrar o statement como
+                // recém-preparado (ex. sem o fetchSize de streaming)
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.setFetchSize(0);
+                statement.setMaxRows(0);
+                statement.setQueryTimeout(0);
+            } catch (SQLException e) {
+                // statement quebrado: tira do cache para ser recriado
+                removida = true;
+                entradas.values().remove(this);
+                fechar(statement);
+            }
+        }
+    }
+
+    private static class Uso implements InvocationHandler {
+        private Entrada entrada;
+        private final Histograma tempo;
+
+        Uso(Entrada entrada, Histograma tempo) {
+            this.entrada = entrada;
+            this.tempo = tempo;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (entrada != null) {
+                        Entrada devolvida = entrada;
+                        entrada = null;
+                        devolvida.devolver();
+                    }
+                    return null;
+                case "isClosed":
+                    return entrada == null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    break;
+            }
+
+            Entrada atual = entrada;
+            if (atual == null) {
+                throw new SQLException("Statement já foi fechado.");
+            }
+            return StatementMedido.invocar(atual.statement, method, args, tempo);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalescência de leituras iguais e simultâneas (single flight).
+ *
+ * A primeira chamada para uma chave executa a leitura; as que chegam enquanto
+ * ela está em andamento esperam e recebem o mesmo resultado (ou a mesma
+ * exceção) sem ir ao banco. Cada leitura guarda a versão dos dados em que
+ * começou (um contador de escritas do DAO): uma chamada que já vê uma versão
+ * mais nova não entra na leitura em andamento e começa outra, então ninguém
+ * recebe um valor lido antes de uma escrita que terminou antes da chamada.
+ *
+ * O resultado é o mesmo objeto para todas as chamadas; quem for alterá-lo
+ * deve fazer uma cópia.
+ */
+public final class ChamadaUnica<K, V> {
+
+    private static final class Leitura<V> {
+        final long versao;
+        final CompletableFuture<V> resultado = new CompletableFuture<>();
+
+        Leitura(long versao) {
+            this.versao = versao;
+        }
+    }
+
+    // todas as instâncias, para GET /status
+    private static final CopyOnWriteArrayList<ChamadaUnica<?, ?>> instancias = new CopyOnWriteArrayList<>();
+
+    private final String nome;
+    private final ConcurrentHashMap<K, Leitura<V>> emAndamento = new ConcurrentHashMap<>();
+    private final LongAdder chamadas = new LongAdder();
+    private final LongAdder leituras = new LongAdder();
+
+    // 'nome' identifica a leitura nas métricas, ex. "ClienteDAO.buscarPorId"
+    public ChamadaUnica(String nome) {
+        this.nome = nome;
+        Metricas.medidor("locadora_coalescencia_chamadas_total", "Chamadas a leituras coalescidas",
+                Metricas.TIPO_CONTADOR, chamadas::sum, "leitura", nome);
+        Metricas.medidor("locadora_coalescencia_leituras_total",
+                "Leituras executadas no banco (as demais chamadas esperaram uma leitura igual)",
+                Metricas.TIPO_CONTADOR, leituras::sum, "leitura", nome);
+        instancias.add(this);
+    }
+
+    /**
+     * Resultado de 'leitura' para a chave, executando-a só se não houver uma
+     * leitura em andamento da mesma chave começada na versão 'versao' ou
+     * depois.
+     */
+    public V executar(K chave, long versao, Supplier<V> leitura) {
+        chamadas.increment();
+        Leitura<V> nova = new Leitura<>(versao);
+        while (true) {
+            Leitura<V> atual = emAndamento.putIfAbsent(chave, nova);
+            if (atual == null) {
+                break;
+            }
+            if (atual.versao >= versao) {
+                return aguardar(atual);
+            }
+            // leitura de antes de uma escrita: esta passa a ser a da chave
+            if (emAndamento.replace(chave, atual, nova)) {
+                break;
+            }
+        }
+
+        leituras.increment();
+        try {
+            V valor = leitura.get();
+            nova.resultado.complete(valor);
+            return valor;
+        } catch (RuntimeException | Error e) {
+            nova.resultado.completeExceptionally(e);
+            throw e;
+        } finally {
+            emAndamento.remove(chave, nova);
+        }
+    }
+
+    private static <V> V aguardar(Leitura<V> leitura) {
+        try {
+            return leitura.resultado.join();
+        } catch (CompletionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            if (causa instanceof Error) {
+                throw (Error) causa;
+            }
+            throw e;
+        }
+    }
+
+    // ------------------------------------
+    // ESTATÍSTICAS
+    // ------------------------------------
+    // Por leitura: chamadas, leituras no banco e a fração de chamadas atendidas
+    // por uma leitura de outra chamada (coalescidas / chamadas)
+    public static Map<String, Object> estatisticas() {
+        Map<String, Object> estatisticas = new LinkedHashMap<>();
+        for (ChamadaUnica<?, ?> instancia : instancias) {
+            // leituras antes: uma chamada é contada antes da sua leitura
+            long leituras = instancia.leituras.sum();
+            long chamadas = instancia.chamadas.sum();
+            Map<String, Object> valores = new LinkedHashMap<>();
+            valores.put("chamadas", chamadas);
+            valores.put("leituras", leituras);
+            valores.put("coalescidas", chamadas - leituras);
+            valores.put("razao", chamadas > 0 ? (chamadas - leituras) / (double) chamadas : 0.0);
+            estatisticas.put(instancia.nome, valores);
+        }
+        return estatisticas;
+    }
+}
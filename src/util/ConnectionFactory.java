@@ -1,36 +1,114 @@
 package util;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class ConnectionFactory {
 
-    private static final String URL = "jdbc:mysql://localhost:3306/gamestop";
-    private static final String USER = "root";
-    private static final String PASS = "182022";
+    // useServerPrepStmts: o MySQL faz parse/plano uma vez por statement preparado,
+    // que o pool mantém em cache por conexão
+    // rewriteBatchedStatements: executeBatch de INSERT vira um único INSERT multi-linha
+    // URL e credenciais podem ser trocadas com -Dlocadora.db.url etc. (os
+    // benchmarks usam um H2 em memória)
+    private static final String URL = System.getProperty("locadora.db.url",
+            "jdbc:mysql://localhost:3306/gamestop?useServerPrepStmts=true&rewriteBatchedStatements=true");
+    private static final String USER = System.getProperty("locadora.db.usuario", "root");
+    private static final String PASS = System.getProperty("locadora.db.senha", "182022");
     private static final String DRIVER = "com.mysql.cj.jdbc.Driver";
 
+    // configuração do pool (pode ser sobrescrita com -Dlocadora.pool.max=20 etc.)
+    private static final int POOL_MIN = Integer.getInteger("locadora.pool.min", 2);
+    private static final int POOL_MAX = Integer.getInteger("locadora.pool.max", 10);
+    private static final long POOL_TIMEOUT_MS = Long.getLong("locadora.pool.timeoutMs", 5_000L);
+    private static final long POOL_OCIOSO_MS = Long.getLong("locadora.pool.ociosoMs", 600_000L);
+    private static final long POOL_VAZAMENTO_MS = Long.getLong("locadora.pool.vazamentoMs", 30_000L);
+    private static final boolean POOL_VAZAMENTO_PILHA = Boolean.getBoolean("locadora.pool.vazamentoPilha");
+    private static final int POOL_CACHE_STATEMENTS = Integer.getInteger("locadora.pool.cacheStatements", 64);
+
+    private static volatile PoolConexoes pool;
+
     public static Connection getConnection() {
 
         try {
-            // carrega o Driver JDBC na memória
+            // o close() da conexão devolvida apenas a retorna ao pool
+            return getPool().emprestar();
+        } catch (SQLException e) {
+            // exceção disparada por erros de conexão (usuário/senha errados, URL errada,
+            // MySQL offline) ou por tempo esgotado esperando uma conexão livre
+            System.err.println("Erro ao conectar ao banco de dados. Verifique credenciais ou se o MySQL está ativo.");
+            e.printStackTrace(); // para depuração
+            if (isFalhaDeConexao(e)) {
+                throw new BancoIndisponivelException("Banco de dados indisponível.", e);
+            }
+            throw new RuntimeException("Erro ao obter a conexão com o banco de dados.", e);
+        }
+    }
+
+    // SQLState da classe 08 (erro de conexão) em alguma causa; o tempo
+    // esgotado esperando uma conexão livre do pool não entra aqui
+    public static boolean isFalhaDeConexao(Throwable erro) {
+        for (Throwable causa = erro; causa != null; causa = causa.getCause()) {
+            if (causa instanceof SQLException) {
+                String estado = ((SQLException) causa).getSQLState();
+                if (estado != null && estado.startsWith("08")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // limite de conexões emprestadas, sem criar o pool
+    public static int getTamanhoMaximoPool() {
+        return POOL_MAX;
+    }
+
+    // cria o pool na primeira chamada
+    public static PoolConexoes getPool() {
+        PoolConexoes atual = pool;
+        if (atual == null) {
+            synchronized (ConnectionFactory.class) {
+                atual = pool;
+                if (atual == null) {
+                    carregarDriver();
+                    atual = new PoolConexoes(URL, USER, PASS,
+                            POOL_MIN, POOL_MAX, POOL_TIMEOUT_MS, POOL_OCIOSO_MS, POOL_VAZAMENTO_MS,
+                            POOL_VAZAMENTO_PILHA, POOL_CACHE_STATEMENTS);
+                    Runtime.getRuntime().addShutdownHook(new Thread(atual::encerrar, "pool-conexoes-encerramento"));
+                    registrarMetricas(atual);
+                    pool = atual;
+                }
+            }
+        }
+        return atual;
+    }
+
+    private static void registrarMetricas(PoolConexoes pool) {
+        Metricas.medidor("locadora_pool_conexoes", "Conexões abertas no pool",
+                Metricas.TIPO_MEDIDOR, pool::getTotal, "estado", "total");
+        Metricas.medidor("locadora_pool_conexoes", "Conexões abertas no pool",
+                Metricas.TIPO_MEDIDOR, pool::getAtivas, "estado", "ativas");
+        Metricas.medidor("locadora_pool_conexoes", "Conexões abertas no pool",
+                Metricas.TIPO_MEDIDOR, pool::getOciosas, "estado", "ociosas");
+        Metricas.medidor("locadora_pool_aguardando", "Threads esperando uma conexão livre",
+                Metricas.TIPO_MEDIDOR, pool::getAguardando);
+        Metricas.medidor("locadora_pool_esgotamentos_total", "Empréstimos que esgotaram o tempo de espera",
+                Metricas.TIPO_CONTADOR, pool::getEsgotamentos);
+        Metricas.medidor("locadora_cache_statements_acertos_total", "Statements reaproveitados do cache",
+                Metricas.TIPO_CONTADOR, pool::getAcertosCacheStatements);
+        Metricas.medidor("locadora_cache_statements_falhas_total", "Statements preparados no servidor",
+                Metricas.TIPO_CONTADOR, pool::getFalhasCacheStatements);
+    }
+
+    private static void carregarDriver() {
+        try {
+            // carrega o Driver JDBC na memória (uma única vez)
             Class.forName(DRIVER);
-            // tenta conectar ao banco usando as credenciais e URL
-            // o DriverManager procura o Driver carregado que corresponde à URL
-            System.out.println("Tentando conectar ao banco de dados...");
-            return DriverManager.getConnection(URL, USER, PASS);
         } catch (ClassNotFoundException e) {
             // exceção disparada se o JAR do Driver (mysql-connector-j) não estiver no
             // classpath
             System.err.println("Driver JDBC não encontrado. Verifique se o JAR está na pasta 'lib' e no classpath.");
             throw new RuntimeException("Erro: Driver JDBC ausente.", e);
-        } catch (SQLException e) {
-            // exceção disparada por erros de conexão (usuário/senha errados, URL errada,
-            // MySQL offline)
-            System.err.println("Erro ao conectar ao banco de dados. Verifique credenciais ou se o MySQL está ativo.");
-            e.printStackTrace(); // para depuração
-            throw new RuntimeException("Erro ao obter a conexão com o banco de dados.", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latências sem locks e sem alocação no registro.
+ *
+ * Os valores são agrupados em faixas log-lineares de microssegundos: cada
+ * potência de 2 é dividida em 8 faixas, então um percentil calculado tem erro
+ * relativo de no máximo 12,5%. Registrar é um incremento atômico em um array
+ * fixo; os percentis só são calculados na leitura (GET /metrics).
+ */
+public final class Histograma {
+
+    private static final int BITS_SUBFAIXA = 3;
+    private static final int SUBFAIXAS = 1 << BITS_SUBFAIXA;
+    // 2^36 us ≈ 19 horas; valores maiores caem na última faixa
+    private static final int MAIOR_EXPOENTE = 36;
+    private static final int TOTAL_FAIXAS = SUBFAIXAS + (MAIOR_EXPOENTE - BITS_SUBFAIXA + 1) * SUBFAIXAS;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(TOTAL_FAIXAS);
+    private final AtomicLong somaNanos = new AtomicLong();
+    private final AtomicLong maximoNanos = new AtomicLong();
+
+    public void registrar(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        contagens.incrementAndGet(faixa(nanos / 1_000));
+        somaNanos.addAndGet(nanos);
+        long atual;
+        while (nanos > (atual = maximoNanos.get()) && !maximoNanos.compareAndSet(atual, nanos)) {
+            // outra thread registrou um máximo ao mesmo tempo; tenta de novo
+        }
+    }
+
+    private static int faixa(long micros) {
+        if (micros < SUBFAIXAS) {
+            return (int) micros;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(micros);
+        if (expoente > MAIOR_EXPOENTE) {
+            return TOTAL_FAIXAS - 1;
+        }
+        int subfaixa = (int) (micros >>> (expoente - BITS_SUBFAIXA)) & (SUBFAIXAS - 1);
+        return SUBFAIXAS + (expoente - BITS_SUBFAIXA) * SUBFAIXAS + subfaixa;
+    }
+
+    // limite superior (exclusivo) da faixa, em microssegundos
+    private static long limiteSuperior(int faixa) {
+        if (faixa < SUBFAIXAS) {
+            return faixa + 1;
+        }
+        int expoente = (faixa - SUBFAIXAS) / SUBFAIXAS + BITS_SUBFAIXA;
+        int subfaixa = (faixa - SUBFAIXAS) % SUBFAIXAS;
+        return (long) (SUBFAIXAS + subfaixa + 1) << (expoente - BITS_SUBFAIXA);
+    }
+
+    /**
+     * Fotografia do histograma com os percentis já calculados. As faixas são
+     * lidas uma vez só, então contagem e percentis são coerentes entre si.
+     */
+    public Resumo resumir(double... quantis) {
+        long[] copia = new long[TOTAL_FAIXAS];
+        long total = 0;
+        for (int i = 0; i < TOTAL_FAIXAS; i++) {
+            copia[i] = contagens.get(i);
+            total += copia[i];
+        }
+        long maximo = maximoNanos.get();
+
+        long[] valores = new long[quantis.length];
+        for (int q = 0; q < quantis.length; q++) {
+            valores[q] = -1;
+            if (total == 0) {
+                continue;
+            }
+            long alvo = Math.max(1, (long) Math.ceil(quantis[q] * total));
+            long acumulado = 0;
+            for (int i = 0; i < TOTAL_FAIXAS; i++) {
+                acumulado += copia[i];
+                if (acumulado >= alvo) {
+                    valores[q] = Math.min(limiteSuperior(i) * 1_000, maximo);
+                    break;
+                }
+            }
+        }
+        return new Resumo(total, somaNanos.get(), maximo, valores);
+    }
+
+    public static final class Resumo {
+        private final long contagem;
+        private final long somaNanos;
+        private final long maximoNanos;
+        private final long[] quantisNanos;
+
+        private Resumo(long contagem, long somaNanos, long maximoNanos, long[] quantisNanos) {
+            this.contagem = contagem;
+            this.somaNanos = somaNanos;
+            this.maximoNanos = maximoNanos;
+            this.quantisNanos = quantisNanos;
+        }
+
+        public long getContagem() {
+            return contagem;
+        }
+
+        public long getSomaNanos() {
+            return somaNanos;
+        }
+
+        public long getMaximoNanos() {
+            return maximoNanos;
+        }
+
+        // na ordem pedida em resumir(); -1 quando não há registros
+        public long getQuantilNanos(int indice) {
+            return quantisNanos[indice];
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de trigramas em memória para busca por nome (prefixo, trecho e erros
+ * de digitação), sem diferenciar acentos nem maiúsculas.
+ *
+ * Cada palavra do nome é indexada com dois espaços antes ("  acao"), então os
+ * primeiros trigramas de uma palavra também respondem a buscas de uma ou duas
+ * letras. A busca conta, para cada registro, quantos trigramas da consulta ele
+ * tem; os candidatos são ordenados por prefixo de palavra, depois trecho do
+ * nome, depois proporção de trigramas em comum. Alterações são incrementais
+ * (indexar/remover um registro); buscas rodam em paralelo entre si.
+ *
+ * Internamente cada registro ocupa uma posição (slot) fixa, as listas de
+ * trigramas guardam slots em int[] e a contagem usa um array reaproveitado
+ * por thread, então uma busca não cria objetos por candidato, só para os que
+ * entram entre os 'limite' melhores.
+ */
+public final class IndiceBusca<T> {
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^a-z0-9]+");
+
+    // fração mínima dos trigramas da consulta que um candidato aproximado deve ter
+    private static final double SEMELHANCA_MINIMA = 0.5;
+
+    private static final class Entrada<T> {
+        final Long id;
+        final int slot;
+        final String nome;
+        final String[] palavras;
+        final Set<String> gramas;
+        final T valor;
+
+        Entrada(Long id, int slot, String nome, T valor) {
+            this.id = id;
+            this.slot = slot;
+            this.nome = normalizar(nome);
+            this.palavras = palavras(this.nome);
+            this.gramas = gramas(this.palavras, true);
+            this.valor = valor;
+        }
+    }
+
+    // lista de slots que cresce sob demanda; remover troca pelo último
+    private static final class Slots {
+        int[] valores = new int[4];
+        int tamanho;
+
+        void adicionar(int slot) {
+            if (tamanho == valores.length) {
+                valores = Arrays.copyOf(valores, tamanho * 2);
+            }
+            valores[tamanho++] = slot;
+        }
+
+        void remover(int slot) {
+            for (int i = 0; i < tamanho; i++) {
+                if (valores[i] == slot) {
+                    valores[i] = valores[--tamanho];
+                    return;
+                }
+            }
+        }
+    }
+
+    // contagens por slot e slots tocados na busca atual, reaproveitados por thread
+    private static final class Rascunho {
+        int[] contagens = new int[0];
+        int[] tocados = new int[0];
+    }
+
+    private static final ThreadLocal<Rascunho> RASCUNHO = ThreadLocal.withInitial(Rascunho::new);
+
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+    private final Map<Long, Entrada<T>> porId = new HashMap<>();
+    private final Map<String, Slots> porGrama = new HashMap<>();
+    private final List<Entrada<T>> porSlot = new ArrayList<>();
+    private final Slots slotsLivres = new Slots();
+
+    // ------------------------------------
+    // ALTERAÇÃO
+    // ------------------------------------
+    // Inclui o registro ou substitui o que já existe com o mesmo ID
+    public void indexar(Long id, String nome, T valor) {
+        trava.writeLock().lock();
+        try {
+            Entrada<T> antiga = porId.remove(id);
+            int slot;
+            if (antiga != null) {
+                desindexar(antiga);
+                slot = antiga.slot;
+            } else if (slotsLivres.tamanho > 0) {
+                slot = slotsLivres.valores[--slotsLivres.tamanho];
+            } else {
+                slot = porSlot.size();
+                porSlot.add(null);
+            }
+
+            Entrada<T> nova = new Entrada<>(id, slot, nome != null ? nome : "", valor);
+            porId.put(id, nova);
+            porSlot.set(slot, nova);
+            for (String grama : nova.gramas) {
+                porGrama.computeIfAbsent(grama, g -> new Slots()).adicionar(slot);
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    public void remover(Long id) {
+        trava.writeLock().lock();
+        try {
+            Entrada<T> antiga = porId.remove(id);
+            if (antiga != null) {
+                desindexar(antiga);
+                porSlot.set(antiga.slot, null);
+                slotsLivres.adicionar(antiga.slot);
+            }
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    private void desindexar(Entrada<T> antiga) {
+        for (String grama : antiga.gramas) {
+            Slots slots = porGrama.get(grama);
+            slots.remover(antiga.slot);
+            if (slots.tamanho == 0) {
+                porGrama.remove(grama);
+            }
+        }
+    }
+
+    // Valor guardado com o ID; null se não está no índice
+    public T buscarPorId(Long id) {
+        trava.readLock().lock();
+        try {
+            Entrada<T> entrada = porId.get(id);
+            return entrada != null ? entrada.valor : null;
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    public int tamanho() {
+        trava.readLock().lock();
+        try {
+            return porId.size();
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    // ------------------------------------
+    // BUSCA
+    // ------------------------------------
+    /**
+     * Os até 'limite' registros mais parecidos com a consulta, do melhor para
+     * o pior. Consulta vazia (depois de normalizada) não encontra nada.
+     */
+    public List<T> buscar(String consulta, int limite) {
+        String[] termos = palavras(normalizar(consulta));
+        if (termos.length == 0 || limite < 1) {
+            return new ArrayList<>();
+        }
+        Set<String> gramasConsulta = gramas(termos, false);
+        // consultas curtas (uma palavra de até 3 letras) precisam de todos; as demais aceitam erros
+        int minimo = gramasConsulta.size() <= 3
+                ? gramasConsulta.size()
+                : (int) Math.ceil(gramasConsulta.size() * SEMELHANCA_MINIMA);
+
+        trava.readLock().lock();
+        try {
+            Rascunho rascunho = RASCUNHO.get();
+            if (rascunho.contagens.length < porSlot.size()) {
+                rascunho.contagens = new int[porSlot.size()];
+                rascunho.tocados = new int[porSlot.size()];
+            }
+            int[] contagens = rascunho.contagens;
+            int[] tocados = rascunho.tocados;
+            int quantidadeTocados = 0;
+
+            for (String grama : gramasConsulta) {
+                Slots slots = porGrama.get(grama);
+                if (slots == null) {
+                    continue;
+                }
+                for (int i = 0; i < slots.tamanho; i++) {
+                    int slot = slots.valores[i];
+                    if (contagens[slot]++ == 0) {
+                        tocados[quantidadeTocados++] = slot;
+                    }
+                }
+            }
+
+            // os 'limite' melhores; o pior deles fica na cabeça da fila
+            PriorityQueue<Candidato<T>> melhores = new PriorityQueue<>(limite + 1, Collections.reverseOrder());
+            for (int i = 0; i < quantidadeTocados; i++) {
+                int slot = tocados[i];
+                int contagem = contagens[slot];
+                // zera para a próxima busca desta thread
+                contagens[slot] = 0;
+                if (contagem < minimo) {
+                    continue;
+                }
+                Entrada<T> entrada = porSlot.get(slot);
+                double pontos = pontuar(entrada, termos) + contagem / (double) gramasConsulta.size();
+                if (melhores.size() < limite || melhores.peek().piorQue(pontos, entrada)) {
+                    melhores.add(new Candidato<>(entrada, pontos));
+                    if (melhores.size() > limite) {
+                        melhores.poll();
+                    }
+                }
+            }
+
+            Candidato<?>[] ordenados = melhores.toArray(new Candidato<?>[0]);
+            Arrays.sort(ordenados);
+            List<T> resultado = new ArrayList<>(ordenados.length);
+            for (Candidato<?> candidato : ordenados) {
+                @SuppressWarnings("unchecked")
+                T valor = (T) candidato.entrada.valor;
+                resultado.add(valor);
+            }
+            return resultado;
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    // 2 por termo que começa uma palavra do nome, 1 por termo que aparece no meio
+    private static double pontuar(Entrada<?> entrada, String[] termos) {
+        double pontos = 0;
+        for (String termo : termos) {
+            double melhor = 0;
+            for (String palavra : entrada.palavras) {
+                if (palavra.startsWith(termo)) {
+                    melhor = 2;
+                    break;
+                }
+                if (palavra.contains(termo)) {
+                    melhor = 1;
+                }
+            }
+            pontos += melhor;
+        }
+        return pontos / termos.length * 2;
+    }
+
+    private static final class Candidato<T> implements Comparable<Candidato<T>> {
+        final Entrada<T> entrada;
+        final double pontos;
+
+        Candidato(Entrada<T> entrada, double pontos) {
+            this.entrada = entrada;
+            this.pontos = pontos;
+        }
+
+        // mais pontos primeiro; no empate, o nome mais curto (mais próximo da consulta)
+        @Override
+        public int compareTo(Candidato<T> outro) {
+            return comparar(pontos, entrada, outro.pontos, outro.entrada);
+        }
+
+        boolean piorQue(double outrosPontos, Entrada<?> outra) {
+            return comparar(pontos, entrada, outrosPontos, outra) > 0;
+        }
+
+        private static int comparar(double pontos, Entrada<?> entrada, double outrosPontos, Entrada<?> outra) {
+            int comparacao = Double.compare(outrosPontos, pontos);
+            if (comparacao == 0) {
+                comparacao = Integer.compare(entrada.nome.length(), outra.nome.length());
+            }
+            return comparacao != 0 ? comparacao : entrada.id.compareTo(outra.id);
+        }
+    }
+
+    // ------------------------------------
+    // NORMALIZAÇÃO
+    // ------------------------------------
+    // "São João" -> "sao joao": sem acentos, minúsculas, só letras e dígitos
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String semAcentos = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARADORES.matcher(semAcentos.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static String[] palavras(String normalizado) {
+        return normalizado.isEmpty() ? new String[0] : normalizado.split(" ");
+    }
+
+    // Trigramas de cada palavra com "  " na frente. No nome indexado a palavra
+    // também ganha um espaço no fim; na consulta não, porque o último termo
+    // costuma ser um prefixo ainda sendo digitado.
+    private static Set<String> gramas(String[] palavras, boolean fimDePalavra) {
+        Set<String> gramas = new LinkedHashSet<>();
+        for (String palavra : palavras) {
+            String completa = "  " + palavra + (fimDePalavra ? " " : "");
+            for (int i = 0; i + 3 <= completa.length(); i++) {
+                gramas.add(completa.substring(i, i + 3));
+            }
+        }
+        return gramas;
+    }
+}
@@ -0,0 +1,175 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Registro das métricas da aplicação, exportadas no formato texto do
+ * Prometheus em GET /metrics.
+ *
+ * Histogramas e medidores são criados uma vez (na subida ou na primeira vez
+ * que uma consulta aparece) e guardados por quem registra, então o caminho
+ * quente nunca passa por este registro.
+ */
+public final class Metricas {
+
+    private static final double[] QUANTIS = { 0.5, 0.95, 0.99 };
+    private static final String[] NOMES_QUANTIS = { "0.5", "0.95", "0.99" };
+
+    private static final String TIPO_RESUMO = "summary";
+    public static final String TIPO_MEDIDOR = "gauge";
+    public static final String TIPO_CONTADOR = "counter";
+
+    private static final Map<String, Familia> familias = new ConcurrentHashMap<>();
+
+    private Metricas() {
+    }
+
+    private static final class Familia {
+        final String nome;
+        final String ajuda;
+        final String tipo;
+        // rótulos já formatados (ex.: metodo="GET",rota="/jogos") -> Histograma ou LongSupplier
+        final Map<String, Object> series = new ConcurrentHashMap<>();
+
+        Familia(String nome, String ajuda, String tipo) {
+            this.nome = nome;
+            this.ajuda = ajuda;
+            this.tipo = tipo;
+        }
+    }
+
+    private static Familia familia(String nome, String ajuda, String tipo) {
+        Familia familia = familias.computeIfAbsent(nome, n -> new Familia(n, ajuda, tipo));
+        if (!familia.tipo.equals(tipo)) {
+            throw new IllegalArgumentException("Métrica " + nome + " já registrada como " + familia.tipo);
+        }
+        return familia;
+    }
+
+    /**
+     * Histograma de latência (exportado em segundos) para a combinação de
+     * rótulos, informados em pares nome/valor. Chamadas repetidas com os
+     * mesmos rótulos devolvem o mesmo histograma.
+     */
+    public static Histograma histograma(String nome, String ajuda, String... rotulos) {
+        Familia familia = familia(nome, ajuda, TIPO_RESUMO);
+        return (Histograma) familia.series.computeIfAbsent(formatarRotulos(rotulos), r -> new Histograma());
+    }
+
+    // valor lido na hora da exportação (tipo TIPO_MEDIDOR ou TIPO_CONTADOR)
+    public static void medidor(String nome, String ajuda, String tipo, LongSupplier valor, String... rotulos) {
+        familia(nome, ajuda, tipo).series.put(formatarRotulos(rotulos), valor);
+    }
+
+    // ------------------------------------
+    // CONSULTAS DOS DAOS
+    // ------------------------------------
+    // Histograma da consulta pedida agora, rotulado com o método do DAO que a
+    // pediu. Roda a cada prepareStatement (com ou sem acerto no cache), não a
+    // cada execute; a pilha é percorrida só até o primeiro quadro de dao.,
+    // poucos microssegundos perto da ida ao banco.
+    static Histograma histogramaConsultaDoChamador() {
+        String metodo = StackWalker.getInstance().walk(quadros -> quadros
+                .filter(q -> q.getClassName().startsWith("dao."))
+                .findFirst()
+                .map(q -> q.getClassName().substring(4) + "." + q.getMethodName())
+                .orElse("outros"));
+        return histograma("locadora_consulta_segundos",
+                "Tempo de execução das consultas SQL, por método de DAO", "metodo", metodo);
+    }
+
+    // ------------------------------------
+    // EXPORTAÇÃO
+    // ------------------------------------
+    public static String exportar() {
+        List<String> nomes = new ArrayList<>(familias.keySet());
+        Collections.sort(nomes);
+
+        StringBuilder saida = new StringBuilder(8 * 1024);
+        for (String nome : nomes) {
+            Familia familia = familias.get(nome);
+            List<String> rotulos = new ArrayList<>(familia.series.keySet());
+            Collections.sort(rotulos);
+
+            if (TIPO_RESUMO.equals(familia.tipo)) {
+                exportarResumo(saida, familia, rotulos);
+            } else {
+                cabecalho(saida, familia.nome, familia.ajuda, familia.tipo);
+                for (String rotulo : rotulos) {
+                    long valor = ((LongSupplier) familia.series.get(rotulo)).getAsLong();
+                    linha(saida, familia.nome, rotulo, null, Long.toString(valor));
+                }
+            }
+        }
+        return saida.toString();
+    }
+
+    private static void exportarResumo(StringBuilder saida, Familia familia, List<String> rotulos) {
+        List<Histograma.Resumo> resumos = new ArrayList<>(rotulos.size());
+        for (String rotulo : rotulos) {
+            resumos.add(((Histograma) familia.series.get(rotulo)).resumir(QUANTIS));
+        }
+
+        cabecalho(saida, familia.nome, familia.ajuda, familia.tipo);
+        for (int i = 0; i < rotulos.size(); i++) {
+            String rotulo = rotulos.get(i);
+            Histograma.Resumo resumo = resumos.get(i);
+            for (int q = 0; q < QUANTIS.length; q++) {
+                long nanos = resumo.getQuantilNanos(q);
+                linha(saida, familia.nome, rotulo, "quantile=\"" + NOMES_QUANTIS[q] + "\"",
+                        nanos < 0 ? "NaN" : segundos(nanos));
+            }
+            linha(saida, familia.nome + "_sum", rotulo, null, segundos(resumo.getSomaNanos()));
+            linha(saida, familia.nome + "_count", rotulo, null, Long.toString(resumo.getContagem()));
+        }
+
+        // o máximo não faz parte do tipo summary; vai como medidor à parte
+        cabecalho(saida, familia.nome + "_max", "Máximo desde a subida: " + familia.ajuda, TIPO_MEDIDOR);
+        for (int i = 0; i < rotulos.size(); i++) {
+            linha(saida, familia.nome + "_max", rotulos.get(i), null, segundos(resumos.get(i).getMaximoNanos()));
+        }
+    }
+
+    private static void cabecalho(StringBuilder saida, String nome, String ajuda, String tipo) {
+        saida.append("# HELP ").append(nome).append(' ').append(ajuda.replace("\\", "\\\\").replace("\n", "\\n"))
+                .append('\n');
+        saida.append("# TYPE ").append(nome).append(' ').append(tipo).append('\n');
+    }
+
+    private static void linha(StringBuilder saida, String nome, String rotulos, String extra, String valor) {
+        saida.append(nome);
+        if (!rotulos.isEmpty() || extra != null) {
+            saida.append('{').append(rotulos);
+            if (extra != null) {
+                saida.append(rotulos.isEmpty() ? "" : ",").append(extra);
+            }
+            saida.append('}');
+        }
+        saida.append(' ').append(valor).append('\n');
+    }
+
+    private static String segundos(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String formatarRotulos(String... rotulos) {
+        if (rotulos.length % 2 != 0) {
+            throw new IllegalArgumentException("Rótulos devem vir em pares nome/valor.");
+        }
+        StringBuilder formatado = new StringBuilder();
+        for (int i = 0; i < rotulos.length; i += 2) {
+            if (i > 0) {
+                formatado.append(',');
+            }
+            formatado.append(rotulos[i]).append("=\"")
+                    .append(rotulos[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return formatado.toString();
+    }
+}
@@ -0,0 +1,384 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool limitado de conexões JDBC.
+ *
+ * As conexões entregues são proxies: chamar close() devolve a conexão física
+ * ao pool em vez de encerrar a sessão com o MySQL, então os DAOs continuam
+ * usando try-with-resources normalmente.
+ */
+public class PoolConexoes {
+
+    private final String url;
+    private final String usuario;
+    private final String senha;
+
+    private final int tamanhoMinimo;
+    private final int tamanhoMaximo;
+    private final long timeoutEmprestimoMs;
+    private final long tempoOciosoMaximoMs;
+    private final long limiteVazamentoMs;
+    // guarda a pilha de cada empréstimo para o aviso de vazamento (caro: só para diagnóstico)
+    private final boolean pilhaVazamento;
+    private final int tamanhoCacheStatements;
+
+    // conexões ociosas; a ponta da frente é a usada mais recentemente (LIFO)
+    private final LinkedBlockingDeque<ConexaoFisica> ociosas = new LinkedBlockingDeque<>();
+    // conexões emprestadas no momento, usadas na detecção de vazamento
+    private final Set<ConexaoFisica> emprestadas = ConcurrentHashMap.newKeySet();
+    // limita quantas conexões podem estar emprestadas ao mesmo tempo
+    private final Semaphore permissoes;
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger aguardando = new AtomicInteger();
+
+    // contadores somados de todos os caches de statements
+    private final LongAdder acertosCache = new LongAdder();
+    private final LongAdder falhasCache = new LongAdder();
+    private final LongAdder remocoesCache = new LongAdder();
+
+    // tempo de emprestar(), incluindo a espera por uma conexão livre
+    private final Histograma tempoEmprestimo = Metricas.histograma("locadora_pool_emprestimo_segundos",
+            "Tempo para obter uma conexão do pool");
+    private final LongAdder esgotamentos = new LongAdder();
+
+    private final ScheduledExecutorService manutencao;
+    private volatile boolean encerrado;
+
+    // conexões ociosas há menos tempo que isso não são validadas no empréstimo
+    private static final long JANELA_SEM_VALIDACAO_MS = 500;
+    private static final int TIMEOUT_VALIDACAO_SEGUNDOS = 2;
+
+    public PoolConexoes(String url, String usuario, String senha,
+            int tamanhoMinimo, int tamanhoMaximo, long timeoutEmprestimoMs,
+            long tempoOciosoMaximoMs, long limiteVazamentoMs, boolean pilhaVazamento, int tamanhoCacheStatements) {
+        if (tamanhoMaximo < 1 || tamanhoMinimo < 0 || tamanhoMinimo > tamanhoMaximo) {
+            throw new IllegalArgumentException("Tamanhos de pool inválidos: min=" + tamanhoMinimo + ", max=" + tamanhoMaximo);
+        }
+        this.url = url;
+        this.usuario = usuario;
+        this.senha = senha;
+        this.tamanhoMinimo = tamanhoMinimo;
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.timeoutEmprestimoMs = timeoutEmprestimoMs;
+        this.tempoOciosoMaximoMs = tempoOciosoMaximoMs;
+        this.limiteVazamentoMs = limiteVazamentoMs;
+        this.pilhaVazamento = pilhaVazamento;
+        this.tamanhoCacheStatements = tamanhoCacheStatements;
+        this.permissoes = new Semaphore(tamanhoMaximo, true);
+
+        this.manutencao = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pool-conexoes-manutencao");
+            t.setDaemon(true);
+            return t;
+        });
+        this.manutencao.scheduleWithFixedDelay(this::executarManutencao, 5, 5, TimeUnit.SECONDS);
+    }
+
+    // ------------------------------------
+    // EMPRÉSTIMO
+    // ------------------------------------
+    public Connection emprestar() throws SQLException {
+        if (encerrado) {
+            throw new SQLException("Pool de conexões encerrado.");
+        }
+
+        long inicio = System.nanoTime();
+        aguardando.incrementAndGet();
+        try {
+            if (!permissoes.tryAcquire(timeoutEmprestimoMs, TimeUnit.MILLISECONDS)) {
+                esgotamentos.increment();
+                throw new SQLException("Tempo esgotado (" + timeoutEmprestimoMs
+                        + " ms) aguardando uma conexão livre. Ativas: " + emprestadas.size() + "/" + tamanhoMaximo);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrompido aguardando conexão.", e);
+        } finally {
+            aguardando.decrementAndGet();
+        }
+
+        try {
+            ConexaoFisica fisica = obterValida();
+            fisica.emprestadaEm = System.currentTimeMillis();
+            fisica.origem = limiteVazamentoMs > 0 && pilhaVazamento ? new Exception("Conexão emprestada aqui") : null;
+            fisica.vazamentoReportado = false;
+            emprestadas.add(fisica);
+            tempoEmprestimo.registrar(System.nanoTime() - inicio);
+            return fisica.novoProxy();
+        } catch (SQLException | RuntimeException e) {
+            permissoes.release();
+            throw e;
+        }
+    }
+
+    // pega a conexão ociosa mais recente que ainda responde, ou abre uma nova
+    private ConexaoFisica obterValida() throws SQLException {
+        ConexaoFisica fisica;
+        while ((fisica = ociosas.pollFirst()) != null) {
+            if (validar(fisica)) {
+                return fisica;
+            }
+            descartar(fisica);
+        }
+        return abrir();
+    }
+
+    private boolean validar(ConexaoFisica fisica) {
+        if (System.currentTimeMillis() - fisica.ultimoUso < JANELA_SEM_VALIDACAO_MS) {
+            return true;
+        }
+        try {
+            return fisica.conexao.isValid(TIMEOUT_VALIDACAO_SEGUNDOS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private ConexaoFisica abrir() throws SQLException {
+        Connection conexao = DriverManager.getConnection(url, usuario, senha);
+        total.incrementAndGet();
+        return new ConexaoFisica(conexao);
+    }
+
+    private void descartar(ConexaoFisica fisica) {
+        total.decrementAndGet();
+        try {
+            fisica.conexao.close();
+        } catch (SQLException e) {
+            // a conexão já estava quebrada; nada a fazer
+        }
+    }
+
+    // ------------------------------------
+    // DEVOLUÇÃO
+    // ------------------------------------
+    private void devolver(ConexaoFisica fisica) {
+        emprestadas.remove(fisica);
+        fisica.origem = null;
+        try {
+            // total acima do máximo só acontece numa corrida com a manutenção; fecha a sobra
+            if (encerrado || fisica.conexao.isClosed() || total.get() > tamanhoMaximo) {
+                descartar(fisica);
+                return;
+            }
+            // desfaz transações abertas para a próxima requisição não herdar estado
+            if (!fisica.conexao.getAutoCommit()) {
+                fisica.conexao.rollback();
+                fisica.conexao.setAutoCommit(true);
+            }
+            fisica.ultimoUso = System.currentTimeMillis();
+            ociosas.offerFirst(fisica);
+        } catch (SQLException e) {
+            System.err.println("Conexão descartada ao ser devolvida ao pool: " + e.getMessage());
+            descartar(fisica);
+        } finally {
+            permissoes.release();
+        }
+    }
+
+    // ------------------------------------
+    // MANUTENÇÃO: ociosas, mínimo e vazamentos
+    // ------------------------------------
+    private void executarManutencao() {
+        try {
+            long agora = System.currentTimeMillis();
+
+            // remove as ociosas há muito tempo, sem descer abaixo do mínimo
+            Iterator<ConexaoFisica> it = ociosas.descendingIterator();
+            while (it.hasNext() && total.get() > tamanhoMinimo) {
+                ConexaoFisica fisica = it.next();
+                if (agora - fisica.ultimoUso > tempoOciosoMaximoMs && ociosas.remove(fisica)) {
+                    descartar(fisica);
+                }
+            }
+
+            // completa o mínimo de conexões abertas
+            while (!encerrado && total.get() < tamanhoMinimo && permissoes.tryAcquire()) {
+                try {
+                    ConexaoFisica fisica = abrir();
+                    fisica.ultimoUso = agora;
+                    ociosas.offerLast(fisica);
+                } finally {
+                    permissoes.release();
+                }
+            }
+
+            if (limiteVazamentoMs > 0) {
+                for (ConexaoFisica fisica : emprestadas) {
+                    if (!fisica.vazamentoReportado && agora - fisica.emprestadaEm > limiteVazamentoMs) {
+                        fisica.vazamentoReportado = true;
+                        System.err.println("Possível vazamento de conexão: emprestada há "
+                                + (agora - fisica.emprestadaEm) + " ms sem ser devolvida.");
+                        Exception origem = fisica.origem;
+                        if (origem != null) {
+                            origem.printStackTrace();
+                        } else {
+                            System.err.println("Para ver onde ela foi emprestada, use -Dlocadora.pool.vazamentoPilha=true.");
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Falha ao abrir conexões mínimas do pool: " + e.getMessage());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void encerrar() {
+        encerrado = true;
+        manutencao.shutdownNow();
+        ConexaoFisica fisica;
+        while ((fisica = ociosas.pollFirst()) != null) {
+            descartar(fisica);
+        }
+    }
+
+    // ------------------------------------
+    // ESTATÍSTICAS
+    // ------------------------------------
+    public int getTotal() {
+        return total.get();
+    }
+
+    public int getAtivas() {
+        return emprestadas.size();
+    }
+
+    public int getOciosas() {
+        return ociosas.size();
+    }
+
+    public int getAguardando() {
+        return aguardando.get();
+    }
+
+    public int getTamanhoMaximo() {
+        return tamanhoMaximo;
+    }
+
+    public long getAcertosCacheStatements() {
+        return acertosCache.sum();
+    }
+
+    public long getFalhasCacheStatements() {
+        return falhasCache.sum();
+    }
+
+    public long getRemocoesCacheStatements() {
+        return remocoesCache.sum();
+    }
+
+    // empréstimos que esgotaram o tempo esperando uma conexão livre
+    public long getEsgotamentos() {
+        return esgotamentos.sum();
+    }
+
+    // ------------------------------------
+    // CONEXÃO FÍSICA + PROXY
+    // ------------------------------------
+    private class ConexaoFisica {
+        final Connection conexao;
+        volatile long ultimoUso = System.currentTimeMillis();
+        volatile long emprestadaEm;
+        volatile Exception origem;
+        volatile boolean vazamentoReportado;
+        // null quando o cache está desligado (tamanho 0)
+        final CacheStatements statements;
+
+        ConexaoFisica(Connection conexao) {
+            this.conexao = conexao;
+            this.statements = tamanhoCacheStatements > 0
+                    ? new CacheStatements(conexao, tamanhoCacheStatements, acertosCache, falhasCache, remocoesCache)
+                    : null;
+        }
+
+        Connection novoProxy() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class },
+                    new Emprestimo(this));
+        }
+    }
+
+    // cada empréstimo tem seu próprio handler, então um close() duplicado
+    // ou um uso depois do close() não afeta quem pegou a conexão em seguida.
+    // Sem synchronized: o rollback da devolução faz I/O e prenderia a thread
+    // de suporte de uma virtual thread.
+    private class Emprestimo implements InvocationHandler {
+        private final AtomicReference<ConexaoFisica> fisica;
+
+        Emprestimo(ConexaoFisica fisica) {
+            this.fisica = new AtomicReference<>(fisica);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String nome = method.getName();
+            switch (nome) {
+                case "close":
+                    ConexaoFisica devolvida = fisica.getAndSet(null);
+                    if (devolvida != null) {
+                        devolver(devolvida);
+                    }
+                    return null;
+                case "isClosed":
+                    return fisica.get() == null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexaoPool[" + fisica.get() + "]";
+                default:
+                    break;
+            }
+
+            ConexaoFisica atual = fisica.get();
+            if (atual == null) {
+                throw new SQLException("Conexão já foi devolvida ao pool.");
+            }
+            if ("prepareStatement".equals(nome)) {
+                // prepareStatement(sql) e prepareStatement(sql, gerarChaves) passam pelo cache
+                if (atual.statements != null && args.length == 1) {
+                    return atual.statements.preparar((String) args[0], Statement.NO_GENERATED_KEYS);
+                }
+                if (atual.statements != null && args.length == 2 && args[1] instanceof Integer) {
+                    return atual.statements.preparar((String) args[0], (Integer) args[1]);
+                }
+                // fora do cache o tempo das consultas também é medido
+                try {
+                    return StatementMedido.envolver((PreparedStatement) method.invoke(atual.conexao, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+            try {
+                return method.invoke(atual.conexao, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
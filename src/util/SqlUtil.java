@@ -0,0 +1,29 @@
+package util;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+public class SqlUtil {
+
+    private SqlUtil() {
+    }
+
+    // "?, ?, ?" com a quantidade pedida, para cláusulas IN (...)
+    public static String placeholders(int quantidade) {
+        StringBuilder sb = new StringBuilder(quantidade * 3);
+        for (int i = 0; i < quantidade; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    // Nova versão gravada por "versao = LAST_INSERT_ID(versao + 1)": o MySQL a
+    // devolve junto com o resultado do UPDATE, como se fosse uma chave gerada.
+    // O statement precisa ter sido preparado com RETURN_GENERATED_KEYS.
+    public static Integer versaoGerada(PreparedStatement stmt) throws SQLException {
+        try (ResultSet rs = stmt.getGeneratedKeys()) {
+            return rs.next() ? rs.getInt(1) : null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+
+/**
+ * Mede o tempo dos execute*() de um PreparedStatement que não passa pelo
+ * cache de statements (cache desligado ou o mesmo SQL já aberto na conexão).
+ * Os statements do cache são medidos pelo próprio CacheStatements.
+ */
+class StatementMedido implements InvocationHandler {
+
+    private final PreparedStatement statement;
+    private final Histograma tempo;
+
+    private StatementMedido(PreparedStatement statement, Histograma tempo) {
+        this.statement = statement;
+        this.tempo = tempo;
+    }
+
+    static PreparedStatement envolver(PreparedStatement statement) {
+        return envolver(statement, Metricas.histogramaConsultaDoChamador());
+    }
+
+    static PreparedStatement envolver(PreparedStatement statement, Histograma tempo) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new StatementMedido(statement, tempo));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        return invocar(statement, method, args, tempo);
+    }
+
+    // chama o método no statement real, registrando o tempo se for um execute*()
+    static Object invocar(PreparedStatement statement, Method method, Object[] args, Histograma tempo)
+            throws Throwable {
+        if (!method.getName().startsWith("execute")) {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+        long inicio = System.nanoTime();
+        try {
+            return method.invoke(statement, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            tempo.registrar(System.nanoTime() - inicio);
+        }
+    }
+}